@@ -0,0 +1,129 @@
+package com.example.mrtan.mvptest1.data;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the size and the encode/decode throughput of {@link TaskCodec} against JSON written
+ * with {@code org.json}, for 100k tasks.
+ * <p>
+ * Each format runs {@link #WARMUP_ROUNDS} rounds to warm up the runtime, then the average of
+ * {@link #MEASURED_ROUNDS} rounds is written to logcat with the {@code TaskCodecBenchmark} tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TaskCodecBenchmark {
+
+    private static final String TAG = "TaskCodecBenchmark";
+
+    private static final int TASKS = 100000;
+
+    private static final int WARMUP_ROUNDS = 2;
+
+    private static final int MEASURED_ROUNDS = 5;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static List<Task> sTasks;
+
+    @BeforeClass
+    public static void createTasks() {
+        // A few distinct titles, like real lists, and unique descriptions.
+        String[] titles = {"Groceries", "Call back", "Pay bills", "Laundry", "Read"};
+        sTasks = new ArrayList<>(TASKS);
+        for (int i = 0; i < TASKS; i++) {
+            sTasks.add(new Task(titles[i % titles.length], "Description of task " + i,
+                    UUID.randomUUID().toString(), i % 3 == 0, i));
+        }
+    }
+
+    @Test
+    public void taskCodec() throws IOException {
+        byte[] bytes = null;
+        long encodeNanos = 0;
+        long decodeNanos = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            bytes = TaskCodec.encode(sTasks);
+            long encoded = System.nanoTime();
+            List<Task> tasks = TaskCodec.decode(bytes);
+            long decoded = System.nanoTime();
+
+            assertEquals(TASKS, tasks.size());
+            if (round >= WARMUP_ROUNDS) {
+                encodeNanos += encoded - start;
+                decodeNanos += decoded - encoded;
+            }
+        }
+        report("TaskCodec", bytes.length, encodeNanos, decodeNanos);
+    }
+
+    @Test
+    public void json() throws JSONException {
+        byte[] bytes = null;
+        long encodeNanos = 0;
+        long decodeNanos = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            bytes = toJson(sTasks).getBytes(UTF_8);
+            long encoded = System.nanoTime();
+            List<Task> tasks = fromJson(new String(bytes, UTF_8));
+            long decoded = System.nanoTime();
+
+            assertEquals(TASKS, tasks.size());
+            if (round >= WARMUP_ROUNDS) {
+                encodeNanos += encoded - start;
+                decodeNanos += decoded - encoded;
+            }
+        }
+        report("org.json", bytes.length, encodeNanos, decodeNanos);
+    }
+
+    private static String toJson(List<Task> tasks) throws JSONException {
+        JSONArray array = new JSONArray();
+        for (Task task : tasks) {
+            JSONObject object = new JSONObject();
+            object.put("id", task.getId());
+            object.put("title", task.getTitle());
+            object.put("description", task.getDescription());
+            object.put("completed", task.isCompleted());
+            object.put("version", task.getVersion());
+            array.put(object);
+        }
+        return array.toString();
+    }
+
+    private static List<Task> fromJson(String json) throws JSONException {
+        JSONArray array = new JSONArray(json);
+        List<Task> tasks = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject object = array.getJSONObject(i);
+            tasks.add(new Task(object.optString("title", null),
+                    object.optString("description", null), object.getString("id"),
+                    object.getBoolean("completed"), object.getLong("version")));
+        }
+        return tasks;
+    }
+
+    private static void report(String format, int size, long encodeNanos, long decodeNanos) {
+        Log.i(TAG, String.format("%s: %d tasks in %d bytes (%.1f bytes/task), "
+                        + "encode %.1f ms (%.0f tasks/s), decode %.1f ms (%.0f tasks/s)",
+                format, TASKS, size, (double) size / TASKS,
+                encodeNanos / 1e6 / MEASURED_ROUNDS, TASKS * 1e9 * MEASURED_ROUNDS / encodeNanos,
+                decodeNanos / 1e6 / MEASURED_ROUNDS, TASKS * 1e9 * MEASURED_ROUNDS / decodeNanos));
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.mrtan.mvptest1.data.local;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.mrtan.mvptest1.data.local.TasksPersistenceContract.TaskEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Compares 10k sequential saveTask/getTask round trips on the shared WAL connection owned by
+ * {@link TaskDbHelper} against opening and closing the database for every call.
+ * <p>
+ * Results are written to logcat with the {@code TaskDbHelperBenchmark} tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TaskDbHelperBenchmark {
+
+    private static final String TAG = "TaskDbHelperBenchmark";
+
+    private static final String DATABASE_NAME = "TasksBenchmark.db";
+
+    private static final int OPERATIONS = 10000;
+
+    private Context mContext;
+
+    private TaskDbHelper mDbHelper;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mDbHelper = new TaskDbHelper(mContext, DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void saveAndGet_openPerCall() {
+        long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            String id = "open-per-call-" + i;
+
+            save(mDbHelper.getWritableDatabase(), id);
+            mDbHelper.close();
+
+            assertNotNull(get(mDbHelper.getReadableDatabase(), id));
+            mDbHelper.close();
+        }
+        report("open per call", System.nanoTime() - start);
+    }
+
+    @Test
+    public void saveAndGet_sharedConnection() {
+        long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            String id = "shared-" + i;
+
+            save(mDbHelper.getDatabase(), id);
+
+            assertNotNull(get(mDbHelper.getDatabase(), id));
+        }
+        report("shared WAL connection", System.nanoTime() - start);
+    }
+
+    private static void save(SQLiteDatabase db, String id) {
+        ContentValues values = new ContentValues();
+        values.put(TaskEntry.COLUMN_NAME_ENTRY_ID, id);
+        values.put(TaskEntry.COLUMN_NAME_TITLE, "title " + id);
+        values.put(TaskEntry.COLUMN_NAME_DESCRIPTION, "description " + id);
+        values.put(TaskEntry.COLUMN_NAME_COMPLETED, false);
+        db.insert(TaskEntry.TABLE_NAME, null, values);
+    }
+
+    private static String get(SQLiteDatabase db, String id) {
+        String[] projection = {TaskEntry.COLUMN_NAME_ENTRY_ID};
+        String selection = TaskEntry.COLUMN_NAME_ENTRY_ID + " = ?";
+        Cursor c = db.query(TaskEntry.TABLE_NAME, projection, selection, new String[]{id},
+                null, null, null);
+        try {
+            return c.moveToFirst() ? c.getString(0) : null;
+        } finally {
+            c.close();
+        }
+    }
+
+    private static void report(String mode, long elapsedNanos) {
+        Log.i(TAG, String.format("%s: %d save+get in %d ms (%.1f us/op)", mode, OPERATIONS,
+                elapsedNanos / 1000000, elapsedNanos / 1000.0 / (OPERATIONS * 2)));
+    }
+}
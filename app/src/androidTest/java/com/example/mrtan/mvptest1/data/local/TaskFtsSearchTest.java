@@ -0,0 +1,115 @@
+package com.example.mrtan.mvptest1.data.local;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.data.source.TaskSearch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link TaskFtsSearch} and the in-memory {@link TaskSearch} find and rank the same
+ * tasks, on a corpus mixing scripts, case and punctuation.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TaskFtsSearchTest {
+
+    private static final String DATABASE_NAME = "TasksSearchTest.db";
+
+    private static final List<Task> CORPUS = Arrays.asList(
+            new Task("買菜，Call mom", "牛奶 and eggs", "id1"),
+            new Task("Café au lait", "CAFÉ downstairs, call ahead", "id2"),
+            new Task("call 張三 back", "About the café order", "id3"),
+            new Task("Überweisung bezahlen", "über the bank app", "id4"),
+            new Task("Read 論文_draft", "Call call call", "id5"),
+            new Task("Σύσκεψη call", "Read the agenda: σύντομα", "id6"),
+            new Task("Callback-API", "draft (v2) ready?", "id7"),
+            new Task("mom's birthday", "Buy a cake; call", "id8"));
+
+    private static final String[] QUERIES = {
+            "call", "CALL", "ca", "caf", "café", "CAFÉ", "買菜", "買菜，call", "張", "über", "Über",
+            "σύ", "read draft", "call 張", "論文", "mom", "v2", "api callback", "  ,. "
+    };
+
+    private Context mContext;
+
+    private TaskDbHelper mDbHelper;
+
+    private TaskStatements mStatements;
+
+    private TaskFtsSearch mFtsSearch;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mDbHelper = new TaskDbHelper(mContext, DATABASE_NAME);
+        mStatements = new TaskStatements(mDbHelper);
+        mFtsSearch = new TaskFtsSearch(mDbHelper);
+        save(CORPUS);
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void matchesAndRanksLikeTheMemorySearch() {
+        TaskSearch memorySearch = new TaskSearch(CORPUS);
+        for (String query : QUERIES) {
+            assertEquals(query, ids(memorySearch.search(query)),
+                    ids(mFtsSearch.search(query, null, CORPUS.size())));
+        }
+    }
+
+    @Test
+    public void writeDropsTheRankingOfTheLastSearch() {
+        String firstId = mFtsSearch.search("call", null, 1).get(0).getId();
+        Task added = new Task("call call call", "call", "id9");
+        save(Arrays.asList(added));
+
+        mFtsSearch.invalidate();
+
+        // The next page ranks again, instead of paging the ranking from before the write.
+        List<Task> tasks = new ArrayList<>(CORPUS);
+        tasks.add(added);
+        List<String> ranked = ids(new TaskSearch(tasks).search("call"));
+        assertEquals(ranked.subList(ranked.indexOf(firstId) + 1, ranked.size()),
+                ids(mFtsSearch.search("call", firstId, tasks.size())));
+    }
+
+    private void save(List<Task> tasks) {
+        SQLiteDatabase db = mDbHelper.getDatabase();
+        db.beginTransaction();
+        try {
+            for (Task task : tasks) {
+                mStatements.upsert(task);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static List<String> ids(List<Task> tasks) {
+        List<String> ids = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+}
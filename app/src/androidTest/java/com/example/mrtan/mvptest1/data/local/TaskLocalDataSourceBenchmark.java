@@ -0,0 +1,196 @@
+package com.example.mrtan.mvptest1.data.local;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.data.source.TasksDataSource;
+import com.example.mrtan.mvptest1.tasks.TasksFilterType;
+import com.example.mrtan.mvptest1.util.AppExecutors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the reads of {@link TaskLocalDataSource}, from the call to the callback, with 100 to
+ * 100k tasks: loading all of them, the active ones, a page from the middle, single tasks and a
+ * search. It is the device side of the JVM {@code DataLayerBenchmark}.
+ * <p>
+ * The tasks of the app are deleted. Results are written to logcat with the
+ * {@code TaskLocalDataSourceBenchmark} tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TaskLocalDataSourceBenchmark {
+
+    private static final String TAG = "TaskLocalDataSourceBenchmark";
+
+    private static final int[] TASK_COUNTS = {100, 1000, 10000, 100000};
+
+    private static final int WARMUP_ROUNDS = 2;
+
+    private static final int MEASURED_ROUNDS = 5;
+
+    private static final int LOOKUPS = 100;
+
+    private static final int PAGE_SIZE = 50;
+
+    private static final long TIMEOUT_SECONDS = 60;
+
+    private TaskLocalDataSource mLocalDataSource;
+
+    @Before
+    public void setUp() {
+        mLocalDataSource = TaskLocalDataSource.getInstance(new AppExecutors(),
+                InstrumentationRegistry.getTargetContext());
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        mLocalDataSource.deleteAllTasks();
+        loadAll();
+    }
+
+    @Test
+    public void reads() throws InterruptedException {
+        for (int count : TASK_COUNTS) {
+            List<Task> tasks = fill(count);
+            final String middleTaskId = tasks.get(count / 2).getId();
+
+            long allNanos = 0;
+            long activeNanos = 0;
+            long pageNanos = 0;
+            long lookupNanos = 0;
+            long searchNanos = 0;
+            for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+                long start = System.nanoTime();
+                assertEquals(count, loadAll().size());
+                long loadedAll = System.nanoTime();
+                loadActive();
+                long loadedActive = System.nanoTime();
+                loadPage(middleTaskId);
+                long loadedPage = System.nanoTime();
+                for (int i = 0; i < LOOKUPS; i++) {
+                    loadTask(tasks.get(i * count / LOOKUPS).getId());
+                }
+                long loadedTasks = System.nanoTime();
+                search("call desc");
+                long searched = System.nanoTime();
+
+                if (round >= WARMUP_ROUNDS) {
+                    allNanos += loadedAll - start;
+                    activeNanos += loadedActive - loadedAll;
+                    pageNanos += loadedPage - loadedActive;
+                    lookupNanos += loadedTasks - loadedPage;
+                    searchNanos += searched - loadedTasks;
+                }
+            }
+            report("getTasks", count, allNanos / MEASURED_ROUNDS);
+            report("getTasks(ACTIVE)", count, activeNanos / MEASURED_ROUNDS);
+            report("getTasks(page)", count, pageNanos / MEASURED_ROUNDS);
+            report("getTask", count, lookupNanos / MEASURED_ROUNDS / LOOKUPS);
+            report("searchTasks", count, searchNanos / MEASURED_ROUNDS);
+        }
+    }
+
+    /**
+     * Replaces the tasks with {@code count} new ones, titled like real lists.
+     */
+    private List<Task> fill(int count) throws InterruptedException {
+        String[] titles = {"Groceries", "Call back", "Pay bills", "Laundry", "Read"};
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add(new Task(titles[i % titles.length], "Description of task " + i,
+                    UUID.randomUUID().toString(), i % 3 == 0));
+        }
+        mLocalDataSource.deleteAllTasks();
+        long start = System.nanoTime();
+        mLocalDataSource.saveTasks(tasks);
+        // Writes run in order on the disk executor, the load waits for them.
+        assertEquals(count, loadAll().size());
+        report("saveTasks", count, System.nanoTime() - start);
+        return tasks;
+    }
+
+    private List<Task> loadAll() throws InterruptedException {
+        LoadTasks callback = new LoadTasks();
+        mLocalDataSource.getTasks(callback);
+        return callback.await();
+    }
+
+    private List<Task> loadActive() throws InterruptedException {
+        LoadTasks callback = new LoadTasks();
+        mLocalDataSource.getTasks(TasksFilterType.ACTIVE_TASKS, callback);
+        return callback.await();
+    }
+
+    private List<Task> loadPage(String afterTaskId) throws InterruptedException {
+        LoadTasks callback = new LoadTasks();
+        mLocalDataSource.getTasks(TasksFilterType.ALL_TASKS, afterTaskId, PAGE_SIZE, callback);
+        return callback.await();
+    }
+
+    private List<Task> search(String query) throws InterruptedException {
+        LoadTasks callback = new LoadTasks();
+        mLocalDataSource.searchTasks(query, null, PAGE_SIZE, callback);
+        return callback.await();
+    }
+
+    private void loadTask(String taskId) throws InterruptedException {
+        final CountDownLatch loaded = new CountDownLatch(1);
+        mLocalDataSource.getTask(taskId, new TasksDataSource.GetTaskCallback() {
+            @Override
+            public void onTaskLoaded(Task task) {
+                loaded.countDown();
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                loaded.countDown();
+            }
+        });
+        assertTrue(loaded.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    private static void report(String read, int count, long nanos) {
+        Log.i(TAG, String.format("%s with %d tasks: %.3f ms", read, count, nanos / 1e6));
+    }
+
+    /**
+     * Waits for the tasks loaded, an empty list if there are none.
+     */
+    private static final class LoadTasks implements TasksDataSource.LoadTasksCallback {
+
+        private final CountDownLatch mLoaded = new CountDownLatch(1);
+
+        private volatile List<Task> mTasks;
+
+        @Override
+        public void onTaskLoaded(List<Task> tasks) {
+            mTasks = tasks;
+            mLoaded.countDown();
+        }
+
+        @Override
+        public void onDataNotAvailable() {
+            mTasks = new ArrayList<>();
+            mLoaded.countDown();
+        }
+
+        List<Task> await() throws InterruptedException {
+            assertTrue(mLoaded.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            return mTasks;
+        }
+    }
+}
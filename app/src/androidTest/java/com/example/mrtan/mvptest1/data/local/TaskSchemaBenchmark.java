@@ -0,0 +1,141 @@
+package com.example.mrtan.mvptest1.data.local;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.mrtan.mvptest1.data.local.TasksPersistenceContract.TaskEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures single task lookup latency at 100, 10k and 100k rows on the version 1 schema (no key,
+ * no index, {@code LIKE} predicate) and on the current schema created by {@link TaskDbHelper}.
+ * <p>
+ * Results are written to logcat with the {@code TaskSchemaBenchmark} tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TaskSchemaBenchmark {
+
+    private static final String TAG = "TaskSchemaBenchmark";
+
+    private static final String LEGACY_DATABASE_NAME = "TasksLegacyBenchmark.db";
+
+    private static final String DATABASE_NAME = "TasksSchemaBenchmark.db";
+
+    private static final int[] ROW_COUNTS = {100, 10000, 100000};
+
+    private static final int LOOKUPS = 200;
+
+    // The version 1 statement, verbatim: the column names run into their types.
+    private static final String SQL_CREATE_V1 = "CREATE TABLE task (_idTEXTPRIMARY KEY," +
+            "entry_idTEXT,titleTEXT,descriptionTEXT,completedINTEGER )";
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(LEGACY_DATABASE_NAME);
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(LEGACY_DATABASE_NAME);
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void lookup_version1Schema() {
+        for (int rows : ROW_COUNTS) {
+            File path = mContext.getDatabasePath(LEGACY_DATABASE_NAME);
+            path.getParentFile().mkdirs();
+            SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(path, null);
+            try {
+                db.execSQL(SQL_CREATE_V1);
+                fill(db, "INSERT INTO task (entry_idTEXT, titleTEXT, descriptionTEXT, " +
+                        "completedINTEGER) VALUES (?, ?, ?, 0)", rows);
+                report("v1 LIKE", rows, lookup(db, "SELECT titleTEXT FROM task " +
+                        "WHERE entry_idTEXT LIKE ?", rows));
+            } finally {
+                db.close();
+                mContext.deleteDatabase(LEGACY_DATABASE_NAME);
+            }
+        }
+    }
+
+    @Test
+    public void lookup_currentSchema() {
+        for (int rows : ROW_COUNTS) {
+            TaskDbHelper helper = new TaskDbHelper(mContext, DATABASE_NAME);
+            try {
+                SQLiteDatabase db = helper.getDatabase();
+                fill(db, "INSERT INTO " + TaskEntry.TABLE_NAME + " (" +
+                        TaskEntry.COLUMN_NAME_ENTRY_ID + ", " + TaskEntry.COLUMN_NAME_TITLE + ", " +
+                        TaskEntry.COLUMN_NAME_DESCRIPTION + ", " +
+                        TaskEntry.COLUMN_NAME_COMPLETED + ") VALUES (?, ?, ?, 0)", rows);
+                report("v" + TaskDbHelper.DATABASE_VERSION + " indexed", rows, lookup(db,
+                        "SELECT " + TaskEntry.COLUMN_NAME_TITLE + " FROM " + TaskEntry.TABLE_NAME +
+                                " WHERE " + TaskEntry.COLUMN_NAME_ENTRY_ID + " = ?", rows));
+            } finally {
+                helper.close();
+                mContext.deleteDatabase(DATABASE_NAME);
+            }
+        }
+    }
+
+    private static void fill(SQLiteDatabase db, String insertSql, int rows) {
+        SQLiteStatement insert = db.compileStatement(insertSql);
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < rows; i++) {
+                insert.bindString(1, taskId(i));
+                insert.bindString(2, "title " + i);
+                insert.bindString(3, "description " + i);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    /**
+     * Looks up {@link #LOOKUPS} ids spread over the table and returns the average nanoseconds per
+     * lookup.
+     */
+    private static long lookup(SQLiteDatabase db, String sql, int rows) {
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            Cursor c = db.rawQuery(sql, new String[]{taskId((int) ((long) i * rows / LOOKUPS))});
+            try {
+                assertTrue(c.moveToFirst());
+            } finally {
+                c.close();
+            }
+        }
+        return (System.nanoTime() - start) / LOOKUPS;
+    }
+
+    private static String taskId(int i) {
+        return String.format("%08d-0000-4000-8000-000000000000", i);
+    }
+
+    private static void report(String schema, int rows, long nanosPerLookup) {
+        Log.i(TAG, String.format("%s: %d rows, %.1f us per lookup", schema, rows,
+                nanosPerLookup / 1000.0));
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.mrtan.mvptest1.data.local;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.data.source.TaskSearch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Measures search-as-you-type over 50k tasks: each keystroke of a few queries searches the first
+ * page with {@link TaskFtsSearch} and with the in-memory {@link TaskSearch}, against the budget
+ * of one 16 ms frame.
+ * <p>
+ * Results are written to logcat with the {@code TaskSearchBenchmark} tag, a keystroke over
+ * budget is marked {@code OVER}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TaskSearchBenchmark {
+
+    private static final String TAG = "TaskSearchBenchmark";
+
+    private static final String DATABASE_NAME = "TasksSearchBenchmark.db";
+
+    private static final int TASK_COUNT = 50000;
+
+    private static final int PAGE_SIZE = 50;
+
+    private static final int WARMUP_ROUNDS = 2;
+
+    private static final int MEASURED_ROUNDS = 5;
+
+    private static final long FRAME_NANOS = 16000000;
+
+    private static final String[] QUERIES = {"call back", "groceries milk", "論文"};
+
+    private Context mContext;
+
+    private TaskDbHelper mDbHelper;
+
+    private List<Task> mTasks;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mDbHelper = new TaskDbHelper(mContext, DATABASE_NAME);
+
+        String[] titles = {"Groceries", "Call back", "Pay bills", "Laundry", "Read 論文"};
+        String[] words = {"milk", "eggs", "bank", "mom", "draft", "café", "meeting"};
+        mTasks = new ArrayList<>(TASK_COUNT);
+        for (int i = 0; i < TASK_COUNT; i++) {
+            mTasks.add(new Task(titles[i % titles.length] + " " + i,
+                    "Description " + words[i % words.length] + " " + words[i / 7 % words.length],
+                    UUID.randomUUID().toString(), i % 3 == 0));
+        }
+        TaskStatements statements = new TaskStatements(mDbHelper);
+        SQLiteDatabase db = mDbHelper.getDatabase();
+        db.beginTransaction();
+        try {
+            for (Task task : mTasks) {
+                statements.upsert(task);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void searchAsYouType_fts() {
+        TaskFtsSearch search = new TaskFtsSearch(mDbHelper);
+        for (String query : QUERIES) {
+            for (int length = 1; length <= query.length(); length++) {
+                String typed = query.substring(0, length);
+                long nanos = 0;
+                for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    search.search(typed, null, PAGE_SIZE);
+                    if (round >= WARMUP_ROUNDS) {
+                        nanos += System.nanoTime() - start;
+                    }
+                }
+                report("fts", typed, nanos / MEASURED_ROUNDS);
+            }
+            assertFalse(search.search(query, null, PAGE_SIZE).isEmpty());
+        }
+    }
+
+    @Test
+    public void searchAsYouType_memory() {
+        long start = System.nanoTime();
+        TaskSearch search = new TaskSearch(mTasks);
+        Log.i(TAG, String.format("memory index of %d tasks built in %.3f ms", TASK_COUNT,
+                (System.nanoTime() - start) / 1e6));
+        for (String query : QUERIES) {
+            for (int length = 1; length <= query.length(); length++) {
+                String typed = query.substring(0, length);
+                long nanos = 0;
+                for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+                    long roundStart = System.nanoTime();
+                    search.search(typed);
+                    if (round >= WARMUP_ROUNDS) {
+                        nanos += System.nanoTime() - roundStart;
+                    }
+                }
+                report("memory", typed, nanos / MEASURED_ROUNDS);
+            }
+            assertFalse(search.search(query).isEmpty());
+        }
+    }
+
+    private static void report(String search, String typed, long nanos) {
+        Log.i(TAG, String.format("%s \"%s\" with %d tasks: %.3f ms%s", search, typed, TASK_COUNT,
+                nanos / 1e6, nanos > FRAME_NANOS ? " OVER" : ""));
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.mrtan.mvptest1;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import com.example.mrtan.mvptest1.data.local.TaskLocalDataSource;
+import com.example.mrtan.mvptest1.data.local.TaskOutboxStore;
+import com.example.mrtan.mvptest1.data.source.TaskRepository;
+import com.example.mrtan.mvptest1.data.source.TasksDataSource;
+import com.example.mrtan.mvptest1.data.source.diagnostics.InstrumentedDataSources;
+import com.example.mrtan.mvptest1.data.source.metrics.MetricsRegistry;
+import com.example.mrtan.mvptest1.data.source.metrics.MetricsReporter;
+import com.example.mrtan.mvptest1.data.source.outbox.OutboxTasksDataSource;
+import com.example.mrtan.mvptest1.data.source.remote.TasksRemoteDataSource;
+import com.example.mrtan.mvptest1.util.AppExecutors;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Builds the {@link TaskRepository} and its data sources. The remote data source is reached
+ * through the {@link OutboxTasksDataSource}, so writes survive being offline and are sent in
+ * batches. In the {@code profile} flavor both data sources are wrapped in the diagnostic
+ * decorators of {@link InstrumentedDataSources}, the remote one under the outbox so its real
+ * calls are measured, and the metrics of the repository are dumped every
+ * {@link #METRICS_PERIOD_MINUTES} minutes to logcat and {@link #METRICS_FILE_NAME}.
+ *
+ * 创建TaskRepository及其数据源，远程数据源的写操作经过outbox
+ */
+public class Injection {
+
+    static final long METRICS_PERIOD_MINUTES = 1;
+
+    /**
+     * File the metrics are appended to, in the external files directory so QA can pull it.
+     */
+    static final String METRICS_FILE_NAME = "task_metrics.txt";
+
+    private static volatile AppExecutors sAppExecutors;
+
+    private static MetricsReporter sMetricsReporter;
+
+    private Injection() {
+    }
+
+    public static TaskRepository provideTasksRepository(@NonNull Context context) {
+        checkNotNull(context);
+        Context appContext = context.getApplicationContext();
+        AppExecutors appExecutors = provideAppExecutors();
+        OutboxTasksDataSource remoteDataSource = OutboxTasksDataSource.getInstance(
+                InstrumentedDataSources.remote(TasksRemoteDataSource.getInstance()),
+                TaskOutboxStore.getInstance(appExecutors, appContext), appExecutors);
+        TasksDataSource localDataSource = InstrumentedDataSources.local(
+                TaskLocalDataSource.getInstance(appExecutors, appContext));
+        TaskRepository repository = TaskRepository.getInstance(remoteDataSource, localDataSource);
+        if (BuildConfig.INSTRUMENT_DATA_SOURCES) {
+            startMetricsReporter(appContext, repository);
+        }
+        return repository;
+    }
+
+    /**
+     * Registers the metrics of {@code repository} and starts reporting them, once per process.
+     */
+    private static synchronized void startMetricsReporter(Context context,
+                                                          TaskRepository repository) {
+        if (sMetricsReporter != null) {
+            return;
+        }
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        repository.registerMetrics(registry);
+        File directory = context.getExternalFilesDir(null);
+        sMetricsReporter = new MetricsReporter(registry,
+                directory != null ? new File(directory, METRICS_FILE_NAME) : null);
+        sMetricsReporter.start(TimeUnit.MINUTES.toMillis(METRICS_PERIOD_MINUTES));
+    }
+
+    /**
+     * The executors are shared, each pool is created once.
+     */
+    public static AppExecutors provideAppExecutors() {
+        if (sAppExecutors == null) {
+            synchronized (Injection.class) {
+                if (sAppExecutors == null) {
+                    sAppExecutors = new AppExecutors();
+                }
+            }
+        }
+        return sAppExecutors;
+    }
+}
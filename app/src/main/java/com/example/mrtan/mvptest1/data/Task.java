@@ -1,10 +1,12 @@
 package com.example.mrtan.mvptest1.data;
 
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
 
 import com.google.common.base.Objects;
 
+import java.util.List;
 import java.util.UUID;
 
 public final class Task {
@@ -19,6 +21,12 @@ public final class Task {
 
     private final boolean mCompleted;
 
+    /**
+     * Stamp of the last change of this task on the server, 0 if it was never synced.
+     * 服务器上最后一次修改的版本号，未同步时为0
+     */
+    private final long mVersion;
+
     /**
      * use this constructor to create a new active Task
      *
@@ -30,6 +38,7 @@ public final class Task {
         mTitle = title;
         mDescription = description;
         mCompleted = false;
+        mVersion = 0;
     }
 
     /**
@@ -44,6 +53,7 @@ public final class Task {
         mTitle = title;
         mDescription = description;
         mCompleted = false;
+        mVersion = 0;
     }
 
     /**
@@ -58,6 +68,7 @@ public final class Task {
         mTitle = title;
         mDescription = description;
         mCompleted = completed;
+        mVersion = 0;
     }
 
     /**
@@ -69,10 +80,25 @@ public final class Task {
      * @param completed   是否已完成
      */
     public Task(@Nullable String title, @Nullable String description, String id, boolean completed) {
+        this(title, description, id, completed, 0);
+    }
+
+    /**
+     * Use this constructor for a Task loaded from a data source that tracks versions
+     *
+     * @param title       名称
+     * @param description 描述
+     * @param id          id
+     * @param completed   是否已完成
+     * @param version     服务器上的版本号
+     */
+    public Task(@Nullable String title, @Nullable String description, String id, boolean completed,
+                long version) {
         mId = id;
         mCompleted = completed;
         mTitle = title;
         mDescription = description;
+        mVersion = version;
     }
 
     public String getId() {
@@ -102,10 +128,42 @@ public final class Task {
         return mCompleted;
     }
 
+    public long getVersion() {
+        return mVersion;
+    }
+
     public boolean isEmpty() {
         return TextUtils.isEmpty(mTitle) && TextUtils.isEmpty(mDescription);
     }
 
+    /**
+     * Compares all the fields, where {@link #equals(Object)} ignores the completed state and the
+     * version. Two {@code null}s are the same.
+     * 比较所有字段，包括equals忽略的完成状态和版本号
+     */
+    public static boolean sameContent(@Nullable Task task, @Nullable Task otherTask) {
+        if (task == null || otherTask == null) {
+            return task == otherTask;
+        }
+        return task.equals(otherTask) && task.mCompleted == otherTask.mCompleted
+                && task.mVersion == otherTask.mVersion;
+    }
+
+    /**
+     * @return whether both lists hold tasks with the same content, in the same order
+     */
+    public static boolean sameContent(@NonNull List<Task> tasks, @NonNull List<Task> otherTasks) {
+        if (tasks.size() != otherTasks.size()) {
+            return false;
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            if (!sameContent(tasks.get(i), otherTasks.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,503 @@
+package com.example.mrtan.mvptest1.data;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Compact, versioned binary format for streams of {@link Task}s, for snapshots, queues and
+ * payloads that don't need to be read by anything else than this app.
+ * <p>
+ * A stream starts with the magic bytes {@code 'T' 'K'}, the format version and a flags byte, and
+ * ends with a zero byte. Each task starts with a non-zero flags byte saying which fields follow:
+ * <ul>
+ * <li>an id in the canonical lower case form of a random {@link UUID} is stored as its two longs,
+ * any other id as a string;</li>
+ * <li>the title and the description are only stored if not {@code null};</li>
+ * <li>completed is a bit of the flags byte;</li>
+ * <li>the version is only stored if not 0, as a varint.</li>
+ * </ul>
+ * Strings are stored as a varint header and their UTF-8 bytes. When the stream interns strings,
+ * the first short strings are numbered in the order they appear, and a repeated one is stored as
+ * its number instead. Writer and reader number the same strings, so the table is never stored.
+ * <p>
+ * Readers reject versions they don't know, a new version must keep reading the older ones.
+ *
+ * 任务的紧凑二进制格式：变长整数、UUID存为两个long、完成状态为一位、可选的字符串复用
+ */
+public final class TaskCodec {
+
+    /**
+     * Version of the format written by this class.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC_0 = 'T';
+
+    private static final int MAGIC_1 = 'K';
+
+    private static final int STREAM_INTERNS_STRINGS = 1;
+
+    private static final int END_OF_STREAM = 0;
+
+    private static final int TASK = 1;
+
+    private static final int TASK_COMPLETED = 1 << 1;
+
+    private static final int TASK_UUID_ID = 1 << 2;
+
+    private static final int TASK_HAS_TITLE = 1 << 3;
+
+    private static final int TASK_HAS_DESCRIPTION = 1 << 4;
+
+    private static final int TASK_HAS_VERSION = 1 << 5;
+
+    /**
+     * Longest string, in UTF-8 bytes, that is interned. Longer ones are rarely repeated.
+     */
+    private static final int MAX_INTERNED_LENGTH = 64;
+
+    /**
+     * Most strings interned by a stream, so a reader's table stays small.
+     */
+    private static final int MAX_INTERNED_STRINGS = 4096;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int UUID_LENGTH = 36;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private TaskCodec() {
+    }
+
+    /**
+     * @return {@code tasks} encoded in one stream that interns strings
+     */
+    @NonNull
+    public static byte[] encode(@NonNull List<Task> tasks) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 * (tasks.size() + 1));
+        try {
+            Writer writer = new Writer(bytes, true);
+            for (Task task : tasks) {
+                writer.write(task);
+            }
+            writer.finish();
+        } catch (IOException e) {
+            // ByteArrayOutputStream doesn't throw.
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return all the tasks of the stream in {@code bytes}
+     * @throws IOException if it isn't a whole stream of a known version
+     */
+    @NonNull
+    public static List<Task> decode(@NonNull byte[] bytes) throws IOException {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * @return all the tasks of the stream from the position of {@code buffer}, which can be a
+     * memory-mapped file
+     * @throws IOException if it isn't a whole stream of a known version
+     */
+    @NonNull
+    public static List<Task> decode(@NonNull ByteBuffer buffer) throws IOException {
+        Reader reader = new Reader(new ByteBufferInputStream(buffer));
+        List<Task> tasks = new ArrayList<>();
+        Task task;
+        while ((task = reader.read()) != null) {
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    /**
+     * Writes tasks one by one to a stream, with its own buffer. The output stream is neither
+     * flushed nor closed before {@link #finish()}, and it is never closed by this class.
+     */
+    public static final class Writer {
+
+        private final OutputStream mOutput;
+
+        @Nullable
+        private final Map<String, Integer> mInternedStrings;
+
+        private final byte[] mBuffer = new byte[BUFFER_SIZE];
+
+        private int mPosition;
+
+        private boolean mFinished;
+
+        public Writer(@NonNull OutputStream output, boolean internStrings) throws IOException {
+            mOutput = checkNotNull(output);
+            mInternedStrings = internStrings ? new HashMap<String, Integer>() : null;
+            writeByte(MAGIC_0);
+            writeByte(MAGIC_1);
+            writeByte(FORMAT_VERSION);
+            writeByte(internStrings ? STREAM_INTERNS_STRINGS : 0);
+        }
+
+        public void write(@NonNull Task task) throws IOException {
+            checkNotNull(task);
+            if (mFinished) {
+                throw new IllegalStateException("Stream already finished");
+            }
+            String id = task.getId();
+            boolean uuidId = isCanonicalUuid(id);
+            int flags = TASK;
+            if (task.isCompleted()) {
+                flags |= TASK_COMPLETED;
+            }
+            if (uuidId) {
+                flags |= TASK_UUID_ID;
+            }
+            if (task.getTitle() != null) {
+                flags |= TASK_HAS_TITLE;
+            }
+            if (task.getDescription() != null) {
+                flags |= TASK_HAS_DESCRIPTION;
+            }
+            if (task.getVersion() != 0) {
+                flags |= TASK_HAS_VERSION;
+            }
+            writeByte(flags);
+
+            if (uuidId) {
+                writeLong(parseHex(id, 0, 8) << 32 | parseHex(id, 9, 13) << 16
+                        | parseHex(id, 14, 18));
+                writeLong(parseHex(id, 19, 23) << 48 | parseHex(id, 24, 36));
+            } else {
+                writeString(id);
+            }
+            if (task.getTitle() != null) {
+                writeString(task.getTitle());
+            }
+            if (task.getDescription() != null) {
+                writeString(task.getDescription());
+            }
+            if (task.getVersion() != 0) {
+                writeVarLong(task.getVersion());
+            }
+        }
+
+        /**
+         * Ends the stream and flushes it. Nothing can be written after.
+         */
+        public void finish() throws IOException {
+            if (mFinished) {
+                return;
+            }
+            writeByte(END_OF_STREAM);
+            mFinished = true;
+            flushBuffer();
+            mOutput.flush();
+        }
+
+        private void writeString(String value) throws IOException {
+            if (mInternedStrings != null) {
+                Integer index = mInternedStrings.get(value);
+                if (index != null) {
+                    writeVarLong((long) index << 1 | 1);
+                    return;
+                }
+            }
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarLong((long) bytes.length << 1);
+            writeBytes(bytes);
+            if (mInternedStrings != null && bytes.length <= MAX_INTERNED_LENGTH
+                    && mInternedStrings.size() < MAX_INTERNED_STRINGS) {
+                mInternedStrings.put(value, mInternedStrings.size());
+            }
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            ensureSpace(10);
+            while ((value & ~0x7fL) != 0) {
+                mBuffer[mPosition++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            mBuffer[mPosition++] = (byte) value;
+        }
+
+        private void writeLong(long value) throws IOException {
+            ensureSpace(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                mBuffer[mPosition++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void writeByte(int value) throws IOException {
+            ensureSpace(1);
+            mBuffer[mPosition++] = (byte) value;
+        }
+
+        private void writeBytes(byte[] bytes) throws IOException {
+            if (bytes.length > mBuffer.length - mPosition) {
+                flushBuffer();
+                if (bytes.length > mBuffer.length) {
+                    mOutput.write(bytes);
+                    return;
+                }
+            }
+            System.arraycopy(bytes, 0, mBuffer, mPosition, bytes.length);
+            mPosition += bytes.length;
+        }
+
+        private void ensureSpace(int length) throws IOException {
+            if (mBuffer.length - mPosition < length) {
+                flushBuffer();
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            mOutput.write(mBuffer, 0, mPosition);
+            mPosition = 0;
+        }
+    }
+
+    /**
+     * Reads tasks one by one from a stream, with its own buffer, so it may read past the end of
+     * the stream. The input stream is never closed by this class.
+     */
+    public static final class Reader {
+
+        private final InputStream mInput;
+
+        @Nullable
+        private final List<String> mInternedStrings;
+
+        private final byte[] mBuffer = new byte[BUFFER_SIZE];
+
+        private int mPosition;
+
+        private int mLimit;
+
+        private boolean mEnded;
+
+        /**
+         * Reads the header of the stream.
+         *
+         * @throws IOException if it isn't a stream of a known version
+         */
+        public Reader(@NonNull InputStream input) throws IOException {
+            mInput = checkNotNull(input);
+            if (readByte() != MAGIC_0 || readByte() != MAGIC_1) {
+                throw new IOException("Not a task stream");
+            }
+            int version = readByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported format version " + version);
+            }
+            int flags = readByte();
+            mInternedStrings = (flags & STREAM_INTERNS_STRINGS) != 0
+                    ? new ArrayList<String>() : null;
+        }
+
+        /**
+         * @return the next task, or {@code null} at the end of the stream
+         * @throws IOException if the stream is truncated or corrupt
+         */
+        @Nullable
+        public Task read() throws IOException {
+            if (mEnded) {
+                return null;
+            }
+            int flags = readByte();
+            if (flags == END_OF_STREAM) {
+                mEnded = true;
+                return null;
+            }
+            String id;
+            if ((flags & TASK_UUID_ID) != 0) {
+                id = new UUID(readLong(), readLong()).toString();
+            } else {
+                id = readString();
+            }
+            String title = (flags & TASK_HAS_TITLE) != 0 ? readString() : null;
+            String description = (flags & TASK_HAS_DESCRIPTION) != 0 ? readString() : null;
+            long version = (flags & TASK_HAS_VERSION) != 0 ? readVarLong() : 0;
+            return new Task(title, description, id, (flags & TASK_COMPLETED) != 0, version);
+        }
+
+        private String readString() throws IOException {
+            long header = readVarLong();
+            if ((header & 1) != 0) {
+                long index = header >>> 1;
+                if (mInternedStrings == null || index >= mInternedStrings.size()) {
+                    throw new IOException("Bad string reference " + index);
+                }
+                return mInternedStrings.get((int) index);
+            }
+            long length = header >>> 1;
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Bad string length " + length);
+            }
+            String value = readUtf8((int) length);
+            if (mInternedStrings != null && length <= MAX_INTERNED_LENGTH
+                    && mInternedStrings.size() < MAX_INTERNED_STRINGS) {
+                mInternedStrings.add(value);
+            }
+            return value;
+        }
+
+        private String readUtf8(int length) throws IOException {
+            if (length <= mBuffer.length) {
+                require(length);
+                String value = new String(mBuffer, mPosition, length, UTF_8);
+                mPosition += length;
+                return value;
+            }
+            int read = mLimit - mPosition;
+            if (mInput instanceof ByteBufferInputStream
+                    && length - read > ((ByteBufferInputStream) mInput).remaining()) {
+                throw new IOException("String length " + length + " past the end of the stream");
+            }
+            // Other streams don't know their length: the array grows with the bytes actually
+            // read, so a corrupt length ends in an EOFException instead of a huge allocation.
+            byte[] bytes = new byte[Math.min(length, 2 * BUFFER_SIZE)];
+            System.arraycopy(mBuffer, mPosition, bytes, 0, read);
+            mPosition = mLimit;
+            while (read < length) {
+                if (read == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * bytes.length));
+                }
+                int count = mInput.read(bytes, read, bytes.length - read);
+                if (count < 0) {
+                    throw new EOFException();
+                }
+                read += count;
+            }
+            return new String(bytes, UTF_8);
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        private long readLong() throws IOException {
+            require(8);
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = value << 8 | (mBuffer[mPosition++] & 0xff);
+            }
+            return value;
+        }
+
+        private int readByte() throws IOException {
+            require(1);
+            return mBuffer[mPosition++] & 0xff;
+        }
+
+        /**
+         * Makes sure the next {@code length} bytes, at most the size of the buffer, are buffered.
+         */
+        private void require(int length) throws IOException {
+            if (mLimit - mPosition >= length) {
+                return;
+            }
+            int remaining = mLimit - mPosition;
+            System.arraycopy(mBuffer, mPosition, mBuffer, 0, remaining);
+            mPosition = 0;
+            mLimit = remaining;
+            while (mLimit < length) {
+                int count = mInput.read(mBuffer, mLimit, mBuffer.length - mLimit);
+                if (count < 0) {
+                    throw new EOFException();
+                }
+                mLimit += count;
+            }
+        }
+    }
+
+    /**
+     * @return whether {@code id} is a UUID as written by {@link UUID#toString()}, so it can be
+     * stored as two longs and read back identical
+     */
+    private static boolean isCanonicalUuid(@Nullable String id) {
+        if (id == null || id.length() != UUID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char c = id.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseHex(String value, int start, int end) {
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            result = result << 4 | Character.digit(value.charAt(i), 16);
+        }
+        return result;
+    }
+
+    /**
+     * Reads a {@link ByteBuffer} in bulk, without copying it first.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer mBuffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        int remaining() {
+            return mBuffer.remaining();
+        }
+
+        @Override
+        public int available() {
+            return mBuffer.remaining();
+        }
+
+        @Override
+        public int read() {
+            return mBuffer.hasRemaining() ? mBuffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(@NonNull byte[] bytes, int offset, int length) {
+            if (!mBuffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, mBuffer.remaining());
+            mBuffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.mrtan.mvptest1.data.local;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.data.local.TasksPersistenceContract.TaskEntry;
+
+/**
+ * Maps rows of a task cursor to {@link Task}s. Column indices are resolved once when the mapper
+ * is created instead of once per row.
+ *
+ * 将游标的行转换为Task，列索引只在创建时查找一次
+ */
+final class TaskCursorMapper {
+
+    /**
+     * The columns every task query selects, shared so queries don't rebuild the array per call.
+     */
+    static final String[] PROJECTION = {
+            TaskEntry.COLUMN_NAME_ENTRY_ID,
+            TaskEntry.COLUMN_NAME_TITLE,
+            TaskEntry.COLUMN_NAME_DESCRIPTION,
+            TaskEntry.COLUMN_NAME_COMPLETED,
+            TaskEntry.COLUMN_NAME_VERSION
+    };
+
+    private final int mEntryIdIndex;
+
+    private final int mTitleIndex;
+
+    private final int mDescriptionIndex;
+
+    private final int mCompletedIndex;
+
+    private final int mVersionIndex;
+
+    TaskCursorMapper(@NonNull Cursor c) {
+        mEntryIdIndex = c.getColumnIndexOrThrow(TaskEntry.COLUMN_NAME_ENTRY_ID);
+        mTitleIndex = c.getColumnIndexOrThrow(TaskEntry.COLUMN_NAME_TITLE);
+        mDescriptionIndex = c.getColumnIndexOrThrow(TaskEntry.COLUMN_NAME_DESCRIPTION);
+        mCompletedIndex = c.getColumnIndexOrThrow(TaskEntry.COLUMN_NAME_COMPLETED);
+        mVersionIndex = c.getColumnIndexOrThrow(TaskEntry.COLUMN_NAME_VERSION);
+    }
+
+    /**
+     * Maps the row the cursor is currently positioned on.
+     */
+    @NonNull
+    Task map(@NonNull Cursor c) {
+        return new Task(c.getString(mTitleIndex), c.getString(mDescriptionIndex),
+                c.getString(mEntryIdIndex), c.getInt(mCompletedIndex) == 1,
+                c.getLong(mVersionIndex));
+    }
+}
@@ -1,42 +1,304 @@
 package com.example.mrtan.mvptest1.data.local;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 
+import com.example.mrtan.mvptest1.data.local.TasksPersistenceContract.CompletionStatsEntry;
+import com.example.mrtan.mvptest1.data.local.TasksPersistenceContract.OutboxEntry;
+import com.example.mrtan.mvptest1.data.local.TasksPersistenceContract.SyncStateEntry;
+import com.example.mrtan.mvptest1.data.local.TasksPersistenceContract.TaskFtsEntry;
+import com.example.mrtan.mvptest1.data.local.TasksPersistenceContract.TaskEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Owns the single, long-lived connection to the tasks database.
+ * <p>
+ * The connection is opened lazily on first use and kept open for the lifetime of the process, so
+ * callers must not close the {@link SQLiteDatabase} they get from {@link #getDatabase()}.
+ * Write-ahead logging is enabled so readers don't wait behind writers and hot pages stay cached
+ * between calls.
+ *
+ * 持有一个长期打开的数据库连接并开启WAL，调用方不要关闭数据库
+ */
 public class TaskDbHelper extends SQLiteOpenHelper{
 
-    public static final int DATABASE_VERSION =1;
+    /**
+     * Version 2 fixes the column definitions (version 1 was missing the spaces between names and
+     * types), makes {@code entry_id} a unique key and indexes {@code completed}. Version 3 adds
+     * the task {@code version} stamps and the sync state table used by delta syncs. Version 4
+     * adds the outbox of writes waiting for the remote data source. Version 5 adds the full-text
+     * index of the tasks. Version 6 adds the completions by day.
+     */
+    public static final int DATABASE_VERSION = 6;
 
     public static final String DATABASE_NAME = "Tasks.db";
 
-    private static final String TEXT_TYPE = "TEXT";
+    private static final String TEXT_TYPE = " TEXT";
+
+    private static final String BOOLEAN_TYPE = " INTEGER";
 
-    private static final String BOOLEAN_TYPE = "INTEGER";
+    private static final String INTEGER_TYPE = " INTEGER";
 
     private static final String COMMA_SEP = ",";
 
+    private static final String INDEX_COMPLETED = "task_completed_index";
+
     private static final String SQL_CREATE_ENTRIES =
-            "CREATE TABLE " + TasksPersistenceContract.TaskEntry.TABLE_NAME + " (" +
-                TasksPersistenceContract.TaskEntry._ID + TEXT_TYPE + "PRIMARY KEY," +
-                TasksPersistenceContract.TaskEntry.COLUMN_NAME_ENTRY_ID + TEXT_TYPE + COMMA_SEP +
-                TasksPersistenceContract.TaskEntry.COLUMN_NAME_TITLE + TEXT_TYPE + COMMA_SEP +
-                TasksPersistenceContract.TaskEntry.COLUMN_NAME_DESCRIPTION + TEXT_TYPE + COMMA_SEP +
-                TasksPersistenceContract.TaskEntry.COLUMN_NAME_COMPLETED + BOOLEAN_TYPE +
+            "CREATE TABLE " + TaskEntry.TABLE_NAME + " (" +
+                TaskEntry._ID + " INTEGER PRIMARY KEY" + COMMA_SEP +
+                TaskEntry.COLUMN_NAME_ENTRY_ID + TEXT_TYPE + " NOT NULL UNIQUE" + COMMA_SEP +
+                TaskEntry.COLUMN_NAME_TITLE + TEXT_TYPE + COMMA_SEP +
+                TaskEntry.COLUMN_NAME_DESCRIPTION + TEXT_TYPE + COMMA_SEP +
+                TaskEntry.COLUMN_NAME_COMPLETED + BOOLEAN_TYPE + " NOT NULL DEFAULT 0" + COMMA_SEP +
+                TaskEntry.COLUMN_NAME_VERSION + INTEGER_TYPE + " NOT NULL DEFAULT 0" +
+            " )";
+
+    private static final String SQL_CREATE_ENTRIES_V2 =
+            "CREATE TABLE " + TaskEntry.TABLE_NAME + " (" +
+                TaskEntry._ID + " INTEGER PRIMARY KEY" + COMMA_SEP +
+                TaskEntry.COLUMN_NAME_ENTRY_ID + TEXT_TYPE + " NOT NULL UNIQUE" + COMMA_SEP +
+                TaskEntry.COLUMN_NAME_TITLE + TEXT_TYPE + COMMA_SEP +
+                TaskEntry.COLUMN_NAME_DESCRIPTION + TEXT_TYPE + COMMA_SEP +
+                TaskEntry.COLUMN_NAME_COMPLETED + BOOLEAN_TYPE + " NOT NULL DEFAULT 0" +
             " )";
 
+    private static final String SQL_ADD_VERSION_COLUMN =
+            "ALTER TABLE " + TaskEntry.TABLE_NAME + " ADD COLUMN " +
+                    TaskEntry.COLUMN_NAME_VERSION + INTEGER_TYPE + " NOT NULL DEFAULT 0";
+
+    private static final String SQL_CREATE_SYNC_STATE =
+            "CREATE TABLE " + SyncStateEntry.TABLE_NAME + " (" +
+                SyncStateEntry.COLUMN_NAME_KEY + TEXT_TYPE + " PRIMARY KEY" + COMMA_SEP +
+                SyncStateEntry.COLUMN_NAME_VALUE + INTEGER_TYPE +
+            " )";
+
+    private static final String SQL_CREATE_COMPLETED_INDEX =
+            "CREATE INDEX " + INDEX_COMPLETED + " ON " + TaskEntry.TABLE_NAME +
+                    " (" + TaskEntry.COLUMN_NAME_COMPLETED + ")";
+
+    private static final String SQL_CREATE_OUTBOX =
+            "CREATE TABLE " + OutboxEntry.TABLE_NAME + " (" +
+                OutboxEntry._ID + " INTEGER PRIMARY KEY" + COMMA_SEP +
+                OutboxEntry.COLUMN_NAME_TYPE + INTEGER_TYPE + " NOT NULL" + COMMA_SEP +
+                OutboxEntry.COLUMN_NAME_ENTRY_ID + TEXT_TYPE + COMMA_SEP +
+                OutboxEntry.COLUMN_NAME_TITLE + TEXT_TYPE + COMMA_SEP +
+                OutboxEntry.COLUMN_NAME_DESCRIPTION + TEXT_TYPE + COMMA_SEP +
+                OutboxEntry.COLUMN_NAME_COMPLETED + BOOLEAN_TYPE + " NOT NULL DEFAULT 0" +
+            " )";
+
+    private static final String SQL_CREATE_COMPLETION_STATS =
+            "CREATE TABLE " + CompletionStatsEntry.TABLE_NAME + " (" +
+                CompletionStatsEntry.COLUMN_NAME_DAY + INTEGER_TYPE + " PRIMARY KEY" + COMMA_SEP +
+                CompletionStatsEntry.COLUMN_NAME_COUNT + INTEGER_TYPE + " NOT NULL" +
+            " )";
+
+    // FTS4 without external content, which needs a newer SQLite than API 15 ships.
+    private static final String SQL_CREATE_FTS =
+            "CREATE VIRTUAL TABLE " + TaskFtsEntry.TABLE_NAME + " USING fts4(" +
+                TaskFtsEntry.COLUMN_NAME_TITLE + COMMA_SEP +
+                TaskFtsEntry.COLUMN_NAME_DESCRIPTION +
+            ")";
+
+    private static final String SQL_POPULATE_FTS =
+            "INSERT INTO " + TaskFtsEntry.TABLE_NAME + " (" +
+                TaskFtsEntry.COLUMN_NAME_DOCID + COMMA_SEP +
+                TaskFtsEntry.COLUMN_NAME_TITLE + COMMA_SEP +
+                TaskFtsEntry.COLUMN_NAME_DESCRIPTION + ") SELECT " +
+                TaskEntry._ID + COMMA_SEP +
+                TaskEntry.COLUMN_NAME_TITLE + COMMA_SEP +
+                TaskEntry.COLUMN_NAME_DESCRIPTION +
+            " FROM " + TaskEntry.TABLE_NAME;
+
+    private static final String SQL_CREATE_FTS_INSERT_TRIGGER =
+            "CREATE TRIGGER task_fts_insert AFTER INSERT ON " + TaskEntry.TABLE_NAME + " BEGIN" +
+                " INSERT INTO " + TaskFtsEntry.TABLE_NAME + " (" +
+                TaskFtsEntry.COLUMN_NAME_DOCID + COMMA_SEP +
+                TaskFtsEntry.COLUMN_NAME_TITLE + COMMA_SEP +
+                TaskFtsEntry.COLUMN_NAME_DESCRIPTION + ") VALUES (new." +
+                TaskEntry._ID + COMMA_SEP + " new." +
+                TaskEntry.COLUMN_NAME_TITLE + COMMA_SEP + " new." +
+                TaskEntry.COLUMN_NAME_DESCRIPTION + ");" +
+            " END";
+
+    // Completing a task doesn't touch the index.
+    private static final String SQL_CREATE_FTS_UPDATE_TRIGGER =
+            "CREATE TRIGGER task_fts_update AFTER UPDATE OF " +
+                TaskEntry.COLUMN_NAME_TITLE + COMMA_SEP + " " +
+                TaskEntry.COLUMN_NAME_DESCRIPTION + " ON " + TaskEntry.TABLE_NAME + " BEGIN" +
+                " UPDATE " + TaskFtsEntry.TABLE_NAME + " SET " +
+                TaskFtsEntry.COLUMN_NAME_TITLE + " = new." + TaskEntry.COLUMN_NAME_TITLE +
+                COMMA_SEP + " " +
+                TaskFtsEntry.COLUMN_NAME_DESCRIPTION + " = new." +
+                TaskEntry.COLUMN_NAME_DESCRIPTION +
+                " WHERE " + TaskFtsEntry.COLUMN_NAME_DOCID + " = old." + TaskEntry._ID + ";" +
+            " END";
+
+    private static final String SQL_CREATE_FTS_DELETE_TRIGGER =
+            "CREATE TRIGGER task_fts_delete AFTER DELETE ON " + TaskEntry.TABLE_NAME + " BEGIN" +
+                " DELETE FROM " + TaskFtsEntry.TABLE_NAME +
+                " WHERE " + TaskFtsEntry.COLUMN_NAME_DOCID + " = old." + TaskEntry._ID + ";" +
+            " END";
+
+    private static volatile TaskDbHelper INSTANCE;
+
+    /**
+     * Returns the helper shared by everything that uses the tasks database, so there is a single
+     * connection per process.
+     * 所有使用数据库的类共享同一个连接
+     */
+    public static TaskDbHelper getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (TaskDbHelper.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new TaskDbHelper(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
 
     public TaskDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    @VisibleForTesting
+    TaskDbHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+    }
+
+    /**
+     * Returns the shared connection, opening it if necessary. Never close the returned database,
+     * it is reused by every subsequent call.
+     */
+    public SQLiteDatabase getDatabase() {
+        return getWritableDatabase();
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // Only called on API 16+, older versions enable WAL in onOpen().
+        db.enableWriteAheadLogging();
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && !db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+        }
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(SQL_CREATE_ENTRIES);
+        db.execSQL(SQL_CREATE_COMPLETED_INDEX);
+        db.execSQL(SQL_CREATE_SYNC_STATE);
+        db.execSQL(SQL_CREATE_OUTBOX);
+        createFts(db);
+        db.execSQL(SQL_CREATE_COMPLETION_STATS);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            migrateToVersion2(db);
+        }
+        if (oldVersion < 3) {
+            // Existing rows were never synced with versions, the next sync is a full resync.
+            db.execSQL(SQL_ADD_VERSION_COLUMN);
+            db.execSQL(SQL_CREATE_SYNC_STATE);
+        }
+        if (oldVersion < 4) {
+            db.execSQL(SQL_CREATE_OUTBOX);
+        }
+        if (oldVersion < 5) {
+            createFts(db);
+            db.execSQL(SQL_POPULATE_FTS);
+        }
+        if (oldVersion < 6) {
+            // Earlier completions weren't recorded by day.
+            db.execSQL(SQL_CREATE_COMPLETION_STATS);
+        }
+    }
+
+    private static void createFts(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_FTS);
+        db.execSQL(SQL_CREATE_FTS_INSERT_TRIGGER);
+        db.execSQL(SQL_CREATE_FTS_UPDATE_TRIGGER);
+        db.execSQL(SQL_CREATE_FTS_DELETE_TRIGGER);
+    }
+
+    /**
+     * Copies the version 1 rows into the version 2 table. Version 1 columns were created as e.g.
+     * {@code entry_idTEXT}, so the old names are looked up by prefix. If a task id was saved more
+     * than once the last row wins.
+     * 从v1迁移数据，v1的列名和类型连在一起，按前缀查找旧列名
+     */
+    private static void migrateToVersion2(SQLiteDatabase db) {
+        String legacyTable = TaskEntry.TABLE_NAME + "_v1";
+        db.execSQL("ALTER TABLE " + TaskEntry.TABLE_NAME + " RENAME TO " + legacyTable);
+        db.execSQL(SQL_CREATE_ENTRIES_V2);
+        db.execSQL(SQL_CREATE_COMPLETED_INDEX);
+
+        List<String> legacyColumns = getColumnNames(db, legacyTable);
+        String entryId = findLegacyColumn(legacyColumns, TaskEntry.COLUMN_NAME_ENTRY_ID);
+        if (entryId != null) {
+            String title = findLegacyColumn(legacyColumns, TaskEntry.COLUMN_NAME_TITLE);
+            String description = findLegacyColumn(legacyColumns, TaskEntry.COLUMN_NAME_DESCRIPTION);
+            String completed = findLegacyColumn(legacyColumns, TaskEntry.COLUMN_NAME_COMPLETED);
+            db.execSQL("INSERT OR REPLACE INTO " + TaskEntry.TABLE_NAME + " (" +
+                    TaskEntry.COLUMN_NAME_ENTRY_ID + COMMA_SEP +
+                    TaskEntry.COLUMN_NAME_TITLE + COMMA_SEP +
+                    TaskEntry.COLUMN_NAME_DESCRIPTION + COMMA_SEP +
+                    TaskEntry.COLUMN_NAME_COMPLETED + ") SELECT " +
+                    quote(entryId) + COMMA_SEP +
+                    (title == null ? "NULL" : quote(title)) + COMMA_SEP +
+                    (description == null ? "NULL" : quote(description)) + COMMA_SEP +
+                    (completed == null ? "0" : "COALESCE(" + quote(completed) + ", 0)") +
+                    " FROM " + legacyTable +
+                    " WHERE " + quote(entryId) + " IS NOT NULL ORDER BY rowid");
+        }
+        db.execSQL("DROP TABLE " + legacyTable);
+    }
+
+    private static List<String> getColumnNames(SQLiteDatabase db, String table) {
+        List<String> columns = new ArrayList<>();
+        Cursor c = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            int nameIndex = c.getColumnIndexOrThrow("name");
+            while (c.moveToNext()) {
+                columns.add(c.getString(nameIndex));
+            }
+        } finally {
+            c.close();
+        }
+        return columns;
+    }
+
+    @Nullable
+    private static String findLegacyColumn(List<String> columns, String name) {
+        for (String column : columns) {
+            if (column.equals(name)) {
+                return column;
+            }
+        }
+        for (String column : columns) {
+            if (column.startsWith(name)) {
+                return column;
+            }
+        }
+        return null;
+    }
 
+    private static String quote(String column) {
+        return "\"" + column + "\"";
     }
 }
@@ -0,0 +1,207 @@
+package com.example.mrtan.mvptest1.data.local;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.data.local.TasksPersistenceContract.TaskEntry;
+import com.example.mrtan.mvptest1.data.local.TasksPersistenceContract.TaskFtsEntry;
+import com.example.mrtan.mvptest1.data.source.TaskSearch;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ranked search on the full-text index of the tasks.
+ * <p>
+ * A search only reads the ids of the matching tasks and their {@code matchinfo()}, ranks them the
+ * way {@link TaskSearch} does, and then loads the rows of the requested page. The ranking of the
+ * last search is kept for its next pages. Not thread safe: only use this from the disk IO thread.
+ *
+ * 基于全文索引的排序搜索，只能在磁盘线程使用
+ */
+final class TaskFtsSearch {
+
+    // 'pcx': phrase and column counts, then hits in this row, hits in all rows and rows with hits
+    // for each phrase and column.
+    private static final String SQL_SEARCH =
+            "SELECT " + TaskEntry.TABLE_NAME + "." + TaskEntry.COLUMN_NAME_ENTRY_ID +
+                    ", matchinfo(" + TaskFtsEntry.TABLE_NAME + ", 'pcx')" +
+                    " FROM " + TaskFtsEntry.TABLE_NAME + " JOIN " + TaskEntry.TABLE_NAME +
+                    " ON " + TaskEntry.TABLE_NAME + "." + TaskEntry._ID + " = " +
+                    TaskFtsEntry.TABLE_NAME + "." + TaskFtsEntry.COLUMN_NAME_DOCID +
+                    " WHERE " + TaskFtsEntry.TABLE_NAME + " MATCH ?";
+
+    private static final String SQL_SELECT_TASKS_IN =
+            "SELECT " + TextUtils.join(", ", TaskCursorMapper.PROJECTION) +
+                    " FROM " + TaskEntry.TABLE_NAME +
+                    " WHERE " + TaskEntry.COLUMN_NAME_ENTRY_ID + " IN (";
+
+    /**
+     * Weight of a hit in each column of the index, in column order.
+     */
+    private static final int[] COLUMN_WEIGHTS = {
+            TaskSearch.TITLE_WEIGHT,
+            TaskSearch.DESCRIPTION_WEIGHT
+    };
+
+    private final TaskDbHelper mDbHelper;
+
+    @Nullable
+    private String mLastQuery;
+
+    private List<String> mLastRankedIds = Collections.emptyList();
+
+    TaskFtsSearch(@NonNull TaskDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
+    /**
+     * @return one page of the tasks matching {@code query}, see
+     * {@link com.example.mrtan.mvptest1.data.source.TasksDataSource#searchTasks}, or {@code null}
+     * if {@code afterTaskId} isn't in the ranking any more
+     */
+    @Nullable
+    List<Task> search(@NonNull String query, @Nullable String afterTaskId, int pageSize) {
+        if (afterTaskId == null || !query.equals(mLastQuery)) {
+            mLastRankedIds = rank(query);
+            mLastQuery = query;
+        }
+        List<String> rankedIds = mLastRankedIds;
+
+        int start = 0;
+        if (afterTaskId != null) {
+            start = rankedIds.indexOf(afterTaskId) + 1;
+            if (start == 0) {
+                return null;
+            }
+        }
+        List<String> pageIds = rankedIds.subList(start, Math.min(start + pageSize,
+                rankedIds.size()));
+        return loadInOrder(pageIds);
+    }
+
+    /**
+     * Forgets the ranking of the last search, so the next page reranks. Call this whenever tasks
+     * are written, or pages of the old ranking would miss new matches and keep stale ones.
+     */
+    void invalidate() {
+        mLastQuery = null;
+        mLastRankedIds = Collections.emptyList();
+    }
+
+    /**
+     * @return the FTS query matching tasks with all the words of {@code query} as prefixes, or
+     * {@code null} if it has no words
+     */
+    @Nullable
+    static String toMatchExpression(@NonNull String query) {
+        List<String> words = TaskSearch.tokenize(query);
+        if (words.isEmpty()) {
+            return null;
+        }
+        // Only ASCII letters and digits and non ASCII characters are left, and operators are upper
+        // case, so nothing to escape.
+        StringBuilder expression = new StringBuilder();
+        for (String word : words) {
+            if (expression.length() > 0) {
+                expression.append(' ');
+            }
+            expression.append(word).append('*');
+        }
+        return expression.toString();
+    }
+
+    private List<String> rank(String query) {
+        String expression = toMatchExpression(query);
+        if (expression == null) {
+            return Collections.emptyList();
+        }
+        Cursor c = mDbHelper.getDatabase().rawQuery(SQL_SEARCH, new String[]{expression});
+        try {
+            String[] ids = new String[c.getCount()];
+            long[] ranked = new long[ids.length];
+            int count = 0;
+            while (c.moveToNext() && count < ids.length) {
+                ids[count] = c.getString(0);
+                ranked[count] = TaskSearch.rankKey(score(c.getBlob(1)), count);
+                count++;
+            }
+            Arrays.sort(ranked, 0, count);
+            List<String> rankedIds = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                rankedIds.add(ids[(int) ranked[i]]);
+            }
+            return rankedIds;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Scores a row from its {@code matchinfo(..., 'pcx')}: the hits of each phrase, weighted by
+     * column and divided by the number of rows the phrase hits in that column.
+     */
+    private static float score(byte[] matchInfo) {
+        IntBuffer info = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int phrases = info.get(0);
+        int columns = info.get(1);
+        float score = 0;
+        for (int p = 0; p < phrases; p++) {
+            for (int col = 0; col < columns && col < COLUMN_WEIGHTS.length; col++) {
+                int base = 2 + 3 * (p * columns + col);
+                int rowHits = info.get(base);
+                int rowsWithHits = Math.max(1, info.get(base + 2));
+                score += (float) COLUMN_WEIGHTS[col] * rowHits / rowsWithHits;
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Loads the tasks with the given ids, in the same order.
+     */
+    private List<Task> loadInOrder(List<String> ids) {
+        Map<String, Task> tasksById = new HashMap<>(ids.size() * 2);
+        int chunkSize = TaskStatements.MAX_VARIABLES;
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            List<String> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+            StringBuilder sql = new StringBuilder(SQL_SELECT_TASKS_IN);
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(')');
+            Cursor c = mDbHelper.getDatabase().rawQuery(sql.toString(),
+                    chunk.toArray(new String[chunk.size()]));
+            try {
+                if (c.moveToFirst()) {
+                    TaskCursorMapper mapper = new TaskCursorMapper(c);
+                    do {
+                        Task task = mapper.map(c);
+                        tasksById.put(task.getId(), task);
+                    } while (c.moveToNext());
+                }
+            } finally {
+                c.close();
+            }
+        }
+        List<Task> tasks = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Task task = tasksById.get(id);
+            // Skips a task deleted since the ranking.
+            if (task != null) {
+                tasks.add(task);
+            }
+        }
+        return tasks;
+    }
+}
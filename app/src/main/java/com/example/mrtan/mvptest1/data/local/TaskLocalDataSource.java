@@ -1,144 +1,271 @@
 package com.example.mrtan.mvptest1.data.local;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.text.TextUtils;
 
 import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.data.source.TaskChanges;
+import com.example.mrtan.mvptest1.data.source.TaskStatistics;
 import com.example.mrtan.mvptest1.data.source.TasksDataSource;
+import com.example.mrtan.mvptest1.tasks.TasksFilterType;
+import com.example.mrtan.mvptest1.util.AppExecutors;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import com.example.mrtan.mvptest1.data.local.TasksPersistenceContract.CompletionStatsEntry;
 import com.example.mrtan.mvptest1.data.local.TasksPersistenceContract.TaskEntry;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * Concrete implementation of a data source as a db.
+ * <p>
+ * All database work runs on {@link AppExecutors#diskIO()} and callbacks are delivered on
+ * {@link AppExecutors#mainThread()}, so callers never block on SQLite. The connection is owned by
+ * {@link TaskDbHelper} and stays open between calls, writes go through the precompiled
+ * {@link TaskStatements} and rows are read with a {@link TaskCursorMapper}.
+ * <p>
+ * {@link #SNAPSHOT_DELAY_MILLIS} after a write the first {@link #SNAPSHOT_SIZE} tasks are saved to
+ * a {@link TaskSnapshotFile}, which {@link #getTasksSnapshot} reads on a cold start without
+ * opening the database. The snapshot may miss the last writes, it is only shown until the full
+ * load.
+ *
+ * 所有数据库操作都在磁盘线程执行，回调切换回主线程
  */
 public class TaskLocalDataSource implements TasksDataSource {
 
-    private static TaskLocalDataSource INSTANCE;
+    private static final String SQL_SELECT_TASKS =
+            "SELECT " + TextUtils.join(", ", TaskCursorMapper.PROJECTION) +
+                    " FROM " + TaskEntry.TABLE_NAME;
+
+    private static final String SQL_SELECT_TASK =
+            SQL_SELECT_TASKS + " WHERE " + TaskEntry.COLUMN_NAME_ENTRY_ID + " = ?";
+
+    private static final String SQL_AFTER_TASK =
+            TaskEntry._ID + " > (SELECT " + TaskEntry._ID + " FROM " + TaskEntry.TABLE_NAME +
+                    " WHERE " + TaskEntry.COLUMN_NAME_ENTRY_ID + " = ?)";
+
+    private static final String SQL_COUNT_TASKS =
+            "SELECT COUNT(*), COALESCE(SUM(" + TaskEntry.COLUMN_NAME_COMPLETED + "), 0)" +
+                    " FROM " + TaskEntry.TABLE_NAME;
+
+    private static final String SQL_SELECT_COMPLETION_STATS =
+            "SELECT " + CompletionStatsEntry.COLUMN_NAME_DAY + ", " +
+                    CompletionStatsEntry.COLUMN_NAME_COUNT +
+                    " FROM " + CompletionStatsEntry.TABLE_NAME;
+
+    /**
+     * Tasks in the startup snapshot, enough to fill the first screen.
+     */
+    @VisibleForTesting
+    static final int SNAPSHOT_SIZE = 50;
+
+    /**
+     * How long a snapshot update waits after a write, so a burst of writes saves one snapshot.
+     */
+    @VisibleForTesting
+    static final long SNAPSHOT_DELAY_MILLIS = 1000;
+
+    private static volatile TaskLocalDataSource INSTANCE;
 
     private TaskDbHelper mDbHelper;
 
-    private TaskLocalDataSource(@NonNull Context context) {
+    private TaskStatements mStatements;
+
+    private TaskFtsSearch mFtsSearch;
+
+    private TaskSnapshotFile mSnapshotFile;
+
+    /**
+     * Whether a snapshot update is scheduled. Only accessed on the disk IO thread.
+     */
+    private boolean mSnapshotUpdateQueued;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private AppExecutors mAppExecutors;
+
+    private TaskLocalDataSource(@NonNull AppExecutors appExecutors, @NonNull Context context) {
         checkNotNull(context);
-        mDbHelper = new TaskDbHelper(context);
+        mAppExecutors = checkNotNull(appExecutors);
+        mDbHelper = TaskDbHelper.getInstance(context);
+        mStatements = new TaskStatements(mDbHelper);
+        mFtsSearch = new TaskFtsSearch(mDbHelper);
+        // Nothing here touches the disk, the database is opened by the first query.
+        mSnapshotFile = new TaskSnapshotFile(context);
     }
 
-    public static TaskLocalDataSource getInstance(@NonNull Context context) {
+    public static TaskLocalDataSource getInstance(@NonNull AppExecutors appExecutors,
+                                                  @NonNull Context context) {
         if (INSTANCE == null) {
-            INSTANCE = new TaskLocalDataSource(context);
+            synchronized (TaskLocalDataSource.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new TaskLocalDataSource(appExecutors, context);
+                }
+            }
         }
         return INSTANCE;
     }
 
+    @VisibleForTesting
+    static void clearInstance() {
+        INSTANCE = null;
+    }
+
     @Override
     public void getTasks(@NonNull LoadTasksCallback callback) {
-        List<Task> tasks = new ArrayList<>();
-        SQLiteDatabase db = mDbHelper.getReadableDatabase();
-
-        String[] projection = {
-                TaskEntry.COLUMN_NAME_ENTRY_ID,
-                TaskEntry.COLUMN_NAME_TITLE,
-                TaskEntry.COLUMN_NAME_DESCRIPTION,
-                TaskEntry.COLUMN_NAME_COMPLETED
-        };
-        Cursor c = db.query(TaskEntry.TABLE_NAME, projection, null, null, null, null, null);
-        if (c != null && c.getCount() > 0) {
-            while (c.moveToNext()) {
-                String itemId = c.getString(c.getColumnIndexOrThrow(TaskEntry.COLUMN_NAME_ENTRY_ID));
-                String title = c.getString(c.getColumnIndexOrThrow(TaskEntry.COLUMN_NAME_TITLE));
-                String description = c.getString(c.getColumnIndexOrThrow(TaskEntry.COLUMN_NAME_DESCRIPTION));
-                boolean completed = c.getInt(c.getColumnIndexOrThrow(TaskEntry.COLUMN_NAME_COMPLETED)) == 1;
-                Task task = new Task(title, description, itemId, completed);
-                tasks.add(task);
-            }
-        }
-        if (c != null) {
-            c.close();
-        }
-        db.close();
-
-        if (tasks.isEmpty()) {
-            callback.onDataNotAvailable();
-        } else {
-            callback.onTaskLoaded(tasks);
-        }
+        loadTasks(TasksFilterType.ALL_TASKS, null, 0, callback);
     }
 
+    /**
+     * The filter is applied in SQL and served by the index on {@code completed}.
+     * 过滤条件在SQL中执行，使用completed索引
+     */
     @Override
-    public void getTask(@NonNull String taskId, @NonNull GetTaskCallback callback) {
-        SQLiteDatabase db = mDbHelper.getReadableDatabase();
-
-        String[] projection = {
-                TaskEntry.COLUMN_NAME_ENTRY_ID,
-                TaskEntry.COLUMN_NAME_TITLE,
-                TaskEntry.COLUMN_NAME_DESCRIPTION,
-                TaskEntry.COLUMN_NAME_COMPLETED
-        };
-
-        String selection = TaskEntry.COLUMN_NAME_ENTRY_ID + " LIKE ?";
-        String[] selectionArgs = {taskId};
-
-        Cursor c = db.query(TaskEntry.TABLE_NAME, projection, selection, selectionArgs, null, null, null);
-
-        Task task = null;
+    public void getTasks(@NonNull TasksFilterType filter, @NonNull LoadTasksCallback callback) {
+        checkNotNull(filter);
+        loadTasks(filter, null, 0, callback);
+    }
 
-        if (c != null && c.getCount() > 0) {
-            c.moveToNext();
-            String itemId = c.getString(c.getColumnIndexOrThrow(TaskEntry.COLUMN_NAME_ENTRY_ID));
-            String title = c.getString(c.getColumnIndexOrThrow(TaskEntry.COLUMN_NAME_TITLE));
-            String description = c.getString(c.getColumnIndexOrThrow(TaskEntry.COLUMN_NAME_DESCRIPTION));
-            boolean completed = c.getInt(c.getColumnIndexOrThrow(TaskEntry.COLUMN_NAME_COMPLETED)) == 1;
-            task = new Task(title, description, itemId, completed);
-        }
-        if (c != null) {
-            c.close();
-        }
+    /**
+     * Pages are read with a keyset query on the row id, so a page costs the same regardless of
+     * how far into the table it is. The row id of a deleted {@code afterTaskId} is gone, so that
+     * page is not available rather than empty.
+     * 按行id的keyset分页，每页的开销与位置无关
+     */
+    @Override
+    public void getTasks(@NonNull TasksFilterType filter, @Nullable String afterTaskId,
+                         int pageSize, @NonNull LoadTasksCallback callback) {
+        checkNotNull(filter);
+        checkArgument(pageSize > 0);
+        loadTasks(filter, afterTaskId, pageSize, callback);
+    }
 
-        db.close();
+    @Override
+    public void getTask(@NonNull final String taskId, @NonNull final GetTaskCallback callback) {
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                final Task task = queryTask(taskId);
+                mAppExecutors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (task != null) {
+                            callback.onTaskLoaded(task);
+                        } else {
+                            callback.onDataNotAvailable();
+                        }
+                    }
+                });
+            }
+        });
+    }
 
-        if (task != null) {
-            callback.onTaskLoaded(task);
-        } else {
-            callback.onDataNotAvailable();
-        }
+    /**
+     * Runs on the FTS index, which triggers keep in sync with the task table. Only the ids of the
+     * matches are read to rank them, and only the rows of the page are loaded.
+     * 在全文索引上搜索，只加载当前页的行
+     */
+    @Override
+    public void searchTasks(@NonNull final String query, @Nullable final String afterTaskId,
+                            final int pageSize, @NonNull final LoadTasksCallback callback) {
+        checkNotNull(query);
+        checkNotNull(callback);
+        checkArgument(pageSize > 0);
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<Task> tasks = mFtsSearch.search(query, afterTaskId, pageSize);
+                mAppExecutors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (tasks != null) {
+                            callback.onTaskLoaded(tasks);
+                        } else {
+                            callback.onDataNotAvailable();
+                        }
+                    }
+                });
+            }
+        });
     }
 
     @Override
-    public void saveTask(@NonNull Task task) {
+    public void saveTask(@NonNull final Task task) {
         checkNotNull(task);
-        SQLiteDatabase db = mDbHelper.getReadableDatabase();
-
-        ContentValues values = new ContentValues();
-        values.put(TaskEntry.COLUMN_NAME_ENTRY_ID, task.getId());
-        values.put(TaskEntry.COLUMN_NAME_TITLE, task.getTitle());
-        values.put(TaskEntry.COLUMN_NAME_DESCRIPTION, task.getDescription());
-        values.put(TaskEntry.COLUMN_NAME_COMPLETED, task.isCompleted());
-
-        db.insert(TaskEntry.TABLE_NAME, null, values);
-
-        db.close();
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                mStatements.upsert(task);
+                onTasksWritten();
+            }
+        });
     }
 
+    /**
+     * Upserts all the tasks inside one transaction, reusing the same compiled statements for every
+     * row so a refresh costs a single commit instead of one per task.
+     * 在一个事务中批量写入，复用预编译语句
+     */
     @Override
-    public void completeTask(@NonNull Task task) {
-        SQLiteDatabase db = mDbHelper.getReadableDatabase();
-
-        ContentValues values = new ContentValues();
-        values.put(TaskEntry.COLUMN_NAME_COMPLETED, true);
-
-        String selection = TaskEntry.COLUMN_NAME_ENTRY_ID + " LIKE ?";
-        String[] selectionArgs = {task.getId()};
-
-        db.update(TaskEntry.TABLE_NAME, values, selection, selectionArgs);
+    public void saveTasks(@NonNull List<Task> tasks) {
+        checkNotNull(tasks);
+        final List<Task> batch = new ArrayList<>(tasks);
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                SQLiteDatabase db = mStatements.getDatabase();
+                db.beginTransaction();
+                try {
+                    for (Task task : batch) {
+                        mStatements.upsert(task);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                onTasksWritten();
+            }
+        });
+    }
 
-        db.close();
+    /**
+     * Also counts the completion on today's statistics, in the same transaction, if the task
+     * wasn't completed yet.
+     * 同时在当天的统计中计数
+     */
+    @Override
+    public void completeTask(@NonNull final Task task) {
+        // The day the user completed it, not the day the write runs.
+        final int day = TaskStatistics.epochDay(System.currentTimeMillis());
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                SQLiteDatabase db = mStatements.getDatabase();
+                db.beginTransaction();
+                try {
+                    if (mStatements.setCompleted(task.getId(), true) > 0) {
+                        mStatements.countCompletions(day, 1);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                onTasksWritten();
+            }
+        });
     }
 
     @Override
@@ -147,19 +274,45 @@ public class TaskLocalDataSource implements TasksDataSource {
         //converting from a {@code taskId} to a {@link task} Using its cached data.
     }
 
+    /**
+     * One transaction for all the tasks, with one {@code UPDATE ... IN (...)} per
+     * {@link TaskStatements#MAX_VARIABLES} ids. Only the tasks not completed yet are counted on
+     * today's statistics.
+     * 在一个事务中批量完成，按IN分块更新
+     */
     @Override
-    public void activateTask(@NonNull Task task) {
-        SQLiteDatabase db = mDbHelper.getReadableDatabase();
-
-        ContentValues values = new ContentValues();
-        values.put(TaskEntry.COLUMN_NAME_COMPLETED, false);
-
-        String selection = TaskEntry.COLUMN_NAME_ENTRY_ID + " LIKE ?";
-        String[] selectionArgs = {task.getId()};
-
-        db.update(TaskEntry.TABLE_NAME, values, selection, selectionArgs);
+    public void completeTasks(@NonNull Collection<String> taskIds) {
+        checkNotNull(taskIds);
+        final List<String> ids = new ArrayList<>(taskIds);
+        final int day = TaskStatistics.epochDay(System.currentTimeMillis());
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                SQLiteDatabase db = mStatements.getDatabase();
+                db.beginTransaction();
+                try {
+                    int completed = mStatements.setCompleted(ids, true);
+                    if (completed > 0) {
+                        mStatements.countCompletions(day, completed);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                onTasksWritten();
+            }
+        });
+    }
 
-        db.close();
+    @Override
+    public void activateTask(@NonNull final Task task) {
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                mStatements.setCompleted(task.getId(), false);
+                onTasksWritten();
+            }
+        });
     }
 
     @Override
@@ -169,15 +322,34 @@ public class TaskLocalDataSource implements TasksDataSource {
     }
 
     @Override
-    public void clearCompletedTasks() {
-        SQLiteDatabase db = mDbHelper.getReadableDatabase();
-
-        String selection = TaskEntry.COLUMN_NAME_COMPLETED + " Like ?";
-        String[] selectionArgs = {"1"};
-
-        db.delete(TaskEntry.TABLE_NAME, selection, selectionArgs);
+    public void activateTasks(@NonNull Collection<String> taskIds) {
+        checkNotNull(taskIds);
+        final List<String> ids = new ArrayList<>(taskIds);
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                SQLiteDatabase db = mStatements.getDatabase();
+                db.beginTransaction();
+                try {
+                    mStatements.setCompleted(ids, false);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                onTasksWritten();
+            }
+        });
+    }
 
-        db.close();
+    @Override
+    public void clearCompletedTasks() {
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                mStatements.deleteCompleted();
+                onTasksWritten();
+            }
+        });
     }
 
     @Override
@@ -187,23 +359,315 @@ public class TaskLocalDataSource implements TasksDataSource {
     }
 
     @Override
-    public void deleteTask(@NonNull String taskId) {
-        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+    public void deleteTask(@NonNull final String taskId) {
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                mStatements.delete(taskId);
+                onTasksWritten();
+            }
+        });
+    }
 
-        String selection = TaskEntry.COLUMN_NAME_ENTRY_ID + " LIKE ?";
-        String[] selectionArgs = {taskId};
+    @Override
+    public void deleteTasks(@NonNull Collection<String> taskIds) {
+        checkNotNull(taskIds);
+        final List<String> ids = new ArrayList<>(taskIds);
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                SQLiteDatabase db = mStatements.getDatabase();
+                db.beginTransaction();
+                try {
+                    mStatements.delete(ids);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                onTasksWritten();
+            }
+        });
+    }
 
-        db.delete(TaskEntry.TABLE_NAME, selection, selectionArgs);
+    @Override
+    public void deleteAllTasks() {
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                mStatements.deleteAll();
+                onTasksWritten();
+            }
+        });
+    }
 
-        db.close();
+    @Override
+    public void getChanges(long sinceToken, @NonNull LoadChangesCallback callback) {
+        // Not required for the local data source because it doesn't track changes, the
+        // {@link TaskRepository} only loads changes from the remote data source.
+        callback.onDataNotAvailable();
     }
 
+    /**
+     * The changes and their token are written in one transaction, so a sync interrupted half way
+     * is replayed from the previous token.
+     * 增量修改和同步令牌在一个事务中写入
+     */
     @Override
-    public void deleteAllTasks() {
-        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+    public void applyChanges(@NonNull final TaskChanges changes) {
+        checkNotNull(changes);
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                SQLiteDatabase db = mStatements.getDatabase();
+                db.beginTransaction();
+                try {
+                    if (changes.isFullSync()) {
+                        mStatements.deleteAll();
+                    }
+                    for (Task task : changes.getUpdatedTasks()) {
+                        mStatements.upsert(task);
+                    }
+                    for (String taskId : changes.getDeletedTaskIds()) {
+                        mStatements.delete(taskId);
+                    }
+                    mStatements.setSyncToken(changes.getToken());
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                onTasksWritten();
+            }
+        });
+    }
+
+    @Override
+    public void getSyncToken(@NonNull final GetSyncTokenCallback callback) {
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                final long token = mStatements.getSyncToken();
+                mAppExecutors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSyncTokenLoaded(token);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Counts the tasks with one aggregate query instead of loading them.
+     * 用聚合查询计数，不加载任务
+     */
+    @Override
+    public void getStatistics(@NonNull final GetStatisticsCallback callback) {
+        checkNotNull(callback);
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                final TaskStatistics statistics = queryStatistics();
+                mAppExecutors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onStatisticsLoaded(statistics);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Reads the memory-mapped snapshot file and only then opens the database, so the first screen
+     * doesn't wait for the schema to be opened or upgraded. A missing snapshot is written once the
+     * database is open.
+     * 先读取内存映射的快照文件，再在后台打开数据库
+     */
+    @Override
+    public void getTasksSnapshot(@NonNull final LoadTasksCallback callback) {
+        checkNotNull(callback);
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<Task> tasks = mSnapshotFile.read();
+                mAppExecutors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (tasks != null) {
+                            callback.onTaskLoaded(tasks);
+                        } else {
+                            callback.onDataNotAvailable();
+                        }
+                    }
+                });
+                // Opens the database while the snapshot is shown, ahead of the full load.
+                mDbHelper.getDatabase();
+                if (tasks == null) {
+                    queueSnapshotUpdate(0);
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops what was derived from the tasks before a write. Must be called on the disk IO thread
+     * after every write.
+     */
+    private void onTasksWritten() {
+        mFtsSearch.invalidate();
+        queueSnapshotUpdate(SNAPSHOT_DELAY_MILLIS);
+    }
+
+    /**
+     * Schedules one snapshot update on the disk IO thread in {@code delayMillis}, unless one is
+     * already scheduled, so a burst of writes saves a single snapshot. Must be called on the disk
+     * IO thread.
+     */
+    private void queueSnapshotUpdate(long delayMillis) {
+        if (mSnapshotUpdateQueued) {
+            return;
+        }
+        mSnapshotUpdateQueued = true;
+        final Runnable update = new Runnable() {
+            @Override
+            public void run() {
+                mSnapshotUpdateQueued = false;
+                mSnapshotFile.write(queryTasks(
+                        buildSelectSql(TasksFilterType.ALL_TASKS, false, SNAPSHOT_SIZE), null));
+            }
+        };
+        if (delayMillis == 0) {
+            mAppExecutors.diskIO().execute(update);
+            return;
+        }
+        mHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                mAppExecutors.diskIO().execute(update);
+            }
+        }, delayMillis);
+    }
 
-        db.delete(TaskEntry.TABLE_NAME, null, null);
+    /**
+     * @param limit the maximum number of tasks to load, or 0 to load all of them
+     */
+    private void loadTasks(@NonNull final TasksFilterType filter,
+                           @Nullable final String afterTaskId, final int limit,
+                           @NonNull final LoadTasksCallback callback) {
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                String sql = buildSelectSql(filter, afterTaskId != null, limit);
+                String[] selectionArgs = afterTaskId == null ? null : new String[]{afterTaskId};
+                final List<Task> tasks = queryTasks(sql, selectionArgs);
+
+                // A filter can legitimately match nothing, only an empty table means no data. A
+                // missing anchor makes the keyset query empty too, which isn't the end.
+                final boolean noData;
+                if (afterTaskId == null) {
+                    noData = tasks.isEmpty()
+                            && (filter == TasksFilterType.ALL_TASKS || !mStatements.hasTasks());
+                } else {
+                    noData = tasks.isEmpty() && !mStatements.hasTask(afterTaskId);
+                }
+                mAppExecutors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (noData) {
+                            callback.onDataNotAvailable();
+                        } else {
+                            callback.onTaskLoaded(tasks);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private static String buildSelectSql(@NonNull TasksFilterType filter, boolean afterTask,
+                                         int limit) {
+        StringBuilder sql = new StringBuilder(SQL_SELECT_TASKS);
+        String where = null;
+        switch (filter) {
+            case ACTIVE_TASKS:
+                where = TaskEntry.COLUMN_NAME_COMPLETED + " = 0";
+                break;
+            case COMPLETED_TASKS:
+                where = TaskEntry.COLUMN_NAME_COMPLETED + " = 1";
+                break;
+        }
+        if (where != null) {
+            sql.append(" WHERE ").append(where);
+        }
+        if (afterTask) {
+            sql.append(where == null ? " WHERE " : " AND ").append(SQL_AFTER_TASK);
+        }
+        sql.append(" ORDER BY ").append(TaskEntry._ID);
+        if (limit > 0) {
+            sql.append(" LIMIT ").append(limit);
+        }
+        return sql.toString();
+    }
 
-        db.close();
+    /**
+     * Must be called on the disk IO thread.
+     * 只能在磁盘线程调用
+     */
+    private List<Task> queryTasks(@NonNull String sql, @Nullable String[] selectionArgs) {
+        Cursor c = mDbHelper.getDatabase().rawQuery(sql, selectionArgs);
+        try {
+            List<Task> tasks = new ArrayList<>(c.getCount());
+            if (c.moveToFirst()) {
+                TaskCursorMapper mapper = new TaskCursorMapper(c);
+                do {
+                    tasks.add(mapper.map(c));
+                } while (c.moveToNext());
+            }
+            return tasks;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Must be called on the disk IO thread.
+     * 只能在磁盘线程调用
+     */
+    private TaskStatistics queryStatistics() {
+        SQLiteDatabase db = mDbHelper.getDatabase();
+        int total;
+        int completed;
+        Cursor c = db.rawQuery(SQL_COUNT_TASKS, null);
+        try {
+            c.moveToFirst();
+            total = c.getInt(0);
+            completed = c.getInt(1);
+        } finally {
+            c.close();
+        }
+        Map<Integer, Integer> completionsByDay = new HashMap<>();
+        c = db.rawQuery(SQL_SELECT_COMPLETION_STATS, null);
+        try {
+            while (c.moveToNext()) {
+                completionsByDay.put(c.getInt(0), c.getInt(1));
+            }
+        } finally {
+            c.close();
+        }
+        return new TaskStatistics(total, completed, completionsByDay);
+    }
+
+    /**
+     * Must be called on the disk IO thread.
+     * 只能在磁盘线程调用
+     */
+    @Nullable
+    private Task queryTask(@NonNull String taskId) {
+        Cursor c = mDbHelper.getDatabase().rawQuery(SQL_SELECT_TASK, new String[]{taskId});
+        try {
+            return c.moveToFirst() ? new TaskCursorMapper(c).map(c) : null;
+        } finally {
+            c.close();
+        }
     }
 }
@@ -0,0 +1,207 @@
+package com.example.mrtan.mvptest1.data.local;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.data.local.TasksPersistenceContract.OutboxEntry;
+import com.example.mrtan.mvptest1.data.source.outbox.OutboxOperation;
+import com.example.mrtan.mvptest1.data.source.outbox.OutboxStore;
+import com.example.mrtan.mvptest1.util.AppExecutors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Outbox stored in the tasks database, sharing the connection of {@link TaskDbHelper}.
+ * <p>
+ * All the work runs on {@link AppExecutors#diskIO()}, in the order it was requested, and
+ * callbacks are delivered on {@link AppExecutors#mainThread()}.
+ *
+ * 存储在数据库中的outbox，在磁盘线程执行
+ */
+public class TaskOutboxStore implements OutboxStore {
+
+    private static final String SQL_INSERT_OPERATION =
+            "INSERT INTO " + OutboxEntry.TABLE_NAME + " (" +
+                    OutboxEntry.COLUMN_NAME_TYPE + ", " +
+                    OutboxEntry.COLUMN_NAME_ENTRY_ID + ", " +
+                    OutboxEntry.COLUMN_NAME_TITLE + ", " +
+                    OutboxEntry.COLUMN_NAME_DESCRIPTION + ", " +
+                    OutboxEntry.COLUMN_NAME_COMPLETED + ") VALUES (?, ?, ?, ?, ?)";
+
+    private static final String SQL_SELECT_OPERATIONS =
+            "SELECT " + OutboxEntry._ID + ", " +
+                    OutboxEntry.COLUMN_NAME_TYPE + ", " +
+                    OutboxEntry.COLUMN_NAME_ENTRY_ID + ", " +
+                    OutboxEntry.COLUMN_NAME_TITLE + ", " +
+                    OutboxEntry.COLUMN_NAME_DESCRIPTION + ", " +
+                    OutboxEntry.COLUMN_NAME_COMPLETED +
+                    " FROM " + OutboxEntry.TABLE_NAME +
+                    " ORDER BY " + OutboxEntry._ID + " LIMIT ";
+
+    private static final String SQL_DELETE_OPERATIONS =
+            "DELETE FROM " + OutboxEntry.TABLE_NAME + " WHERE " + OutboxEntry._ID + " <= ?";
+
+    private static volatile TaskOutboxStore INSTANCE;
+
+    private final TaskDbHelper mDbHelper;
+
+    private final AppExecutors mAppExecutors;
+
+    // Only used on the disk IO thread.
+
+    private SQLiteStatement mInsertOperation;
+
+    private SQLiteStatement mDeleteOperations;
+
+    private TaskOutboxStore(@NonNull AppExecutors appExecutors, @NonNull Context context) {
+        checkNotNull(context);
+        mAppExecutors = checkNotNull(appExecutors);
+        mDbHelper = TaskDbHelper.getInstance(context);
+    }
+
+    public static TaskOutboxStore getInstance(@NonNull AppExecutors appExecutors,
+                                              @NonNull Context context) {
+        if (INSTANCE == null) {
+            synchronized (TaskOutboxStore.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new TaskOutboxStore(appExecutors, context);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    @VisibleForTesting
+    static void clearInstance() {
+        INSTANCE = null;
+    }
+
+    @Override
+    public void append(@NonNull final OutboxOperation operation) {
+        checkNotNull(operation);
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mInsertOperation == null) {
+                    mInsertOperation =
+                            mDbHelper.getDatabase().compileStatement(SQL_INSERT_OPERATION);
+                }
+                bindOperation(mInsertOperation, operation);
+                mInsertOperation.executeInsert();
+            }
+        });
+    }
+
+    /**
+     * All the operations are inserted in one transaction.
+     */
+    @Override
+    public void appendAll(@NonNull List<OutboxOperation> operations) {
+        checkNotNull(operations);
+        final List<OutboxOperation> batch = new ArrayList<>(operations);
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                SQLiteDatabase db = mDbHelper.getDatabase();
+                if (mInsertOperation == null) {
+                    mInsertOperation = db.compileStatement(SQL_INSERT_OPERATION);
+                }
+                db.beginTransaction();
+                try {
+                    for (OutboxOperation operation : batch) {
+                        bindOperation(mInsertOperation, operation);
+                        mInsertOperation.executeInsert();
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void load(final int limit, @NonNull final LoadOperationsCallback callback) {
+        checkArgument(limit > 0);
+        checkNotNull(callback);
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<OutboxOperation> operations = queryOperations(limit);
+                mAppExecutors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onOperationsLoaded(operations);
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void remove(final long sequence) {
+        mAppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mDeleteOperations == null) {
+                    mDeleteOperations =
+                            mDbHelper.getDatabase().compileStatement(SQL_DELETE_OPERATIONS);
+                }
+                mDeleteOperations.bindLong(1, sequence);
+                mDeleteOperations.executeUpdateDelete();
+            }
+        });
+    }
+
+    private List<OutboxOperation> queryOperations(int limit) {
+        Cursor c = mDbHelper.getDatabase().rawQuery(SQL_SELECT_OPERATIONS + limit, null);
+        try {
+            List<OutboxOperation> operations = new ArrayList<>(c.getCount());
+            while (c.moveToNext()) {
+                int type = c.getInt(1);
+                String taskId = c.getString(2);
+                Task task = null;
+                if (type == OutboxOperation.TYPE_SAVE) {
+                    task = new Task(c.getString(3), c.getString(4), taskId, c.getInt(5) == 1);
+                }
+                operations.add(new OutboxOperation(c.getLong(0), type, taskId, task));
+            }
+            return operations;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Binds type, id, title, description and completed, in the column order of
+     * {@link #SQL_INSERT_OPERATION}.
+     */
+    private static void bindOperation(SQLiteStatement statement, OutboxOperation operation) {
+        statement.clearBindings();
+        statement.bindLong(1, operation.getType());
+        if (operation.getTaskId() != null) {
+            statement.bindString(2, operation.getTaskId());
+        }
+        Task task = operation.getTask();
+        if (task != null) {
+            if (task.getTitle() != null) {
+                statement.bindString(3, task.getTitle());
+            }
+            if (task.getDescription() != null) {
+                statement.bindString(4, task.getDescription());
+            }
+            statement.bindLong(5, task.isCompleted() ? 1 : 0);
+        } else {
+            statement.bindLong(5, 0);
+        }
+    }
+}
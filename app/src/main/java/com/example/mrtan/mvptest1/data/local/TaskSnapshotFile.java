@@ -0,0 +1,116 @@
+package com.example.mrtan.mvptest1.data.local;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.data.TaskCodec;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary file with the first screen of tasks, read on a cold start without opening the database.
+ * <p>
+ * The tasks are stored with {@link TaskCodec}. The file is memory-mapped for reading, so it is
+ * decoded straight from the page cache. It is written to a temporary file renamed over the
+ * previous one, so a reader never sees half a snapshot, and the same tasks aren't written again.
+ * <p>
+ * The file isn't synced: it is only a cache of the database. If a crash loses it, or leaves it
+ * empty or cut short, it can't be decoded, so it is deleted and reported as missing and the
+ * first screen waits for the database. Not thread safe: only use this from the disk IO thread.
+ *
+ * 首屏任务的二进制快照，冷启动时通过内存映射读取，不需要打开数据库
+ */
+final class TaskSnapshotFile {
+
+    static final String FILE_NAME = "tasks_snapshot.bin";
+
+    private final Context mContext;
+
+    private File mFile;
+
+    /**
+     * Tasks last read from or written to the file, {@code null} if unknown.
+     */
+    @Nullable
+    private List<Task> mTasks;
+
+    TaskSnapshotFile(@NonNull Context context) {
+        // The files directory is resolved on first use, it may touch the disk.
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * @return the tasks of the snapshot, or {@code null} if there is none
+     */
+    @Nullable
+    List<Task> read() {
+        File file = getFile();
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            RandomAccessFile input = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = input.getChannel();
+                // The mapping stays valid after the file is closed.
+                mTasks = TaskCodec.decode(
+                        channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                return mTasks;
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            file.delete();
+            mTasks = null;
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the snapshot with {@code tasks}, unless it already holds the same tasks. On
+     * failure the previous snapshot is deleted, it would be out of date.
+     */
+    void write(@NonNull List<Task> tasks) {
+        File file = getFile();
+        if (mTasks != null && Task.sameContent(mTasks, tasks) && file.exists()) {
+            return;
+        }
+        mTasks = null;
+        File tempFile = new File(file.getPath() + ".tmp");
+        try {
+            FileOutputStream output = new FileOutputStream(tempFile);
+            try {
+                // The writer has its own buffer.
+                TaskCodec.Writer writer = new TaskCodec.Writer(output, true);
+                for (Task task : tasks) {
+                    writer.write(task);
+                }
+                writer.finish();
+            } finally {
+                output.close();
+            }
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Can't rename " + tempFile);
+            }
+            mTasks = new ArrayList<>(tasks);
+        } catch (IOException e) {
+            tempFile.delete();
+            file.delete();
+        }
+    }
+
+    private File getFile() {
+        if (mFile == null) {
+            mFile = new File(mContext.getFilesDir(), FILE_NAME);
+        }
+        return mFile;
+    }
+}
@@ -0,0 +1,342 @@
+package com.example.mrtan.mvptest1.data.local;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.data.local.TasksPersistenceContract.CompletionStatsEntry;
+import com.example.mrtan.mvptest1.data.local.TasksPersistenceContract.SyncStateEntry;
+import com.example.mrtan.mvptest1.data.local.TasksPersistenceContract.TaskEntry;
+import com.example.mrtan.mvptest1.data.source.TaskChanges;
+
+import java.util.List;
+
+/**
+ * Precompiled statements for the task table.
+ * <p>
+ * Each statement is compiled on first use against the long-lived connection of
+ * {@link TaskDbHelper} and then reused, so writes don't parse SQL or allocate
+ * {@link android.content.ContentValues}. {@link SQLiteStatement} is not thread safe: only use this
+ * from the disk IO thread.
+ *
+ * 预编译的语句，只能在磁盘线程使用
+ */
+final class TaskStatements {
+
+    /**
+     * Bound parameters per statement, SQLite's default limit.
+     */
+    static final int MAX_VARIABLES = 999;
+
+    private static final String SQL_UPDATE_COMPLETED_IN =
+            "UPDATE " + TaskEntry.TABLE_NAME + " SET " +
+                    TaskEntry.COLUMN_NAME_COMPLETED + " = ?" +
+                    " WHERE " + TaskEntry.COLUMN_NAME_COMPLETED + " != ?" +
+                    " AND " + TaskEntry.COLUMN_NAME_ENTRY_ID + " IN (";
+
+    private static final String SQL_DELETE_TASKS_IN =
+            "DELETE FROM " + TaskEntry.TABLE_NAME +
+                    " WHERE " + TaskEntry.COLUMN_NAME_ENTRY_ID + " IN (";
+
+    private static final String SQL_UPDATE_TASK =
+            "UPDATE " + TaskEntry.TABLE_NAME + " SET " +
+                    TaskEntry.COLUMN_NAME_TITLE + " = ?, " +
+                    TaskEntry.COLUMN_NAME_DESCRIPTION + " = ?, " +
+                    TaskEntry.COLUMN_NAME_COMPLETED + " = ?, " +
+                    TaskEntry.COLUMN_NAME_VERSION + " = ?" +
+                    " WHERE " + TaskEntry.COLUMN_NAME_ENTRY_ID + " = ?";
+
+    private static final String SQL_INSERT_TASK =
+            "INSERT INTO " + TaskEntry.TABLE_NAME + " (" +
+                    TaskEntry.COLUMN_NAME_TITLE + ", " +
+                    TaskEntry.COLUMN_NAME_DESCRIPTION + ", " +
+                    TaskEntry.COLUMN_NAME_COMPLETED + ", " +
+                    TaskEntry.COLUMN_NAME_VERSION + ", " +
+                    TaskEntry.COLUMN_NAME_ENTRY_ID + ") VALUES (?, ?, ?, ?, ?)";
+
+    // Rows already in that state aren't changed, so completing twice counts once.
+    private static final String SQL_UPDATE_COMPLETED =
+            "UPDATE " + TaskEntry.TABLE_NAME + " SET " +
+                    TaskEntry.COLUMN_NAME_COMPLETED + " = ?" +
+                    " WHERE " + TaskEntry.COLUMN_NAME_ENTRY_ID + " = ?" +
+                    " AND " + TaskEntry.COLUMN_NAME_COMPLETED + " != ?";
+
+    private static final String SQL_DELETE_TASK =
+            "DELETE FROM " + TaskEntry.TABLE_NAME +
+                    " WHERE " + TaskEntry.COLUMN_NAME_ENTRY_ID + " = ?";
+
+    private static final String SQL_DELETE_COMPLETED =
+            "DELETE FROM " + TaskEntry.TABLE_NAME +
+                    " WHERE " + TaskEntry.COLUMN_NAME_COMPLETED + " = 1";
+
+    private static final String SQL_DELETE_ALL = "DELETE FROM " + TaskEntry.TABLE_NAME;
+
+    private static final String SQL_HAS_TASKS =
+            "SELECT EXISTS (SELECT 1 FROM " + TaskEntry.TABLE_NAME + ")";
+
+    private static final String SQL_HAS_TASK =
+            "SELECT EXISTS (SELECT 1 FROM " + TaskEntry.TABLE_NAME +
+                    " WHERE " + TaskEntry.COLUMN_NAME_ENTRY_ID + " = ?)";
+
+    private static final String SQL_SELECT_SYNC_TOKEN =
+            "SELECT COALESCE((SELECT " + SyncStateEntry.COLUMN_NAME_VALUE +
+                    " FROM " + SyncStateEntry.TABLE_NAME +
+                    " WHERE " + SyncStateEntry.COLUMN_NAME_KEY + " = '" +
+                    SyncStateEntry.KEY_TOKEN + "'), " + TaskChanges.NO_TOKEN + ")";
+
+    private static final String SQL_UPDATE_SYNC_TOKEN =
+            "INSERT OR REPLACE INTO " + SyncStateEntry.TABLE_NAME + " (" +
+                    SyncStateEntry.COLUMN_NAME_KEY + ", " +
+                    SyncStateEntry.COLUMN_NAME_VALUE + ") VALUES ('" +
+                    SyncStateEntry.KEY_TOKEN + "', ?)";
+
+    private static final String SQL_COUNT_COMPLETION =
+            "INSERT OR REPLACE INTO " + CompletionStatsEntry.TABLE_NAME + " (" +
+                    CompletionStatsEntry.COLUMN_NAME_DAY + ", " +
+                    CompletionStatsEntry.COLUMN_NAME_COUNT + ") VALUES (?, COALESCE((SELECT " +
+                    CompletionStatsEntry.COLUMN_NAME_COUNT + " FROM " +
+                    CompletionStatsEntry.TABLE_NAME + " WHERE " +
+                    CompletionStatsEntry.COLUMN_NAME_DAY + " = ?), 0) + ?)";
+
+    private final TaskDbHelper mDbHelper;
+
+    private SQLiteStatement mUpdateTask;
+
+    private SQLiteStatement mInsertTask;
+
+    private SQLiteStatement mUpdateCompleted;
+
+    private SQLiteStatement mDeleteTask;
+
+    private SQLiteStatement mDeleteCompleted;
+
+    private SQLiteStatement mDeleteAll;
+
+    private SQLiteStatement mHasTasks;
+
+    private SQLiteStatement mHasTask;
+
+    private SQLiteStatement mSelectSyncToken;
+
+    private SQLiteStatement mUpdateSyncToken;
+
+    private SQLiteStatement mCountCompletion;
+
+    /**
+     * Statements for full chunks of ids, the only ones worth keeping.
+     */
+    private SQLiteStatement mUpdateCompletedInChunk;
+
+    private SQLiteStatement mDeleteInChunk;
+
+    TaskStatements(@NonNull TaskDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
+    SQLiteDatabase getDatabase() {
+        return mDbHelper.getDatabase();
+    }
+
+    /**
+     * Updates the task row in place, or inserts it if the id is unknown.
+     */
+    void upsert(@NonNull Task task) {
+        if (mUpdateTask == null) {
+            mUpdateTask = getDatabase().compileStatement(SQL_UPDATE_TASK);
+        }
+        bindTask(mUpdateTask, task);
+        if (mUpdateTask.executeUpdateDelete() == 0) {
+            if (mInsertTask == null) {
+                mInsertTask = getDatabase().compileStatement(SQL_INSERT_TASK);
+            }
+            bindTask(mInsertTask, task);
+            mInsertTask.executeInsert();
+        }
+    }
+
+    /**
+     * @return the number of rows changed
+     */
+    int setCompleted(@NonNull String taskId, boolean completed) {
+        if (mUpdateCompleted == null) {
+            mUpdateCompleted = getDatabase().compileStatement(SQL_UPDATE_COMPLETED);
+        }
+        mUpdateCompleted.bindLong(1, completed ? 1 : 0);
+        mUpdateCompleted.bindString(2, taskId);
+        mUpdateCompleted.bindLong(3, completed ? 1 : 0);
+        return mUpdateCompleted.executeUpdateDelete();
+    }
+
+    /**
+     * @return the number of rows deleted
+     */
+    int delete(@NonNull String taskId) {
+        if (mDeleteTask == null) {
+            mDeleteTask = getDatabase().compileStatement(SQL_DELETE_TASK);
+        }
+        mDeleteTask.bindString(1, taskId);
+        return mDeleteTask.executeUpdateDelete();
+    }
+
+    /**
+     * Sets completed on all the tasks with the given ids, {@link #MAX_VARIABLES} ids per
+     * statement. Run it inside a transaction to apply it at once.
+     *
+     * @return the number of rows changed
+     */
+    int setCompleted(@NonNull List<String> taskIds, boolean completed) {
+        int chunkSize = MAX_VARIABLES - 2;
+        int changed = 0;
+        for (int from = 0; from < taskIds.size(); from += chunkSize) {
+            List<String> chunk = taskIds.subList(from, Math.min(from + chunkSize, taskIds.size()));
+            boolean fullChunk = chunk.size() == chunkSize;
+            SQLiteStatement statement = fullChunk ? mUpdateCompletedInChunk : null;
+            if (statement == null) {
+                statement = compileIn(SQL_UPDATE_COMPLETED_IN, chunk.size());
+            }
+            statement.bindLong(1, completed ? 1 : 0);
+            statement.bindLong(2, completed ? 1 : 0);
+            bindStrings(statement, 3, chunk);
+            changed += statement.executeUpdateDelete();
+            if (fullChunk) {
+                mUpdateCompletedInChunk = statement;
+            } else {
+                statement.close();
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Deletes all the tasks with the given ids, {@link #MAX_VARIABLES} ids per statement. Run it
+     * inside a transaction to apply it at once.
+     *
+     * @return the number of rows deleted
+     */
+    int delete(@NonNull List<String> taskIds) {
+        int deleted = 0;
+        for (int from = 0; from < taskIds.size(); from += MAX_VARIABLES) {
+            List<String> chunk =
+                    taskIds.subList(from, Math.min(from + MAX_VARIABLES, taskIds.size()));
+            boolean fullChunk = chunk.size() == MAX_VARIABLES;
+            SQLiteStatement statement = fullChunk ? mDeleteInChunk : null;
+            if (statement == null) {
+                statement = compileIn(SQL_DELETE_TASKS_IN, chunk.size());
+            }
+            bindStrings(statement, 1, chunk);
+            deleted += statement.executeUpdateDelete();
+            if (fullChunk) {
+                mDeleteInChunk = statement;
+            } else {
+                statement.close();
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * @return the number of rows deleted
+     */
+    int deleteCompleted() {
+        if (mDeleteCompleted == null) {
+            mDeleteCompleted = getDatabase().compileStatement(SQL_DELETE_COMPLETED);
+        }
+        return mDeleteCompleted.executeUpdateDelete();
+    }
+
+    /**
+     * @return the number of rows deleted
+     */
+    int deleteAll() {
+        if (mDeleteAll == null) {
+            mDeleteAll = getDatabase().compileStatement(SQL_DELETE_ALL);
+        }
+        return mDeleteAll.executeUpdateDelete();
+    }
+
+    boolean hasTasks() {
+        if (mHasTasks == null) {
+            mHasTasks = getDatabase().compileStatement(SQL_HAS_TASKS);
+        }
+        return mHasTasks.simpleQueryForLong() != 0;
+    }
+
+    boolean hasTask(@NonNull String taskId) {
+        if (mHasTask == null) {
+            mHasTask = getDatabase().compileStatement(SQL_HAS_TASK);
+        }
+        mHasTask.bindString(1, taskId);
+        return mHasTask.simpleQueryForLong() != 0;
+    }
+
+    long getSyncToken() {
+        if (mSelectSyncToken == null) {
+            mSelectSyncToken = getDatabase().compileStatement(SQL_SELECT_SYNC_TOKEN);
+        }
+        return mSelectSyncToken.simpleQueryForLong();
+    }
+
+    void setSyncToken(long token) {
+        if (mUpdateSyncToken == null) {
+            mUpdateSyncToken = getDatabase().compileStatement(SQL_UPDATE_SYNC_TOKEN);
+        }
+        mUpdateSyncToken.bindLong(1, token);
+        mUpdateSyncToken.executeInsert();
+    }
+
+    /**
+     * Adds {@code count} to the completions of {@code day}.
+     */
+    void countCompletions(int day, int count) {
+        if (mCountCompletion == null) {
+            mCountCompletion = getDatabase().compileStatement(SQL_COUNT_COMPLETION);
+        }
+        mCountCompletion.bindLong(1, day);
+        mCountCompletion.bindLong(2, day);
+        mCountCompletion.bindLong(3, count);
+        mCountCompletion.executeInsert();
+    }
+
+    /**
+     * Compiles {@code sqlPrefix} followed by a list of {@code count} parameters.
+     */
+    private SQLiteStatement compileIn(String sqlPrefix, int count) {
+        StringBuilder sql = new StringBuilder(sqlPrefix.length() + 3 * count);
+        sql.append(sqlPrefix);
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(')');
+        return getDatabase().compileStatement(sql.toString());
+    }
+
+    private static void bindStrings(SQLiteStatement statement, int firstIndex,
+                                    List<String> values) {
+        for (int i = 0; i < values.size(); i++) {
+            statement.bindString(firstIndex + i, values.get(i));
+        }
+    }
+
+    /**
+     * Binds title, description, completed, version and id, in the column order of
+     * {@link #SQL_UPDATE_TASK} and {@link #SQL_INSERT_TASK}.
+     */
+    private static void bindTask(SQLiteStatement statement, Task task) {
+        bindStringOrNull(statement, 1, task.getTitle());
+        bindStringOrNull(statement, 2, task.getDescription());
+        statement.bindLong(3, task.isCompleted() ? 1 : 0);
+        statement.bindLong(4, task.getVersion());
+        statement.bindString(5, task.getId());
+    }
+
+    private static void bindStringOrNull(SQLiteStatement statement, int index,
+                                         @Nullable String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+}
@@ -12,5 +12,54 @@ public final class TasksPersistenceContract {
         public static final String COLUMN_NAME_TITLE = "title";
         public static final String COLUMN_NAME_DESCRIPTION = "description";
         public static final String COLUMN_NAME_COMPLETED = "completed";
+        public static final String COLUMN_NAME_VERSION = "version";
+    }
+
+    /**
+     * Key-value state of the sync with the remote data source.
+     * 与远程数据源同步的状态
+     */
+    public static abstract class SyncStateEntry implements BaseColumns {
+        public static final String TABLE_NAME = "sync_state";
+        public static final String COLUMN_NAME_KEY = "key";
+        public static final String COLUMN_NAME_VALUE = "value";
+
+        public static final String KEY_TOKEN = "token";
+    }
+
+    /**
+     * Full-text index of the task titles and descriptions. The {@code docid} of a row is the
+     * {@code _id} of its task, triggers on the task table keep it up to date.
+     * 任务标题和描述的全文索引，由触发器维护
+     */
+    public static abstract class TaskFtsEntry {
+        public static final String TABLE_NAME = "task_fts";
+        public static final String COLUMN_NAME_DOCID = "docid";
+        public static final String COLUMN_NAME_TITLE = "title";
+        public static final String COLUMN_NAME_DESCRIPTION = "description";
+    }
+
+    /**
+     * Number of tasks completed on this device by day, counted from the epoch in the local time
+     * zone. Kept when the tasks are deleted.
+     * 每天完成的任务数
+     */
+    public static abstract class CompletionStatsEntry {
+        public static final String TABLE_NAME = "completion_stats";
+        public static final String COLUMN_NAME_DAY = "day";
+        public static final String COLUMN_NAME_COUNT = "count";
+    }
+
+    /**
+     * Task writes waiting to be sent to the remote data source, in the order they were made.
+     * 等待发送到远程数据源的写操作
+     */
+    public static abstract class OutboxEntry implements BaseColumns {
+        public static final String TABLE_NAME = "outbox";
+        public static final String COLUMN_NAME_TYPE = "type";
+        public static final String COLUMN_NAME_ENTRY_ID = "entry_id";
+        public static final String COLUMN_NAME_TITLE = "title";
+        public static final String COLUMN_NAME_DESCRIPTION = "description";
+        public static final String COLUMN_NAME_COMPLETED = "completed";
     }
 }
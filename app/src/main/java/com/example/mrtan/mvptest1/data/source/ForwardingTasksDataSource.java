@@ -0,0 +1,149 @@
+package com.example.mrtan.mvptest1.data.source;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.tasks.TasksFilterType;
+
+import java.util.Collection;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A data source that forwards every call to another one. Decorators extend it and only override
+ * the calls they change, so they can be stacked around the local and remote data sources.
+ *
+ * 转发所有调用的数据源，装饰器继承它并只重写需要的方法
+ */
+public abstract class ForwardingTasksDataSource implements TasksDataSource {
+
+    private final TasksDataSource mDelegate;
+
+    protected ForwardingTasksDataSource(@NonNull TasksDataSource delegate) {
+        mDelegate = checkNotNull(delegate);
+    }
+
+    @NonNull
+    protected final TasksDataSource delegate() {
+        return mDelegate;
+    }
+
+    @Override
+    public void getTasks(@NonNull LoadTasksCallback callback) {
+        mDelegate.getTasks(callback);
+    }
+
+    @Override
+    public void getTasks(@NonNull TasksFilterType filter, @NonNull LoadTasksCallback callback) {
+        mDelegate.getTasks(filter, callback);
+    }
+
+    @Override
+    public void getTasks(@NonNull TasksFilterType filter, @Nullable String afterTaskId,
+                         int pageSize, @NonNull LoadTasksCallback callback) {
+        mDelegate.getTasks(filter, afterTaskId, pageSize, callback);
+    }
+
+    @Override
+    public void getTask(@NonNull String taskId, @NonNull GetTaskCallback callback) {
+        mDelegate.getTask(taskId, callback);
+    }
+
+    @Override
+    public void searchTasks(@NonNull String query, @Nullable String afterTaskId, int pageSize,
+                            @NonNull LoadTasksCallback callback) {
+        mDelegate.searchTasks(query, afterTaskId, pageSize, callback);
+    }
+
+    @Override
+    public void saveTask(@NonNull Task task) {
+        mDelegate.saveTask(task);
+    }
+
+    @Override
+    public void saveTasks(@NonNull List<Task> tasks) {
+        mDelegate.saveTasks(tasks);
+    }
+
+    @Override
+    public void completeTask(@NonNull Task task) {
+        mDelegate.completeTask(task);
+    }
+
+    @Override
+    public void completeTask(@NonNull String taskId) {
+        mDelegate.completeTask(taskId);
+    }
+
+    @Override
+    public void activateTask(@NonNull Task task) {
+        mDelegate.activateTask(task);
+    }
+
+    @Override
+    public void activateTask(@NonNull String taskId) {
+        mDelegate.activateTask(taskId);
+    }
+
+    @Override
+    public void completeTasks(@NonNull Collection<String> taskIds) {
+        mDelegate.completeTasks(taskIds);
+    }
+
+    @Override
+    public void activateTasks(@NonNull Collection<String> taskIds) {
+        mDelegate.activateTasks(taskIds);
+    }
+
+    @Override
+    public void clearCompletedTasks() {
+        mDelegate.clearCompletedTasks();
+    }
+
+    @Override
+    public void refreshTasks() {
+        mDelegate.refreshTasks();
+    }
+
+    @Override
+    public void deleteTask(@NonNull String taskId) {
+        mDelegate.deleteTask(taskId);
+    }
+
+    @Override
+    public void deleteTasks(@NonNull Collection<String> taskIds) {
+        mDelegate.deleteTasks(taskIds);
+    }
+
+    @Override
+    public void deleteAllTasks() {
+        mDelegate.deleteAllTasks();
+    }
+
+    @Override
+    public void getChanges(long sinceToken, @NonNull LoadChangesCallback callback) {
+        mDelegate.getChanges(sinceToken, callback);
+    }
+
+    @Override
+    public void applyChanges(@NonNull TaskChanges changes) {
+        mDelegate.applyChanges(changes);
+    }
+
+    @Override
+    public void getSyncToken(@NonNull GetSyncTokenCallback callback) {
+        mDelegate.getSyncToken(callback);
+    }
+
+    @Override
+    public void getStatistics(@NonNull GetStatisticsCallback callback) {
+        mDelegate.getStatistics(callback);
+    }
+
+    @Override
+    public void getTasksSnapshot(@NonNull LoadTasksCallback callback) {
+        mDelegate.getTasksSnapshot(callback);
+    }
+}
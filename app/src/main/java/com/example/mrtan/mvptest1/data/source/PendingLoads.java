@@ -0,0 +1,52 @@
+package com.example.mrtan.mvptest1.data.source;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Callbacks waiting for in-flight loads, by key. The first caller for a key starts the load, the
+ * ones arriving while it runs only wait for its result, so concurrent requests for the same data
+ * share one load.
+ *
+ * 按key合并同时进行的加载请求，同一个key只执行一次加载
+ *
+ * @param <K> the key of a load
+ * @param <C> the callback type
+ */
+final class PendingLoads<K, C> {
+
+    private final Map<K, List<C>> mPending = new HashMap<>();
+
+    /**
+     * Registers {@code callback} to be completed by the load for {@code key}.
+     *
+     * @return {@code true} if no load for {@code key} is in flight and the caller must start it
+     */
+    synchronized boolean add(@NonNull K key, @NonNull C callback) {
+        List<C> callbacks = mPending.get(key);
+        if (callbacks != null) {
+            callbacks.add(callback);
+            return false;
+        }
+        callbacks = new ArrayList<>(2);
+        callbacks.add(callback);
+        mPending.put(key, callbacks);
+        return true;
+    }
+
+    /**
+     * Ends the load for {@code key}. Callers arriving after this start a new load.
+     *
+     * @return the callbacks waiting for the load, in registration order
+     */
+    @NonNull
+    synchronized List<C> remove(@NonNull K key) {
+        List<C> callbacks = mPending.remove(key);
+        return callbacks != null ? callbacks : Collections.<C>emptyList();
+    }
+}
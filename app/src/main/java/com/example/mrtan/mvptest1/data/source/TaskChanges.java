@@ -0,0 +1,81 @@
+package com.example.mrtan.mvptest1.data.source;
+
+import android.support.annotation.NonNull;
+
+import com.example.mrtan.mvptest1.data.Task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The tasks changed on the server after a sync token: the tasks inserted or updated and the ids
+ * of the tasks deleted (tombstones). Applying them in order brings a copy of the tasks up to date
+ * with {@link #getToken()}, which is passed to the next
+ * {@link TasksDataSource#getChanges(long, TasksDataSource.LoadChangesCallback)} call.
+ * <p>
+ * A full resync, e.g. for the first sync or when the token is no longer known to the server, has
+ * {@link #isFullSync()} set: its tasks replace all the tasks instead of being merged.
+ *
+ * 同步令牌之后服务器上的增量修改：新增或修改的任务和被删除任务的id
+ */
+public final class TaskChanges {
+
+    /**
+     * The token to request all the tasks with.
+     */
+    public static final long NO_TOKEN = 0;
+
+    private final long mToken;
+
+    private final boolean mFullSync;
+
+    private final List<Task> mUpdatedTasks;
+
+    private final List<String> mDeletedTaskIds;
+
+    public TaskChanges(long token, boolean fullSync, @NonNull List<Task> updatedTasks,
+                       @NonNull List<String> deletedTaskIds) {
+        mToken = token;
+        mFullSync = fullSync;
+        mUpdatedTasks = Collections.unmodifiableList(new ArrayList<>(checkNotNull(updatedTasks)));
+        mDeletedTaskIds =
+                Collections.unmodifiableList(new ArrayList<>(checkNotNull(deletedTaskIds)));
+    }
+
+    /**
+     * @return the token to request the changes made after these ones
+     */
+    public long getToken() {
+        return mToken;
+    }
+
+    /**
+     * @return {@code true} if {@link #getUpdatedTasks()} are all the tasks there are
+     */
+    public boolean isFullSync() {
+        return mFullSync;
+    }
+
+    @NonNull
+    public List<Task> getUpdatedTasks() {
+        return mUpdatedTasks;
+    }
+
+    @NonNull
+    public List<String> getDeletedTaskIds() {
+        return mDeletedTaskIds;
+    }
+
+    public boolean isEmpty() {
+        return !mFullSync && mUpdatedTasks.isEmpty() && mDeletedTaskIds.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "TaskChanges up to " + mToken + ": " + mUpdatedTasks.size() + " updated, "
+                + mDeletedTaskIds.size() + " deleted" + (mFullSync ? " (full sync)" : "");
+    }
+}
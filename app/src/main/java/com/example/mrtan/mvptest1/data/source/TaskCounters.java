@@ -0,0 +1,135 @@
+package com.example.mrtan.mvptest1.data.source;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.example.mrtan.mvptest1.data.Task;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Incremental counters behind {@link TaskRepository#getStatistics}.
+ * <p>
+ * The counters are loaded once from the local data source, then every write of the repository
+ * adjusts them from the task before and after it, so reading the statistics costs the same
+ * whatever the number of tasks. A write whose previous task isn't known, e.g. it was evicted from
+ * the cache, invalidates the counters until they are loaded again. Loaded counts are only kept if
+ * nothing was written while they were being loaded, see {@link #getGeneration()}.
+ * <p>
+ * This class is thread safe. The statistics are built once per change and shared.
+ *
+ * 增量维护的统计计数：每次写操作根据前后的任务调整计数，读取统计为O(1)
+ */
+final class TaskCounters {
+
+    // The fields below are guarded by this.
+
+    private boolean mLoaded;
+
+    private int mTotalCount;
+
+    private int mCompletedCount;
+
+    private final Map<Integer, Integer> mCompletionsByDay = new HashMap<>();
+
+    private int mGeneration;
+
+    /**
+     * Statistics of the current counts, or {@code null} if they changed since the last ones were
+     * built.
+     */
+    private TaskStatistics mStatistics;
+
+    /**
+     * @return the current statistics, or {@code null} if they must be loaded
+     */
+    @Nullable
+    synchronized TaskStatistics getStatistics() {
+        if (!mLoaded) {
+            return null;
+        }
+        if (mStatistics == null) {
+            mStatistics = new TaskStatistics(mTotalCount, mCompletedCount, mCompletionsByDay);
+        }
+        return mStatistics;
+    }
+
+    /**
+     * @return a number that changes with every write
+     */
+    synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Starts counting from statistics loaded from the local data source, unless something was
+     * written since {@code generation}.
+     */
+    synchronized void load(@NonNull TaskStatistics statistics, int generation) {
+        if (mGeneration != generation) {
+            return;
+        }
+        mTotalCount = statistics.getTotalCount();
+        mCompletedCount = statistics.getCompletedCount();
+        mCompletionsByDay.clear();
+        mCompletionsByDay.putAll(statistics.getCompletionsByDay());
+        mStatistics = statistics;
+        mLoaded = true;
+    }
+
+    /**
+     * Counts a write that replaced {@code oldTask} with {@code newTask}, either being {@code null}
+     * for an insert or a delete. {@code completedOn} is the day to count a completion on, if the
+     * write completed the task on this device, or {@code null}.
+     */
+    synchronized void onTaskChanged(@Nullable Task oldTask, @Nullable Task newTask,
+                                    @Nullable Integer completedOn) {
+        onChanged();
+        if (!mLoaded) {
+            return;
+        }
+        mTotalCount += (newTask != null ? 1 : 0) - (oldTask != null ? 1 : 0);
+        mCompletedCount += (isCompleted(newTask) ? 1 : 0) - (isCompleted(oldTask) ? 1 : 0);
+        if (completedOn != null && oldTask != null && !oldTask.isCompleted()
+                && isCompleted(newTask)) {
+            Integer completions = mCompletionsByDay.get(completedOn);
+            mCompletionsByDay.put(completedOn, completions != null ? completions + 1 : 1);
+        }
+    }
+
+    /**
+     * Counts the deletion of all the completed tasks.
+     */
+    synchronized void onCompletedCleared() {
+        onChanged();
+        mTotalCount -= mCompletedCount;
+        mCompletedCount = 0;
+    }
+
+    /**
+     * Counts the deletion of all the tasks. The completions by day are history, they are kept.
+     */
+    synchronized void onAllDeleted() {
+        onChanged();
+        mTotalCount = 0;
+        mCompletedCount = 0;
+    }
+
+    /**
+     * Forgets the counts, the next statistics are loaded again.
+     */
+    synchronized void invalidate() {
+        onChanged();
+        mLoaded = false;
+    }
+
+    private void onChanged() {
+        mGeneration++;
+        mStatistics = null;
+    }
+
+    private static boolean isCompleted(@Nullable Task task) {
+        return task != null && task.isCompleted();
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.mrtan.mvptest1.data.source;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.tasks.TasksFilterType;
+import com.example.mrtan.mvptest1.util.FrameExecutor;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Observers of the tasks of a {@link TaskRepository}.
+ * <p>
+ * Every change of the cache only schedules a dispatch, and a dispatch is already scheduled until it
+ * runs, so a burst of changes is conflated into one dispatch per frame. A dispatch reads the
+ * latest snapshot of the cache, so observers that fall behind skip the intermediate states instead
+ * of queuing them, and an observer is only called if what it observes actually changed. When the
+ * cache can't answer, e.g. some tasks were evicted, the observed tasks are loaded again through the
+ * repository, one load at a time per observer.
+ * <p>
+ * Observers are subscribed, called and unsubscribed on the main thread.
+ *
+ * 任务观察者：缓存变化合并为每帧一次分发，观察的数据变化时才回调
+ */
+final class TaskObservers implements TasksCache.OnChangedListener {
+
+    private final TaskRepository mRepository;
+
+    private final List<Subscription> mSubscriptions = new CopyOnWriteArrayList<>();
+
+    private final AtomicBoolean mDispatchScheduled = new AtomicBoolean();
+
+    private final Runnable mDispatch = new Runnable() {
+        @Override
+        public void run() {
+            // Cleared first: a change made while dispatching needs another dispatch.
+            mDispatchScheduled.set(false);
+            for (Subscription subscription : mSubscriptions) {
+                subscription.update();
+            }
+        }
+    };
+
+    /**
+     * Created on first use, it needs the main looper.
+     */
+    private volatile Executor mDispatchExecutor;
+
+    TaskObservers(@NonNull TaskRepository repository) {
+        mRepository = checkNotNull(repository);
+    }
+
+    void setDispatchExecutor(@NonNull Executor dispatchExecutor) {
+        mDispatchExecutor = checkNotNull(dispatchExecutor);
+    }
+
+    @NonNull
+    TaskRepository.Subscription observeTasks(@NonNull TasksFilterType filter,
+                                             @NonNull TaskRepository.TasksObserver observer) {
+        return subscribe(new TasksSubscription(checkNotNull(filter), checkNotNull(observer)));
+    }
+
+    @NonNull
+    TaskRepository.Subscription observeTask(@NonNull String taskId,
+                                            @NonNull TaskRepository.TaskObserver observer) {
+        return subscribe(new TaskSubscription(checkNotNull(taskId), checkNotNull(observer)));
+    }
+
+    @Override
+    public void onCacheChanged() {
+        if (mSubscriptions.isEmpty() || !mDispatchScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        Executor dispatchExecutor = mDispatchExecutor;
+        if (dispatchExecutor == null) {
+            dispatchExecutor = new FrameExecutor();
+            mDispatchExecutor = dispatchExecutor;
+        }
+        dispatchExecutor.execute(mDispatch);
+    }
+
+    private Subscription subscribe(Subscription subscription) {
+        mSubscriptions.add(subscription);
+        // The current value is delivered right away, or once loaded.
+        subscription.update();
+        return subscription;
+    }
+
+    private abstract class Subscription implements TaskRepository.Subscription {
+
+        private volatile boolean mSubscribed = true;
+
+        // Only used on the main thread.
+
+        private boolean mLoading;
+
+        private boolean mUpdateAgain;
+
+        @Override
+        public void unsubscribe() {
+            mSubscribed = false;
+            mSubscriptions.remove(this);
+        }
+
+        boolean isSubscribed() {
+            return mSubscribed;
+        }
+
+        final void update() {
+            if (!mSubscribed) {
+                return;
+            }
+            if (mLoading) {
+                // The load may have read the tasks before this change.
+                mUpdateAgain = true;
+                return;
+            }
+            if (!updateFromCache()) {
+                mLoading = true;
+                load();
+            }
+        }
+
+        /**
+         * Called when a load started by {@link #load()} completes.
+         */
+        final void onLoaded() {
+            mLoading = false;
+            if (mUpdateAgain) {
+                mUpdateAgain = false;
+                update();
+            }
+        }
+
+        /**
+         * @return {@code false} if the cache can't answer and the observed tasks must be loaded
+         */
+        abstract boolean updateFromCache();
+
+        abstract void load();
+    }
+
+    private final class TasksSubscription extends Subscription {
+
+        private final TasksFilterType mFilter;
+
+        private final TaskRepository.TasksObserver mObserver;
+
+        private int mGeneration;
+
+        @Nullable
+        private List<Task> mTasks;
+
+        TasksSubscription(TasksFilterType filter, TaskRepository.TasksObserver observer) {
+            mFilter = filter;
+            mObserver = observer;
+        }
+
+        @Override
+        boolean updateFromCache() {
+            if (mRepository.isCacheDirty()) {
+                return false;
+            }
+            TasksCache.Snapshot snapshot = mRepository.mCachedTasks.getSnapshot();
+            if (!snapshot.isComplete()) {
+                return false;
+            }
+            if (mTasks == null || snapshot.getGeneration() != mGeneration) {
+                mGeneration = snapshot.getGeneration();
+                deliver(snapshot.getTasks(mFilter));
+            }
+            return true;
+        }
+
+        @Override
+        void load() {
+            mRepository.getTasks(mFilter, new TasksDataSource.LoadTasksCallback() {
+                @Override
+                public void onTaskLoaded(List<Task> tasks) {
+                    // Compared by content, the generation doesn't say what was loaded.
+                    mGeneration = -1;
+                    deliver(tasks);
+                    onLoaded();
+                }
+
+                @Override
+                public void onDataNotAvailable() {
+                    if (isSubscribed()) {
+                        mObserver.onDataNotAvailable();
+                    }
+                    onLoaded();
+                }
+            });
+        }
+
+        private void deliver(List<Task> tasks) {
+            if (!isSubscribed() || mTasks != null && Task.sameContent(mTasks, tasks)) {
+                return;
+            }
+            mTasks = tasks;
+            mObserver.onTasksChanged(tasks);
+        }
+    }
+
+    private final class TaskSubscription extends Subscription {
+
+        private final String mTaskId;
+
+        private final TaskRepository.TaskObserver mObserver;
+
+        private boolean mDelivered;
+
+        @Nullable
+        private Task mTask;
+
+        TaskSubscription(String taskId, TaskRepository.TaskObserver observer) {
+            mTaskId = taskId;
+            mObserver = observer;
+        }
+
+        @Override
+        boolean updateFromCache() {
+            Task task = mRepository.mCachedTasks.get(mTaskId);
+            if (task != null) {
+                deliver(task);
+                return true;
+            }
+            if (!mRepository.isCacheDirty() && mRepository.mCachedTasks.isComplete()) {
+                // Not in a complete cache: deleted.
+                deliver(null);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        void load() {
+            mRepository.getTask(mTaskId, new TasksDataSource.GetTaskCallback() {
+                @Override
+                public void onTaskLoaded(Task task) {
+                    deliver(task);
+                    onLoaded();
+                }
+
+                @Override
+                public void onDataNotAvailable() {
+                    deliver(null);
+                    onLoaded();
+                }
+            });
+        }
+
+        private void deliver(@Nullable Task task) {
+            if (!isSubscribed() || mDelivered && Task.sameContent(mTask, task)) {
+                return;
+            }
+            mDelivered = true;
+            mTask = task;
+            if (task != null) {
+                mObserver.onTaskChanged(task);
+            } else {
+                mObserver.onDataNotAvailable();
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.mrtan.mvptest1.data.source;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.tasks.TasksFilterType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Filtering and keyset paging over in-memory task collections, with the same semantics as
+ * {@link TasksDataSource#getTasks(TasksFilterType, String, int, TasksDataSource.LoadTasksCallback)}.
+ *
+ * 内存中数据的过滤和分页
+ */
+public final class TaskPaging {
+
+    private TaskPaging() {
+    }
+
+    /**
+     * @return the tasks accepted by {@code filter}, in iteration order
+     */
+    @NonNull
+    public static List<Task> filter(@NonNull Iterable<Task> tasks,
+                                    @NonNull TasksFilterType filter) {
+        List<Task> filtered = new ArrayList<>();
+        for (Task task : tasks) {
+            if (filter.accepts(task)) {
+                filtered.add(task);
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * Returns at most {@code pageSize} tasks following the task with id {@code afterTaskId}, or
+     * from the start when it is {@code null}. Returns {@code null} if {@code afterTaskId} is not
+     * in {@code tasks}, an empty page would read as the end of the list.
+     */
+    @Nullable
+    public static List<Task> page(@NonNull Iterable<Task> tasks, @Nullable String afterTaskId,
+                                  int pageSize) {
+        return page(tasks, TasksFilterType.ALL_TASKS, afterTaskId, pageSize);
+    }
+
+    /**
+     * Same as {@link #page(Iterable, String, int)}, only counting the tasks accepted by
+     * {@code filter}. The anchor itself needn't be accepted by {@code filter}.
+     */
+    @Nullable
+    public static List<Task> page(@NonNull Iterable<Task> tasks, @NonNull TasksFilterType filter,
+                                  @Nullable String afterTaskId, int pageSize) {
+        List<Task> page = new ArrayList<>(pageSize);
+        boolean started = afterTaskId == null;
+        for (Task task : tasks) {
+            if (started) {
+                if (filter.accepts(task)) {
+                    page.add(task);
+                }
+                if (page.size() == pageSize) {
+                    break;
+                }
+            } else if (afterTaskId.equals(task.getId())) {
+                started = true;
+            }
+        }
+        return started ? page : null;
+    }
+}
@@ -1,16 +1,27 @@
 package com.example.mrtan.mvptest1.data.source;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 
 import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.data.source.metrics.MetricsRegistry;
+import com.example.mrtan.mvptest1.tasks.TasksFilterType;
 
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Concrete implementation to load tasks from the data source into a cache.
@@ -22,33 +33,163 @@ import java.util.Map;
  * 将数据从数据源导入到缓存的具体实现
  *
  * 简单讲：实现一个堆在远程数据和本地持久数据之间同步，在本地数据不存在或者为空的情况下从远程数据拉取数据
+ *<p>
+ * The data sources execute their work on {@link com.example.mrtan.mvptest1.util.AppExecutors} and
+ * call back on the main thread. The repository itself is thread safe: the cache is a
+ * {@link TasksCache}, whose readers get immutable snapshots without locking, and the dirty state is
+ * tracked with atomic counters.
+ *
+ * 数据源在后台线程执行并在主线程回调。仓库本身是线程安全的，读缓存不需要加锁
  */
 public class TaskRepository implements TasksDataSource{
 
-    private static TaskRepository INSTANCE = null;
+    /**
+     * Observer of a list of tasks, see {@link #observeTasks(TasksFilterType, TasksObserver)}.
+     */
+    public interface TasksObserver {
+
+        void onTasksChanged(List<Task> tasks);
+
+        void onDataNotAvailable();
+    }
+
+    /**
+     * Observer of a single task, see {@link #observeTask(String, TaskObserver)}.
+     */
+    public interface TaskObserver {
+
+        void onTaskChanged(Task task);
+
+        /**
+         * The task doesn't exist, or was deleted.
+         */
+        void onDataNotAvailable();
+    }
+
+    public interface Subscription {
+
+        /**
+         * Stops calling the observer. 取消订阅
+         */
+        void unsubscribe();
+    }
+
+    private static volatile TaskRepository INSTANCE = null;
 
     private final TasksDataSource mTasksRemoteDataSource;
 
     private final TasksDataSource mTaskLocalDataSource;
 
     /**
-     * This variable has package local visibility so it can be accessed from tests.
-     * 这个变量拥有包的访问权限，可供测试
+     * Memory bounded, see {@link #setCacheLimits(int, long)}. This variable has package local
+     * visibility so it can be accessed from tests.
+     * 有内存上限的缓存，这个变量拥有包的访问权限，可供测试
      */
-    Map<String, Task> mCachedTasks;
+    final TasksCache mCachedTasks = new TasksCache();
 
     /**
-     * Marks the cache as invalid, to force an update the next time data is requested. This variable
-     * has package local visibility so it can be accessed from tests.
-     * 用于标记缓存时候可用来强制更新下次的数据访问。 这个属性用于包访问权限，可供测试
+     * Number of times {@link #refreshTasks()} was called. The cache is invalid, to force an update
+     * the next time data is requested, until a remote load started after the latest call has
+     * completed, see {@link #isCacheDirty()}.
+     * 用于标记缓存时候可用来强制更新下次的数据访问
      */
-    boolean mCacheIsDirty = false;
+    private final AtomicInteger mRefreshRequests = new AtomicInteger();
+
+    /**
+     * The highest value of {@link #mRefreshRequests} a completed remote load has started after.
+     */
+    private final AtomicInteger mCompletedRefreshRequests = new AtomicInteger();
+
+    /**
+     * Serializes the mutations, so the cache and the data sources see them in the same order.
+     * Reads don't take it.
+     * 写操作串行执行，读操作不加锁
+     */
+    private final Object mWriteLock = new Object();
+
+    /**
+     * Filtered tasks loaded from the local data source while the cache is not complete, each valid
+     * as long as the cache generation they were loaded at. This variable has package local
+     * visibility so it can be accessed from tests.
+     * 缓存不完整时从本地加载的过滤结果，缓存变化后失效
+     */
+    final Map<TasksFilterType, FilteredTasks> mLoadedFilteredTasks = new ConcurrentHashMap<>();
+
+    /**
+     * Remote loads of all the tasks in flight, by the refresh request they started after. A caller
+     * only joins a load that will clear the refresh it is waiting for.
+     * 正在进行的远程加载，同时请求的调用共享一次加载
+     */
+    private final PendingLoads<Integer, LoadTasksCallback> mRemoteLoads = new PendingLoads<>();
+
+    /**
+     * Local loads of all the tasks in flight, by the cache generation they started at.
+     * 正在进行的本地加载
+     */
+    private final PendingLoads<Integer, LoadTasksCallback> mLocalLoads = new PendingLoads<>();
+
+    /**
+     * Loads of single tasks missing from the cache in flight, by task id.
+     * 正在进行的单个任务加载
+     */
+    private final PendingLoads<String, GetTaskCallback> mTaskLoads = new PendingLoads<>();
+
+    private static final long TOKEN_NOT_LOADED = -1;
+
+    /**
+     * Token of the last changes synced from the remote data source, loaded from the local data
+     * source on the first sync.
+     * 最后一次增量同步的令牌
+     */
+    private final AtomicLong mSyncToken = new AtomicLong(TOKEN_NOT_LOADED);
+
+    /**
+     * How long synced tasks are fresh for, in stale-while-revalidate mode.
+     */
+    public static final long DEFAULT_CACHE_TTL_MILLIS = 5 * 60 * 1000;
+
+    private volatile boolean mStaleWhileRevalidate;
+
+    private volatile long mCacheTtlNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_CACHE_TTL_MILLIS);
+
+    /**
+     * {@link System#nanoTime()} when the last successful sync with the remote data source
+     * started, only valid if {@link #mSynced} is set.
+     */
+    private volatile long mLastSyncNanos;
+
+    private volatile boolean mSynced;
+
+    private final TaskObservers mObservers = new TaskObservers(this);
+
+    /**
+     * Counts behind {@link #getStatistics(GetStatisticsCallback)}, adjusted by every write.
+     * 增量维护的统计计数
+     */
+    private final TaskCounters mCounters = new TaskCounters();
+
+    /**
+     * Loads of the statistics in flight, by the counters generation they started at.
+     */
+    private final PendingLoads<Integer, GetStatisticsCallback> mStatisticsLoads =
+            new PendingLoads<>();
+
+    /**
+     * Loads of all the tasks answered from the cache, from the local data source, and the remote
+     * loads of a dirty or stale cache, see {@link #registerMetrics(MetricsRegistry)}.
+     */
+    private final AtomicLong mCacheHits = new AtomicLong();
+
+    private final AtomicLong mCacheMisses = new AtomicLong();
+
+    private final AtomicLong mCacheRefreshes = new AtomicLong();
 
     //Prevent direct instantiation. 私有化构造器
     private TaskRepository(@NonNull TasksDataSource taskRemoteDataSource,
                            @NonNull TasksDataSource taskLocalDataSource) {
         mTasksRemoteDataSource = taskRemoteDataSource;
         mTaskLocalDataSource = taskLocalDataSource;
+        mCachedTasks.setOnChangedListener(mObservers);
     }
 
     /**
@@ -56,16 +197,154 @@ public class TaskRepository implements TasksDataSource{
      * @param taskRemoteDataSource the backend data source
      * @param taskLocalDataSource the device storage data source
      * @return the {@link TaskRepository} instance
-     * 单例模式 不知道为什么没有使用双验证或者静态内部类
+     * 单例模式，使用双重检查锁定
      */
     public static TaskRepository getInstance(@NonNull TasksDataSource taskRemoteDataSource,
                                              @NonNull TasksDataSource taskLocalDataSource) {
         if (INSTANCE == null) {
-            INSTANCE = new TaskRepository(taskRemoteDataSource, taskLocalDataSource);
+            synchronized (TaskRepository.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new TaskRepository(taskRemoteDataSource, taskLocalDataSource);
+                }
+            }
         }
         return INSTANCE;
     }
 
+    /**
+     * Used to force {@link #getInstance(TasksDataSource, TasksDataSource)} to create a new instance
+     * next time it's called.
+     */
+    public static void destroyInstance() {
+        INSTANCE = null;
+    }
+
+    /**
+     * Limits how many tasks, and approximately how many bytes of tasks, are kept in memory. The
+     * least recently used tasks are evicted first, and reads of evicted tasks fall through to the
+     * local data source.
+     * 设置缓存上限，超出时淘汰最近最少使用的数据
+     */
+    public void setCacheLimits(int maxEntries, long maxBytes) {
+        mCachedTasks.setLimits(maxEntries, maxBytes);
+    }
+
+    /**
+     * In stale-while-revalidate mode the loads of all, filtered or paged tasks answer right away
+     * with the cached or local tasks, even if they are stale, and revalidate them with the remote
+     * data source in the background. If the revalidated tasks, filtered or paged the same way,
+     * differ from the ones delivered the callback is called a second time with them. Off by
+     * default, callers have to expect two calls. {@link #getTask} and {@link #searchTasks} answer
+     * as usual.
+     * 先返回缓存或本地数据，再在后台从远程数据源更新，数据变化时再回调一次
+     */
+    public void setStaleWhileRevalidate(boolean enabled) {
+        mStaleWhileRevalidate = enabled;
+    }
+
+    /**
+     * Sets how long tasks stay fresh after a sync in stale-while-revalidate mode. After that, or
+     * after {@link #refreshTasks()}, the next read revalidates them.
+     * 设置数据的有效期
+     */
+    public void setCacheTtl(long ttl, @NonNull TimeUnit unit) {
+        checkArgument(ttl >= 0);
+        mCacheTtlNanos = unit.toNanos(ttl);
+    }
+
+    /**
+     * Registers gauges of the cache in {@code registry}: how often
+     * {@link #getTasks(LoadTasksCallback)} is answered from it ({@code repository.cacheHits}),
+     * falls through to the local data source ({@code repository.cacheMisses}) or reloads from the
+     * remote data source because the cache is dirty or stale ({@code repository.cacheRefreshes}),
+     * and the size, hits, misses and evictions of the cache itself.
+     * 在指标注册表中注册缓存的命中率等指标
+     */
+    public void registerMetrics(@NonNull MetricsRegistry registry) {
+        checkNotNull(registry);
+        registry.register("repository.cacheHits", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return mCacheHits.get();
+            }
+        });
+        registry.register("repository.cacheMisses", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return mCacheMisses.get();
+            }
+        });
+        registry.register("repository.cacheRefreshes", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return mCacheRefreshes.get();
+            }
+        });
+        registry.register("cache.tasks", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return mCachedTasks.size();
+            }
+        });
+        registry.register("cache.bytes", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return mCachedTasks.sizeBytes();
+            }
+        });
+        registry.register("cache.hits", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return mCachedTasks.hitCount();
+            }
+        });
+        registry.register("cache.misses", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return mCachedTasks.missCount();
+            }
+        });
+        registry.register("cache.evictions", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return mCachedTasks.evictionCount();
+            }
+        });
+    }
+
+    /**
+     * Observes the tasks accepted by {@code filter}: {@code observer} is called with the current
+     * tasks, loading them if needed, and then every time they change until it is unsubscribed.
+     * Changes made within a frame are delivered once, as the tasks at the end of it, and the lists
+     * delivered are immutable. Must be called on the main thread, where the observer is called.
+     *
+     * 订阅过滤后的任务列表，数据变化时推送不可变的列表，同一帧内的多次变化只推送一次
+     */
+    @NonNull
+    public Subscription observeTasks(@NonNull TasksFilterType filter,
+                                     @NonNull TasksObserver observer) {
+        return mObservers.observeTasks(filter, observer);
+    }
+
+    /**
+     * Observes the task with id {@code taskId}, like
+     * {@link #observeTasks(TasksFilterType, TasksObserver)}.
+     *
+     * 订阅单个任务
+     */
+    @NonNull
+    public Subscription observeTask(@NonNull String taskId, @NonNull TaskObserver observer) {
+        return mObservers.observeTask(taskId, observer);
+    }
+
+    /**
+     * Replaces the executor the observers are notified on, once per frame by default.
+     */
+    @VisibleForTesting
+    void setObserverExecutor(@NonNull Executor executor) {
+        mObservers.setDispatchExecutor(executor);
+    }
+
     /**
      * Get tasks from cache, local data source (SQLLite) or remote data source,whichever is
      * available first.
@@ -80,30 +359,153 @@ public class TaskRepository implements TasksDataSource{
     public void getTasks(@NonNull final LoadTasksCallback callback) {
         checkNotNull(callback);
 
+        if (mStaleWhileRevalidate) {
+            getTasksStaleWhileRevalidate(callback);
+            return;
+        }
+
         // Respond immediately with cache id available and not dirty
         //如果缓存中有数据并且不是脏数据，返回缓存中的数据
-        if (mCachedTasks != null && !mCacheIsDirty) {
-            callback.onTaskLoaded(new ArrayList<Task>(mCachedTasks.values()));
-            return;
+        if (!isCacheDirty()) {
+            TasksCache.Snapshot snapshot = mCachedTasks.getSnapshot();
+            if (snapshot.isComplete()) {
+                mCacheHits.incrementAndGet();
+                callback.onTaskLoaded(snapshot.getTasks());
+                return;
+            }
         }
 
-        if (mCacheIsDirty) {
+        if (isCacheDirty()) {
             // if the cache is dirty we need to fetch new data from the network.
             // 如果数据是脏的需要从网络拉取数据
+            mCacheRefreshes.incrementAndGet();
             getTasksFromRemoteDataSource(callback);
         } else {
             // Query the local storage if available. if not, query the network.
             //查询本地数据是否可用，不可用从网络中拉取
-            mTaskLocalDataSource.getTasks(new LoadTasksCallback() {
+            mCacheMisses.incrementAndGet();
+            getTasksFromLocalDataSource(callback);
+        }
+    }
+
+    /**
+     * Get the tasks accepted by {@code filter}. Filtered views are answered from the cache and
+     * kept until the cached tasks change, so switching filters doesn't scan every task again.
+     * Without a cache the filter is pushed down to the local data source. A dirty cache is
+     * refreshed from the remote data source first, except in stale-while-revalidate mode.
+     *
+     * 按过滤条件获取数据：过滤后的结果会被缓存直到数据变化，没有缓存时由本地数据源过滤
+     */
+    @Override
+    public void getTasks(@NonNull final TasksFilterType filter,
+                         @NonNull final LoadTasksCallback callback) {
+        checkNotNull(filter);
+        checkNotNull(callback);
+
+        List<Task> cachedTasks = getCachedTasks(filter);
+        if (cachedTasks != null) {
+            callback.onTaskLoaded(cachedTasks);
+            revalidateIfStale(cachedTasks, filter, null, 0, callback);
+            return;
+        }
+
+        final LoadTasksCallback filterCache = new LoadTasksCallback() {
+            @Override
+            public void onTaskLoaded(List<Task> tasks) {
+                callback.onTaskLoaded(TaskPaging.filter(tasks, filter));
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                callback.onDataNotAvailable();
+            }
+        };
+
+        if (mustRefresh()) {
+            getTasksFromRemoteDataSource(filterCache);
+        } else {
+            final int generation = mCachedTasks.getGeneration();
+            mTaskLocalDataSource.getTasks(filter, new LoadTasksCallback() {
                 @Override
                 public void onTaskLoaded(List<Task> tasks) {
-                    refreshCache(tasks);
-                    callback.onTaskLoaded(new ArrayList<Task>(mCachedTasks.values()));
+                    List<Task> filteredTasks = Collections.unmodifiableList(tasks);
+                    // Only valid if the cached tasks didn't change while it was being loaded.
+                    mLoadedFilteredTasks.put(filter, new FilteredTasks(generation, filteredTasks));
+                    callback.onTaskLoaded(filteredTasks);
+                    revalidateIfStale(filteredTasks, filter, null, 0, callback);
                 }
 
                 @Override
                 public void onDataNotAvailable() {
-                    getTasksFromRemoteDataSource(callback);
+                    getTasksFromRemoteDataSource(filterCache);
+                }
+            });
+        }
+    }
+
+    /**
+     * Get one page of the tasks accepted by {@code filter}. Pages are served from the cache when
+     * it is available and not dirty, otherwise straight from the local data source, so the first
+     * screen doesn't wait for the whole table to be read. A dirty cache, or an empty local data
+     * source, is refreshed from the remote data source before paging, except in
+     * stale-while-revalidate mode where a dirty cache is paged first and revalidated after. A
+     * page after a deleted task is not available, the caller starts again from the first page.
+     *
+     * 分页获取数据：缓存可用时从缓存分页，否则直接从本地数据源分页，不需要先加载全部数据
+     */
+    @Override
+    public void getTasks(@NonNull final TasksFilterType filter, @Nullable final String afterTaskId,
+                         final int pageSize, @NonNull final LoadTasksCallback callback) {
+        checkNotNull(filter);
+        checkNotNull(callback);
+        checkArgument(pageSize > 0);
+
+        List<Task> cachedTasks = getCachedTasks(filter);
+        List<Task> cachedPage = cachedTasks != null
+                ? TaskPaging.page(cachedTasks, afterTaskId, pageSize) : null;
+        if (cachedPage != null) {
+            callback.onTaskLoaded(cachedPage);
+            revalidateIfStale(cachedPage, filter, afterTaskId, pageSize, callback);
+            return;
+        }
+        // Not cached, or the anchor left the cached tasks: the local data source still knows
+        // where a task no longer accepted by the filter was, and reports a deleted one.
+
+        final LoadTasksCallback pageFromCache = new LoadTasksCallback() {
+            @Override
+            public void onTaskLoaded(List<Task> tasks) {
+                List<Task> page = TaskPaging.page(tasks, filter, afterTaskId, pageSize);
+                if (page != null) {
+                    callback.onTaskLoaded(page);
+                } else {
+                    callback.onDataNotAvailable();
+                }
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                callback.onDataNotAvailable();
+            }
+        };
+
+        if (mustRefresh()) {
+            getTasksFromRemoteDataSource(pageFromCache);
+        } else {
+            mTaskLocalDataSource.getTasks(filter, afterTaskId, pageSize, new LoadTasksCallback() {
+                @Override
+                public void onTaskLoaded(List<Task> tasks) {
+                    callback.onTaskLoaded(tasks);
+                    revalidateIfStale(tasks, filter, afterTaskId, pageSize, callback);
+                }
+
+                @Override
+                public void onDataNotAvailable() {
+                    if (afterTaskId != null) {
+                        // The anchor was deleted, the local data source isn't empty.
+                        callback.onDataNotAvailable();
+                    } else {
+                        getTasksFromRemoteDataSource(pageFromCache);
+                    }
                 }
             });
         }
@@ -124,13 +526,25 @@ public class TaskRepository implements TasksDataSource{
         }
 
         //load from server/persisted if needed 从网络或者持久化获取
+        //Concurrent requests for the same task share one load. 同一个任务的并发请求共享一次加载
+        if (!mTaskLoads.add(taskId, callback)) {
+            return;
+        }
 
         //Is the task in local data source? ig not, query the network.
         //先从持久化获取数据如果获取不到从网络获取
+        final long version = mCachedTasks.getVersion();
         mTaskLocalDataSource.getTask(taskId, new GetTaskCallback() {
             @Override
             public void onTaskLoaded(Task task) {
-                callback.onTaskLoaded(task);
+                if (task == null) {
+                    onDataNotAvailable();
+                    return;
+                }
+                cacheTask(task, version);
+                for (GetTaskCallback waiting : mTaskLoads.remove(taskId)) {
+                    waiting.onTaskLoaded(task);
+                }
             }
 
             @Override
@@ -138,129 +552,341 @@ public class TaskRepository implements TasksDataSource{
                 mTasksRemoteDataSource.getTask(taskId, new GetTaskCallback() {
                     @Override
                     public void onTaskLoaded(Task task) {
-                        callback.onTaskLoaded(task);
+                        // A remote data source may answer an unknown id with null.
+                        if (task == null) {
+                            onDataNotAvailable();
+                            return;
+                        }
+                        cacheTask(task, version);
+                        for (GetTaskCallback waiting : mTaskLoads.remove(taskId)) {
+                            waiting.onTaskLoaded(task);
+                        }
                     }
 
                     @Override
                     public void onDataNotAvailable() {
-                        callback.onDataNotAvailable();
+                        for (GetTaskCallback waiting : mTaskLoads.remove(taskId)) {
+                            waiting.onDataNotAvailable();
+                        }
                     }
                 });
             }
         });
     }
 
+    /**
+     * Searches the cache when it is complete and not dirty, through an index shared until the
+     * cached tasks change. Otherwise the search runs on the full-text index of the local data
+     * source.
+     *
+     * 缓存完整时在内存中搜索，否则由本地数据源的全文索引搜索
+     */
+    @Override
+    public void searchTasks(@NonNull String query, @Nullable String afterTaskId, int pageSize,
+                            @NonNull LoadTasksCallback callback) {
+        checkNotNull(query);
+        checkNotNull(callback);
+        checkArgument(pageSize > 0);
+
+        if (!isCacheDirty()) {
+            TasksCache.Snapshot snapshot = mCachedTasks.getSnapshot();
+            if (snapshot.isComplete()) {
+                List<Task> page = TaskPaging.page(snapshot.search(query), afterTaskId, pageSize);
+                if (page != null) {
+                    callback.onTaskLoaded(page);
+                } else {
+                    callback.onDataNotAvailable();
+                }
+                return;
+            }
+        }
+        mTaskLocalDataSource.searchTasks(query, afterTaskId, pageSize, callback);
+    }
+
     @Override
     public void saveTask(@NonNull Task task) {
         checkNotNull(task);
-        mTasksRemoteDataSource.saveTask(task);
-        mTaskLocalDataSource.saveTask(task);
+        synchronized (mWriteLock) {
+            mTasksRemoteDataSource.saveTask(task);
+            mTaskLocalDataSource.saveTask(task);
 
-        //Do in memory cache update to keep the UI up to data
-        //强制内存更新来保持ui的更新
-        if (mCachedTasks == null) {
-            mCachedTasks = new LinkedHashMap<>();
+            countWrite(task.getId(), task, null);
+            //Do in memory cache update to keep the UI up to data
+            //强制内存更新来保持ui的更新
+            mCachedTasks.put(task);
+        }
+    }
+
+    @Override
+    public void saveTasks(@NonNull List<Task> tasks) {
+        checkNotNull(tasks);
+        synchronized (mWriteLock) {
+            mTasksRemoteDataSource.saveTasks(tasks);
+            mTaskLocalDataSource.saveTasks(tasks);
+
+            Map<String, Task> batch = new HashMap<>();
+            for (Task task : tasks) {
+                countWrite(task.getId(), task, null, batch);
+            }
+            //Do in memory cache update to keep the UI up to data
+            //强制内存更新来保持ui的更新
+            mCachedTasks.putAll(tasks);
         }
-        mCachedTasks.put(task.getId(), task);
     }
 
     @Override
     public void completeTask(@NonNull Task task) {
         checkNotNull(task);
-        mTasksRemoteDataSource.completeTask(task);
-        mTaskLocalDataSource.completeTask(task);
+        synchronized (mWriteLock) {
+            mTasksRemoteDataSource.completeTask(task);
+            mTaskLocalDataSource.completeTask(task);
 
-        Task completedTask = new Task(task.getTitle(), task.getDescription(), task.getId(), true);
+            Task completedTask = new Task(task.getTitle(), task.getDescription(), task.getId(),
+                    true, task.getVersion());
+            countWrite(task.getId(), completedTask,
+                    TaskStatistics.epochDay(System.currentTimeMillis()));
 
-        //Do in memory cache update to keep the UI up to data
-        //强制内存更新来保持ui的更新
-        if (mCachedTasks == null) {
-            mCachedTasks = new LinkedHashMap<>();
+            //Do in memory cache update to keep the UI up to data
+            //强制内存更新来保持ui的更新
+            mCachedTasks.put(completedTask);
         }
-        mCachedTasks.put(task.getId(),completedTask);
     }
 
     @Override
     public void completeTask(@NonNull String taskId) {
         checkNotNull(taskId);
-        completeTask(getTaskWithId(taskId));
+        Task cachedTask = getTaskWithId(taskId);
+        if (cachedTask != null) {
+            completeTask(cachedTask);
+            return;
+        }
+        // Evicted or never cached: load it first.
+        getTask(taskId, new GetTaskCallback() {
+            @Override
+            public void onTaskLoaded(Task task) {
+                if (task != null) {
+                    completeTask(task);
+                }
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+            }
+        });
     }
 
     @Override
     public void activateTask(@NonNull Task task) {
         checkNotNull(task);
-        mTasksRemoteDataSource.activateTask(task);
-        mTaskLocalDataSource.activateTask(task);
+        synchronized (mWriteLock) {
+            mTasksRemoteDataSource.activateTask(task);
+            mTaskLocalDataSource.activateTask(task);
 
-        Task activeTask = new Task(task.getTitle(),task.getDescription(), task.getId());
+            Task activeTask = new Task(task.getTitle(), task.getDescription(), task.getId(),
+                    false, task.getVersion());
+            countWrite(task.getId(), activeTask, null);
 
-        //Do in memory cache update to keep the UI up to data
-        //强制内存更新来保持ui的更新
-        if (mCachedTasks == null) {
-            mCachedTasks = new LinkedHashMap<>();
+            //Do in memory cache update to keep the UI up to data
+            //强制内存更新来保持ui的更新
+            mCachedTasks.put(activeTask);
         }
-        mCachedTasks.put(task.getId(), activeTask);
     }
 
     @Override
     public void activateTask(@NonNull String taskId) {
         checkNotNull(taskId);
-        activateTask(getTaskWithId(taskId));
+        Task cachedTask = getTaskWithId(taskId);
+        if (cachedTask != null) {
+            activateTask(cachedTask);
+            return;
+        }
+        // Evicted or never cached: load it first.
+        getTask(taskId, new GetTaskCallback() {
+            @Override
+            public void onTaskLoaded(Task task) {
+                if (task != null) {
+                    activateTask(task);
+                }
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+            }
+        });
     }
 
     @Override
-    public void clearCompletedTasks() {
-        mTaskLocalDataSource.clearCompletedTasks();
-        mTasksRemoteDataSource.clearCompletedTasks();
+    public void completeTasks(@NonNull Collection<String> taskIds) {
+        checkNotNull(taskIds);
+        synchronized (mWriteLock) {
+            mTasksRemoteDataSource.completeTasks(taskIds);
+            mTaskLocalDataSource.completeTasks(taskIds);
 
-        //Do in memory cache update to keep the UI up to data
-        //强制内存更新来保持ui的更新
-        if (mCachedTasks == null){
-            mCachedTasks = new LinkedHashMap<>();
+            setCompletedInCache(taskIds, true);
         }
-        Iterator<Map.Entry<String, Task>> it = mCachedTasks.entrySet().iterator();
-        while (it.hasNext()){
-            Map.Entry<String, Task> entry = it.next();
-            if (entry.getValue().isCompleted()){
-                it.remove();
-            }
+    }
+
+    @Override
+    public void activateTasks(@NonNull Collection<String> taskIds) {
+        checkNotNull(taskIds);
+        synchronized (mWriteLock) {
+            mTasksRemoteDataSource.activateTasks(taskIds);
+            mTaskLocalDataSource.activateTasks(taskIds);
+
+            setCompletedInCache(taskIds, false);
+        }
+    }
+
+    @Override
+    public void clearCompletedTasks() {
+        synchronized (mWriteLock) {
+            mTaskLocalDataSource.clearCompletedTasks();
+            mTasksRemoteDataSource.clearCompletedTasks();
+
+            //Do in memory cache update to keep the UI up to data
+            //强制内存更新来保持ui的更新
+            mCounters.onCompletedCleared();
+            mCachedTasks.removeCompleted();
         }
     }
 
     @Override
     public void refreshTasks() {
-        mCacheIsDirty = true;
+        mRefreshRequests.incrementAndGet();
     }
 
     @Override
     public void deleteTask(@NonNull String taskId) {
-        mTasksRemoteDataSource.deleteTask(taskId);
-        mTaskLocalDataSource.deleteTask(taskId);
+        checkNotNull(taskId);
+        synchronized (mWriteLock) {
+            mTasksRemoteDataSource.deleteTask(taskId);
+            mTaskLocalDataSource.deleteTask(taskId);
+
+            countWrite(taskId, null, null);
+            // Only this task changed, a complete cache stays complete.
+            mCachedTasks.remove(taskId);
+        }
+    }
 
-        if (mCachedTasks == null){
-            mCachedTasks = new LinkedHashMap<>();
+    @Override
+    public void deleteTasks(@NonNull Collection<String> taskIds) {
+        checkNotNull(taskIds);
+        synchronized (mWriteLock) {
+            mTasksRemoteDataSource.deleteTasks(taskIds);
+            mTaskLocalDataSource.deleteTasks(taskIds);
+
+            Map<String, Task> batch = new HashMap<>();
+            for (String taskId : taskIds) {
+                countWrite(taskId, null, null, batch);
+            }
+            // One change for all the tasks, a complete cache stays complete.
+            mCachedTasks.applyWrites(Collections.<Task>emptyList(), taskIds);
         }
-        mCachedTasks.clear();
     }
 
     @Override
     public void deleteAllTasks() {
-        mTasksRemoteDataSource.clearCompletedTasks();
-        mTaskLocalDataSource.clearCompletedTasks();
+        synchronized (mWriteLock) {
+            mTasksRemoteDataSource.deleteAllTasks();
+            mTaskLocalDataSource.deleteAllTasks();
+
+            mCounters.onAllDeleted();
+            mCachedTasks.clear();
+            mCachedTasks.setComplete();
+        }
+    }
+
+    @Override
+    public void getChanges(long sinceToken, @NonNull LoadChangesCallback callback) {
+        checkNotNull(callback);
+        mTasksRemoteDataSource.getChanges(sinceToken, callback);
+    }
 
-        if (mCachedTasks == null) {
-            mCachedTasks = new LinkedHashMap<>();
+    @Override
+    public void applyChanges(@NonNull TaskChanges changes) {
+        checkNotNull(changes);
+        synchronized (mWriteLock) {
+            applyChangesInternal(changes);
         }
-        mCachedTasks.clear();
     }
 
-    private void getTasksFromRemoteDataSource(@NonNull final LoadTasksCallback callback){
-        mTasksRemoteDataSource.getTasks(new LoadTasksCallback() {
+    @Override
+    public void getSyncToken(@NonNull GetSyncTokenCallback callback) {
+        checkNotNull(callback);
+        mTaskLocalDataSource.getSyncToken(callback);
+    }
+
+    /**
+     * Answers from incremental counters, in constant time, loading them from the local data
+     * source first if needed. Concurrent loads share one.
+     *
+     * 由增量计数器直接返回统计，需要时先从本地数据源加载
+     */
+    @Override
+    public void getStatistics(@NonNull GetStatisticsCallback callback) {
+        checkNotNull(callback);
+        TaskStatistics statistics = mCounters.getStatistics();
+        if (statistics != null) {
+            callback.onStatisticsLoaded(statistics);
+            return;
+        }
+
+        final int generation = mCounters.getGeneration();
+        if (!mStatisticsLoads.add(generation, callback)) {
+            return;
+        }
+        mTaskLocalDataSource.getStatistics(new GetStatisticsCallback() {
+            @Override
+            public void onStatisticsLoaded(TaskStatistics statistics) {
+                mCounters.load(statistics, generation);
+                for (GetStatisticsCallback waiting : mStatisticsLoads.remove(generation)) {
+                    waiting.onStatisticsLoaded(statistics);
+                }
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                for (GetStatisticsCallback waiting : mStatisticsLoads.remove(generation)) {
+                    waiting.onDataNotAvailable();
+                }
+            }
+        });
+    }
+
+    /**
+     * Answers from the cache once it holds all the tasks, otherwise from the snapshot file of the
+     * local data source, which is read without opening the database. The snapshot isn't put in the
+     * cache, it may be out of date and only holds the first tasks.
+     *
+     * 缓存完整时直接返回，否则读取本地的首屏快照，快照不放入缓存
+     */
+    @Override
+    public void getTasksSnapshot(@NonNull LoadTasksCallback callback) {
+        checkNotNull(callback);
+        TasksCache.Snapshot snapshot = mCachedTasks.getSnapshot();
+        if (snapshot.isComplete()) {
+            callback.onTaskLoaded(snapshot.getTasks());
+            return;
+        }
+        mTaskLocalDataSource.getTasksSnapshot(callback);
+    }
+
+    private void getTasksStaleWhileRevalidate(@NonNull final LoadTasksCallback callback) {
+        TasksCache.Snapshot snapshot = mCachedTasks.getSnapshot();
+        if (snapshot.isComplete()) {
+            mCacheHits.incrementAndGet();
+            List<Task> tasks = snapshot.getTasks();
+            callback.onTaskLoaded(tasks);
+            revalidateIfStale(tasks, TasksFilterType.ALL_TASKS, null, 0, callback);
+            return;
+        }
+        mCacheMisses.incrementAndGet();
+        getTasksFromLocalDataSource(new LoadTasksCallback() {
             @Override
             public void onTaskLoaded(List<Task> tasks) {
-                refreshCache(tasks);
-                refreshLocalDataSource(tasks);
-                callback.onTaskLoaded(new ArrayList<Task>(mCachedTasks.values()));
+                callback.onTaskLoaded(tasks);
+                // Not stale anymore if these came from the remote data source.
+                revalidateIfStale(tasks, TasksFilterType.ALL_TASKS, null, 0, callback);
             }
 
             @Override
@@ -270,22 +896,301 @@ public class TaskRepository implements TasksDataSource{
         });
     }
 
-    private void refreshCache(List<Task> tasks){
-        if (mCachedTasks == null) {
-            mCachedTasks = new LinkedHashMap<>();
+    /**
+     * In stale-while-revalidate mode and if the cache is stale, syncs with the remote data source
+     * and calls {@code callback} again if the tasks accepted by {@code filter}, or their page after
+     * {@code afterTaskId} if {@code pageSize} isn't 0, changed from {@code deliveredTasks}. A
+     * failed sync keeps the delivered tasks.
+     */
+    private void revalidateIfStale(@NonNull final List<Task> deliveredTasks,
+                                   @NonNull final TasksFilterType filter,
+                                   @Nullable final String afterTaskId, final int pageSize,
+                                   @NonNull final LoadTasksCallback callback) {
+        if (!mStaleWhileRevalidate || !isCacheStale()) {
+            return;
+        }
+        mCacheRefreshes.incrementAndGet();
+        getTasksFromRemoteDataSource(new LoadTasksCallback() {
+            @Override
+            public void onTaskLoaded(List<Task> tasks) {
+                List<Task> revalidatedTasks = pageSize == 0
+                        ? TaskPaging.filter(tasks, filter)
+                        : TaskPaging.page(tasks, filter, afterTaskId, pageSize);
+                // A page whose anchor is gone keeps the delivered tasks.
+                if (revalidatedTasks != null
+                        && !Task.sameContent(deliveredTasks, revalidatedTasks)) {
+                    callback.onTaskLoaded(revalidatedTasks);
+                }
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+            }
+        });
+    }
+
+    /**
+     * Loads all the tasks from the local data source into the cache, falling back to the remote
+     * data source. Concurrent calls share one load.
+     * 从本地加载全部数据，并发调用共享一次加载
+     */
+    private void getTasksFromLocalDataSource(@NonNull LoadTasksCallback callback) {
+        final int generation = mCachedTasks.getGeneration();
+        if (!mLocalLoads.add(generation, callback)) {
+            return;
+        }
+        mTaskLocalDataSource.getTasks(new LoadTasksCallback() {
+            @Override
+            public void onTaskLoaded(List<Task> tasks) {
+                refreshCache(tasks, generation);
+                for (LoadTasksCallback waiting : mLocalLoads.remove(generation)) {
+                    waiting.onTaskLoaded(tasks);
+                }
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                for (LoadTasksCallback waiting : mLocalLoads.remove(generation)) {
+                    getTasksFromRemoteDataSource(waiting);
+                }
+            }
+        });
+    }
+
+    /**
+     * Syncs with the remote data source and loads all the tasks. Only the changes since the last
+     * sync are loaded and applied to the cache and the local data source, the first sync is a
+     * full resync. Concurrent calls share one load.
+     * 与远程数据源增量同步后返回全部数据，并发调用共享一次加载
+     */
+    private void getTasksFromRemoteDataSource(@NonNull LoadTasksCallback callback){
+        final int refreshRequest = mRefreshRequests.get();
+        if (!mRemoteLoads.add(refreshRequest, callback)) {
+            return;
         }
-        mCachedTasks.clear();
-        for (Task task: tasks){
-            mCachedTasks.put(task.getId(),task);
+        long syncToken = mSyncToken.get();
+        if (syncToken != TOKEN_NOT_LOADED) {
+            syncWithRemoteDataSource(refreshRequest, syncToken);
+            return;
         }
-        mCacheIsDirty = false;
+        mTaskLocalDataSource.getSyncToken(new GetSyncTokenCallback() {
+            @Override
+            public void onSyncTokenLoaded(long token) {
+                mSyncToken.compareAndSet(TOKEN_NOT_LOADED, token);
+                syncWithRemoteDataSource(refreshRequest, mSyncToken.get());
+            }
+        });
     }
 
-    private void refreshLocalDataSource(List<Task> tasks){
-        mTaskLocalDataSource.deleteAllTasks();
-        for (Task task : tasks) {
-            mTaskLocalDataSource.saveTask(task);
+    private void syncWithRemoteDataSource(final int refreshRequest, long syncToken) {
+        final long startNanos = System.nanoTime();
+        mTasksRemoteDataSource.getChanges(syncToken, new LoadChangesCallback() {
+            @Override
+            public void onChangesLoaded(TaskChanges changes) {
+                List<Task> tasks = null;
+                synchronized (mWriteLock) {
+                    applyChangesInternal(changes);
+                    if (!mSynced || startNanos - mLastSyncNanos > 0) {
+                        mLastSyncNanos = startNanos;
+                        mSynced = true;
+                    }
+                    TasksCache.Snapshot snapshot = mCachedTasks.getSnapshot();
+                    if (snapshot.isComplete()) {
+                        tasks = snapshot.getTasks();
+                    }
+                }
+                markRefreshed(refreshRequest);
+                if (tasks != null) {
+                    for (LoadTasksCallback waiting : mRemoteLoads.remove(refreshRequest)) {
+                        waiting.onTaskLoaded(tasks);
+                    }
+                    return;
+                }
+                // Some tasks aren't cached, the local data source has all of them once the changes
+                // are applied.
+                mTaskLocalDataSource.getTasks(new LoadTasksCallback() {
+                    @Override
+                    public void onTaskLoaded(List<Task> tasks) {
+                        for (LoadTasksCallback waiting : mRemoteLoads.remove(refreshRequest)) {
+                            waiting.onTaskLoaded(tasks);
+                        }
+                    }
+
+                    @Override
+                    public void onDataNotAvailable() {
+                        List<Task> noTasks = Collections.emptyList();
+                        for (LoadTasksCallback waiting : mRemoteLoads.remove(refreshRequest)) {
+                            waiting.onTaskLoaded(noTasks);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                for (LoadTasksCallback waiting : mRemoteLoads.remove(refreshRequest)) {
+                    waiting.onDataNotAvailable();
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies the changes to the cache and the local data source, unless they are older than the
+     * last ones applied. Must be called holding {@link #mWriteLock}.
+     */
+    private void applyChangesInternal(@NonNull TaskChanges changes) {
+        long syncToken = mSyncToken.get();
+        if (syncToken != TOKEN_NOT_LOADED && (changes.getToken() < syncToken
+                || changes.getToken() == syncToken && changes.isEmpty())) {
+            // Stale, or nothing changed: keep the cache snapshot.
+            return;
+        }
+        if (changes.isFullSync()) {
+            mCounters.invalidate();
+        } else {
+            Map<String, Task> batch = new HashMap<>();
+            for (String taskId : changes.getDeletedTaskIds()) {
+                countWrite(taskId, null, null, batch);
+            }
+            for (Task task : changes.getUpdatedTasks()) {
+                countWrite(task.getId(), task, null, batch);
+            }
         }
+        mCachedTasks.applyChanges(changes);
+        mTaskLocalDataSource.applyChanges(changes);
+        mSyncToken.set(changes.getToken());
+    }
+
+    /**
+     * Counts a write of the task with id {@code taskId} in the statistics, before it is applied to
+     * the cache. Must be called holding {@link #mWriteLock}.
+     *
+     * @param newTask the task after the write, or {@code null} if it is deleted
+     * @param completedOn the day the write completes the task on, or {@code null}
+     */
+    private void countWrite(@NonNull String taskId, @Nullable Task newTask,
+                            @Nullable Integer completedOn) {
+        Task oldTask = mCachedTasks.peek(taskId);
+        if (oldTask == null && !mCachedTasks.isComplete()) {
+            // Evicted or never loaded, what changed isn't known.
+            mCounters.invalidate();
+        } else {
+            mCounters.onTaskChanged(oldTask, newTask, completedOn);
+        }
+    }
+
+    /**
+     * Same as {@link #countWrite(String, Task, Integer)} for one write of a batch, counted against
+     * the task as the earlier writes of the batch left it: the cache only changes once the whole
+     * batch is applied, so a task written twice would otherwise be counted as new twice.
+     *
+     * @param batch the tasks written so far in the batch by id, {@code null} for deleted ones
+     */
+    private void countWrite(@NonNull String taskId, @Nullable Task newTask,
+                            @Nullable Integer completedOn, @NonNull Map<String, Task> batch) {
+        if (batch.containsKey(taskId)) {
+            mCounters.onTaskChanged(batch.get(taskId), newTask, completedOn);
+        } else {
+            countWrite(taskId, newTask, completedOn);
+        }
+        batch.put(taskId, newTask);
+    }
+
+    /**
+     * Sets completed on the cached tasks with the given ids in one change. The ids that aren't
+     * cached are removed instead, so a load in flight can't put back their old state. Must be called
+     * holding {@link #mWriteLock}.
+     */
+    private void setCompletedInCache(@NonNull Collection<String> taskIds, boolean completed) {
+        Integer completedOn = completed
+                ? TaskStatistics.epochDay(System.currentTimeMillis()) : null;
+        List<Task> writtenTasks = new ArrayList<>(taskIds.size());
+        List<String> uncachedTaskIds = new ArrayList<>();
+        Map<String, Task> batch = new HashMap<>();
+        for (String taskId : taskIds) {
+            Task cachedTask = mCachedTasks.peek(taskId);
+            if (cachedTask == null) {
+                // Not in a complete cache means the task doesn't exist.
+                if (!mCachedTasks.isComplete()) {
+                    mCounters.invalidate();
+                    uncachedTaskIds.add(taskId);
+                }
+                continue;
+            }
+            Task writtenTask = new Task(cachedTask.getTitle(), cachedTask.getDescription(),
+                    taskId, completed, cachedTask.getVersion());
+            countWrite(taskId, writtenTask, completedOn, batch);
+            writtenTasks.add(writtenTask);
+        }
+        mCachedTasks.applyWrites(writtenTasks, uncachedTaskIds);
+    }
+
+    /**
+     * Replaces the cached tasks with ones loaded from the local data source, unless the cache
+     * changed since {@code generation}: the loaded tasks would miss that change.
+     */
+    private void refreshCache(List<Task> tasks, int generation){
+        synchronized (mWriteLock) {
+            if (mCachedTasks.getGeneration() == generation) {
+                mCachedTasks.replaceAll(tasks);
+            }
+        }
+    }
+
+    /**
+     * The cache is dirty if {@link #refreshTasks()} was called after the last remote load started.
+     * 调用refreshTasks()之后，直到新的远程加载完成前缓存都是脏的
+     */
+    boolean isCacheDirty() {
+        return mCompletedRefreshRequests.get() != mRefreshRequests.get();
+    }
+
+    /**
+     * The cache is stale if it is dirty, was never synced with the remote data source or was
+     * synced longer than the TTL ago.
+     * 缓存是脏的、从未同步过或者超过有效期时，数据过期
+     */
+    boolean isCacheStale() {
+        return isCacheDirty() || !mSynced || System.nanoTime() - mLastSyncNanos > mCacheTtlNanos;
+    }
+
+    private void markRefreshed(int refreshRequest) {
+        while (true) {
+            int completed = mCompletedRefreshRequests.get();
+            if (completed >= refreshRequest
+                    || mCompletedRefreshRequests.compareAndSet(completed, refreshRequest)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Whether a filtered or paged read must wait for the remote data source: the cache is dirty
+     * and stale cached or local tasks can't be answered first.
+     */
+    private boolean mustRefresh() {
+        return isCacheDirty() && !mStaleWhileRevalidate;
+    }
+
+    /**
+     * Returns the cached tasks accepted by {@code filter}, or {@code null} if the cache can't
+     * answer. In stale-while-revalidate mode a dirty cache still answers.
+     */
+    @Nullable
+    private List<Task> getCachedTasks(@NonNull TasksFilterType filter) {
+        if (mustRefresh()) {
+            return null;
+        }
+        TasksCache.Snapshot snapshot = mCachedTasks.getSnapshot();
+        if (snapshot.isComplete()) {
+            return snapshot.getTasks(filter);
+        }
+        FilteredTasks loaded = mLoadedFilteredTasks.get(filter);
+        if (loaded != null && loaded.mGeneration == snapshot.getGeneration()) {
+            return loaded.mTasks;
+        }
+        return null;
     }
 
     /**
@@ -293,12 +1198,32 @@ public class TaskRepository implements TasksDataSource{
      * @param taskId taskId
      * @return task
      */
+    @Nullable
     private Task getTaskWithId(@NonNull String taskId){
         checkNotNull(taskId);
-        if (mCachedTasks == null || mCachedTasks.isEmpty()) {
-            return null;
-        } else {
-            return mCachedTasks.get(taskId);
+        return mCachedTasks.get(taskId);
+    }
+
+    /**
+     * Caches a task loaded since the cache {@code version}, unless that task was written or
+     * deleted meanwhile. Writes of other tasks don't make the load stale.
+     */
+    private void cacheTask(@NonNull Task task, long version) {
+        mCachedTasks.putIfUnchanged(task, version);
+    }
+
+    /**
+     * Filtered tasks together with the cache generation they were loaded at.
+     */
+    static final class FilteredTasks {
+
+        final int mGeneration;
+
+        final List<Task> mTasks;
+
+        FilteredTasks(int generation, List<Task> tasks) {
+            mGeneration = generation;
+            mTasks = tasks;
         }
     }
 
@@ -0,0 +1,246 @@
+package com.example.mrtan.mvptest1.data.source;
+
+import android.support.annotation.NonNull;
+
+import com.example.mrtan.mvptest1.data.Task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory full-text index of task titles and descriptions, ranked like the search of the local
+ * data source.
+ * <p>
+ * Every word of the query matches the words it is a prefix of, and a task must match all the
+ * words. Tasks are ranked by their hits, a hit in the title weighing {@link #TITLE_WEIGHT} times
+ * a hit in the description. The hits of a query word in a column are divided by the number of
+ * tasks it hits in that column, so rarer words weigh more. Equal ranks keep the order of the
+ * indexed tasks. Words and scores are the same as the {@code simple} FTS4 tokenizer and
+ * {@code matchinfo()} give the local data source, so both searches rank alike.
+ * <p>
+ * The index keeps the distinct words sorted, so a query word only visits the words it is a prefix
+ * of instead of scanning every task. It is immutable and thread safe once built.
+ *
+ * 内存中的全文索引：按前缀匹配，标题命中权重更高
+ */
+public final class TaskSearch {
+
+    public static final int TITLE_WEIGHT = 4;
+
+    public static final int DESCRIPTION_WEIGHT = 1;
+
+    private final Task[] mTasks;
+
+    /**
+     * Distinct words of all the tasks, sorted.
+     */
+    private final String[] mWords;
+
+    /**
+     * Hits of each word, in the same order as {@link #mWords}: the index of the task shifted left
+     * by one, with the lowest bit set for a hit in the title.
+     */
+    private final int[][] mHits;
+
+    public TaskSearch(@NonNull Collection<Task> tasks) {
+        mTasks = tasks.toArray(new Task[tasks.size()]);
+
+        Map<String, HitList> hitsByWord = new HashMap<>();
+        for (int i = 0; i < mTasks.length; i++) {
+            addHits(hitsByWord, mTasks[i].getTitle(), i << 1 | 1);
+            addHits(hitsByWord, mTasks[i].getDescription(), i << 1);
+        }
+        mWords = hitsByWord.keySet().toArray(new String[hitsByWord.size()]);
+        Arrays.sort(mWords);
+        mHits = new int[mWords.length][];
+        for (int i = 0; i < mWords.length; i++) {
+            mHits[i] = hitsByWord.get(mWords[i]).toArray();
+        }
+    }
+
+    /**
+     * Splits {@code text} into words the way the {@code simple} FTS4 tokenizer does: words are
+     * runs of ASCII letters and digits and of any non ASCII character, and only ASCII letters are
+     * lower cased. So {@code "買菜，Call"} is the single word {@code "買菜，call"}.
+     * 与SQLite的simple分词器一致：非ASCII字符都属于单词，只转换ASCII字母的大小写
+     */
+    @NonNull
+    public static List<String> tokenize(@NonNull String text) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                word.append((char) (c + ('a' - 'A')));
+            } else if (c >= 0x80 || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /**
+     * @return all the tasks matching {@code query}, best ranked first. A query without words
+     * matches nothing.
+     */
+    @NonNull
+    public List<Task> search(@NonNull String query) {
+        List<String> queryWords = tokenize(query);
+        if (queryWords.isEmpty() || mTasks.length == 0) {
+            return Collections.emptyList();
+        }
+
+        // matched[i] is the number of query words task i matched so far.
+        int[] matched = new int[mTasks.length];
+        float[] scores = new float[mTasks.length];
+        // Per query word: the last word each task was counted for in a column, and its hits.
+        int[] titleCounted = new int[mTasks.length];
+        int[] descriptionCounted = new int[mTasks.length];
+        int[] titleHits = new int[mTasks.length];
+        int[] descriptionHits = new int[mTasks.length];
+        for (int w = 0; w < queryWords.size(); w++) {
+            String queryWord = queryWords.get(w);
+            int from = lowerBound(queryWord);
+            int to = from;
+            while (to < mWords.length && mWords[to].startsWith(queryWord)) {
+                to++;
+            }
+
+            // Like matchinfo(), counts the tasks hit in each column among all the tasks.
+            int matchedTasks = 0;
+            int titleTasks = 0;
+            int descriptionTasks = 0;
+            for (int i = from; i < to; i++) {
+                for (int hit : mHits[i]) {
+                    int task = hit >>> 1;
+                    if ((hit & 1) != 0) {
+                        if (titleCounted[task] != w + 1) {
+                            titleCounted[task] = w + 1;
+                            titleTasks++;
+                        }
+                    } else if (descriptionCounted[task] != w + 1) {
+                        descriptionCounted[task] = w + 1;
+                        descriptionTasks++;
+                    }
+                    if (matched[task] == w) {
+                        matched[task] = w + 1;
+                        matchedTasks++;
+                    }
+                }
+            }
+            if (matchedTasks == 0) {
+                return Collections.emptyList();
+            }
+
+            for (int i = from; i < to; i++) {
+                for (int hit : mHits[i]) {
+                    int task = hit >>> 1;
+                    if (matched[task] == w + 1) {
+                        if ((hit & 1) != 0) {
+                            titleHits[task]++;
+                        } else {
+                            descriptionHits[task]++;
+                        }
+                    }
+                }
+            }
+            // Adds the columns in the order the local search does, so the float sums are equal.
+            for (int i = from; i < to; i++) {
+                for (int hit : mHits[i]) {
+                    int task = hit >>> 1;
+                    if (matched[task] == w + 1
+                            && (titleHits[task] != 0 || descriptionHits[task] != 0)) {
+                        scores[task] += (float) TITLE_WEIGHT * titleHits[task]
+                                / Math.max(1, titleTasks);
+                        scores[task] += (float) DESCRIPTION_WEIGHT * descriptionHits[task]
+                                / Math.max(1, descriptionTasks);
+                        titleHits[task] = 0;
+                        descriptionHits[task] = 0;
+                    }
+                }
+            }
+        }
+
+        int matchCount = 0;
+        long[] ranked = new long[mTasks.length];
+        for (int i = 0; i < mTasks.length; i++) {
+            if (matched[i] == queryWords.size()) {
+                ranked[matchCount++] = rankKey(scores[i], i);
+            }
+        }
+        Arrays.sort(ranked, 0, matchCount);
+        List<Task> results = new ArrayList<>(matchCount);
+        for (int i = 0; i < matchCount; i++) {
+            results.add(mTasks[(int) ranked[i]]);
+        }
+        return results;
+    }
+
+    /**
+     * Packs a score and a position into a key whose natural order is best score first, then
+     * position, so ranking sorts primitives. The position is the low 32 bits of the key.
+     * 将分数和位置打包为一个long，升序即为排名顺序
+     */
+    public static long rankKey(float score, int position) {
+        // The bits of a non negative float order like the float.
+        long inverted = Integer.MAX_VALUE - Float.floatToIntBits(score);
+        return inverted << 32 | position;
+    }
+
+    private int lowerBound(String word) {
+        int low = 0;
+        int high = mWords.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mWords[mid].compareTo(word) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static void addHits(Map<String, HitList> hitsByWord, String text, int hit) {
+        if (text == null) {
+            return;
+        }
+        for (String word : tokenize(text)) {
+            HitList hits = hitsByWord.get(word);
+            if (hits == null) {
+                hits = new HitList();
+                hitsByWord.put(word, hits);
+            }
+            hits.add(hit);
+        }
+    }
+
+    private static final class HitList {
+
+        private int[] mHits = new int[2];
+
+        private int mSize;
+
+        void add(int hit) {
+            if (mSize == mHits.length) {
+                mHits = Arrays.copyOf(mHits, mSize * 2);
+            }
+            mHits[mSize++] = hit;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(mHits, mSize);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.mrtan.mvptest1.data.source;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Counts of the tasks, and of the tasks completed on this device per day. Days are numbered from
+ * the epoch in the local time zone, see {@link #epochDay(long)}.
+ *
+ * 任务统计：总数、未完成数、已完成数和每天完成的数量
+ */
+public final class TaskStatistics {
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final int mTotalCount;
+
+    private final int mCompletedCount;
+
+    private final Map<Integer, Integer> mCompletionsByDay;
+
+    public TaskStatistics(int totalCount, int completedCount,
+                          @NonNull Map<Integer, Integer> completionsByDay) {
+        checkArgument(totalCount >= completedCount && completedCount >= 0);
+        mTotalCount = totalCount;
+        mCompletedCount = completedCount;
+        mCompletionsByDay = Collections.unmodifiableMap(
+                new HashMap<>(checkNotNull(completionsByDay)));
+    }
+
+    public int getTotalCount() {
+        return mTotalCount;
+    }
+
+    public int getActiveCount() {
+        return mTotalCount - mCompletedCount;
+    }
+
+    public int getCompletedCount() {
+        return mCompletedCount;
+    }
+
+    /**
+     * @return how many times a task was completed on {@code day}, even if it was activated again
+     * since
+     */
+    public int getCompletionsOn(int day) {
+        Integer completions = mCompletionsByDay.get(day);
+        return completions != null ? completions : 0;
+    }
+
+    /**
+     * @return the completions by day, for the days with any
+     */
+    @NonNull
+    public Map<Integer, Integer> getCompletionsByDay() {
+        return mCompletionsByDay;
+    }
+
+    /**
+     * @return the day of {@code timeMillis} in the local time zone, counted from the epoch
+     */
+    public static int epochDay(long timeMillis) {
+        long localMillis = timeMillis + TimeZone.getDefault().getOffset(timeMillis);
+        return (int) Math.floor((double) localMillis / DAY_MILLIS);
+    }
+
+    @Override
+    public String toString() {
+        return "TaskStatistics: " + mTotalCount + " tasks, " + mCompletedCount + " completed";
+    }
+}
@@ -0,0 +1,630 @@
+package com.example.mrtan.mvptest1.data.source;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.tasks.TasksFilterType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Memory bounded in-memory cache of tasks, used by {@link TaskRepository}.
+ * <p>
+ * The cache is limited both by number of tasks and by their approximate size in memory. When a
+ * limit is exceeded the least recently used tasks are evicted, in one batch down to 90% of the
+ * limits so that adding tasks to a full cache doesn't pay for an eviction each time.
+ * Iteration order is insertion order, the order the tasks are shown in, not access order.
+ * <p>
+ * The cache is {@link #isComplete() complete} after {@link #replaceAll(Collection)} until
+ * something is evicted. Only a complete cache can answer queries for all tasks.
+ * <p>
+ * Every write of a task stamps it with a new version, kept for a while after the task is removed
+ * or evicted. A task loaded while other tasks are written can still be cached with
+ * {@link #putIfUnchanged(Task, long)}, only a write of that same task makes the load stale.
+ * <p>
+ * This class is thread safe. Writers are serialized, while {@link #get(String)} and
+ * {@link #getSnapshot()} never take a lock: point reads go through a concurrent index and lists
+ * are served from an immutable {@link Snapshot} that is built once per change.
+ *
+ * 有容量和内存上限的任务缓存，超过上限时按LRU批量淘汰。线程安全，读操作不加锁
+ */
+public class TasksCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    public static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    // Rough costs of a cached task on a 32 bit VM: the Task and its map entries, the entry in
+    // the cache, and the three strings with their char arrays.
+    private static final int TASK_OVERHEAD_BYTES = 16 + 2 * 24 + 32;
+
+    private static final int STRING_OVERHEAD_BYTES = 24 + 16;
+
+    /**
+     * Most removed or evicted tasks whose version is remembered. Older ones share
+     * {@link #mVersionFloor}.
+     */
+    private static final int MAX_REMOVED_VERSIONS = 1024;
+
+    private static final Comparator<Entry> LEAST_RECENTLY_USED_FIRST = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            return lhs.mEvictionStamp < rhs.mEvictionStamp ? -1
+                    : (lhs.mEvictionStamp == rhs.mEvictionStamp ? 0 : 1);
+        }
+    };
+
+    /**
+     * Notified after every change of the cached tasks.
+     */
+    public interface OnChangedListener {
+
+        /**
+         * Called on the thread that made the change, holding the cache lock: it must return
+         * quickly and must not change the cache.
+         */
+        void onCacheChanged();
+    }
+
+    private final Object mLock = new Object();
+
+    /**
+     * Insertion ordered entries, guarded by {@link #mLock}.
+     */
+    private final Map<String, Entry> mEntries = new LinkedHashMap<>();
+
+    /**
+     * Same entries as {@link #mEntries}, for lock free point reads.
+     */
+    private final Map<String, Entry> mIndex = new ConcurrentHashMap<>();
+
+    /**
+     * Versions of the last writes of tasks no longer cached, guarded by {@link #mLock}.
+     */
+    private final Map<String, Long> mRemovedVersions =
+            new LinkedHashMap<String, Long>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    if (size() <= MAX_REMOVED_VERSIONS) {
+                        return false;
+                    }
+                    mVersionFloor = Math.max(mVersionFloor, eldest.getValue());
+                    return true;
+                }
+            };
+
+    private final AtomicLong mAccessClock = new AtomicLong();
+
+    private final AtomicLong mHitCount = new AtomicLong();
+
+    private final AtomicLong mMissCount = new AtomicLong();
+
+    private volatile long mEvictionCount;
+
+    private volatile int mMaxEntries;
+
+    private volatile long mMaxBytes;
+
+    private volatile long mSizeBytes;
+
+    private volatile boolean mComplete;
+
+    private volatile int mGeneration;
+
+    /**
+     * Version of the last write, guarded by {@link #mLock} for writes.
+     */
+    private volatile long mVersion;
+
+    /**
+     * Version assumed for the tasks neither cached nor in {@link #mRemovedVersions}, guarded by
+     * {@link #mLock}.
+     */
+    private long mVersionFloor;
+
+    /**
+     * Snapshot of the current content, or {@code null} if it changed since the last one was built.
+     */
+    private volatile Snapshot mSnapshot;
+
+    private volatile OnChangedListener mOnChangedListener;
+
+    public TasksCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    public TasksCache(int maxEntries, long maxBytes) {
+        setLimits(maxEntries, maxBytes);
+    }
+
+    /**
+     * Changes the limits of the cache, evicting tasks if they are now exceeded.
+     */
+    public void setLimits(int maxEntries, long maxBytes) {
+        checkArgument(maxEntries > 0);
+        checkArgument(maxBytes > 0);
+        synchronized (mLock) {
+            mMaxEntries = maxEntries;
+            mMaxBytes = maxBytes;
+            trimToLimits();
+            onChanged();
+        }
+    }
+
+    public void setOnChangedListener(@Nullable OnChangedListener listener) {
+        mOnChangedListener = listener;
+    }
+
+    /**
+     * @return the cached task, or {@code null} on a miss
+     */
+    @Nullable
+    public Task get(@NonNull String taskId) {
+        Entry entry = mIndex.get(taskId);
+        if (entry == null) {
+            mMissCount.incrementAndGet();
+            return null;
+        }
+        mHitCount.incrementAndGet();
+        entry.mLastAccess = mAccessClock.incrementAndGet();
+        return entry.mTask;
+    }
+
+    /**
+     * Same as {@link #get(String)}, without counting a hit or a miss nor touching the task.
+     */
+    @Nullable
+    public Task peek(@NonNull String taskId) {
+        Entry entry = mIndex.get(taskId);
+        return entry != null ? entry.mTask : null;
+    }
+
+    public boolean contains(@NonNull String taskId) {
+        return mIndex.containsKey(taskId);
+    }
+
+    /**
+     * Adds or replaces a task. A replaced task keeps its position.
+     */
+    public void put(@NonNull Task task) {
+        synchronized (mLock) {
+            putInternal(task);
+            trimToLimits();
+            onChanged();
+        }
+    }
+
+    /**
+     * Puts a task loaded since {@code version}, see {@link #getVersion()}, unless it was written or
+     * removed since: the loaded task would be stale.
+     *
+     * @return whether the task was put
+     */
+    public boolean putIfUnchanged(@NonNull Task task, long version) {
+        synchronized (mLock) {
+            if (getVersionInternal(task.getId()) > version) {
+                return false;
+            }
+            putInternal(task);
+            trimToLimits();
+            onChanged();
+            return true;
+        }
+    }
+
+    public void putAll(@NonNull Collection<Task> tasks) {
+        synchronized (mLock) {
+            for (Task task : tasks) {
+                putInternal(task);
+            }
+            trimToLimits();
+            onChanged();
+        }
+    }
+
+    /**
+     * Replaces the content of the cache with all the tasks there are, marking it complete unless
+     * they don't fit.
+     */
+    public void replaceAll(@NonNull Collection<Task> tasks) {
+        synchronized (mLock) {
+            clearInternal();
+            mComplete = true;
+            for (Task task : tasks) {
+                putInternal(task);
+            }
+            trimToLimits();
+            onChanged();
+        }
+    }
+
+    /**
+     * Removes a task, cached or not, so a load of it in flight can't put it back. A complete cache
+     * stays complete.
+     *
+     * @return the removed task, or {@code null} if it wasn't cached
+     */
+    @Nullable
+    public Task remove(@NonNull String taskId) {
+        synchronized (mLock) {
+            Task task = removeInternal(taskId);
+            if (task != null) {
+                onChanged();
+            }
+            return task;
+        }
+    }
+
+    /**
+     * Applies changes from a delta sync. A full sync replaces the content like
+     * {@link #replaceAll(Collection)}, otherwise the updated tasks are put and the deleted ones
+     * removed, and a complete cache stays complete.
+     */
+    public void applyChanges(@NonNull TaskChanges changes) {
+        synchronized (mLock) {
+            if (changes.isFullSync()) {
+                clearInternal();
+                mComplete = true;
+            }
+            for (String taskId : changes.getDeletedTaskIds()) {
+                removeInternal(taskId);
+            }
+            for (Task task : changes.getUpdatedTasks()) {
+                putInternal(task);
+            }
+            trimToLimits();
+            onChanged();
+        }
+    }
+
+    /**
+     * Puts the written tasks and removes the other ones, cached or not, in one change. A complete
+     * cache stays complete.
+     */
+    public void applyWrites(@NonNull Collection<Task> writtenTasks,
+                            @NonNull Collection<String> removedTaskIds) {
+        synchronized (mLock) {
+            for (String taskId : removedTaskIds) {
+                removeInternal(taskId);
+            }
+            for (Task task : writtenTasks) {
+                putInternal(task);
+            }
+            trimToLimits();
+            onChanged();
+        }
+    }
+
+    /**
+     * Removes all the completed tasks.
+     */
+    public void removeCompleted() {
+        synchronized (mLock) {
+            Iterator<Entry> it = mEntries.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.mTask.isCompleted()) {
+                    mIndex.remove(entry.mTask.getId());
+                    mRemovedVersions.put(entry.mTask.getId(), ++mVersion);
+                    mSizeBytes -= entry.mSizeBytes;
+                    it.remove();
+                }
+            }
+            onChanged();
+        }
+    }
+
+    /**
+     * Empties the cache. It is no longer complete.
+     */
+    public void clear() {
+        synchronized (mLock) {
+            clearInternal();
+            onChanged();
+        }
+    }
+
+    /**
+     * Marks the cache as holding every task there is, e.g. after all tasks were deleted.
+     */
+    public void setComplete() {
+        synchronized (mLock) {
+            mComplete = true;
+            onChanged();
+        }
+    }
+
+    public boolean isComplete() {
+        return mComplete;
+    }
+
+    public boolean isEmpty() {
+        return mIndex.isEmpty();
+    }
+
+    /**
+     * @return the version of the last write, to pass to {@link #putIfUnchanged(Task, long)}
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * @return the version of the last write of the task, cached or not. It may be greater than
+     * the actual one for tasks removed long ago.
+     */
+    public long getVersion(@NonNull String taskId) {
+        synchronized (mLock) {
+            return getVersionInternal(taskId);
+        }
+    }
+
+    /**
+     * @return a number that changes every time the content of the cache changes
+     */
+    public int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * @return an immutable view of the current content, shared by all readers until the next
+     * change
+     */
+    @NonNull
+    public Snapshot getSnapshot() {
+        Snapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            synchronized (mLock) {
+                snapshot = mSnapshot;
+                if (snapshot == null) {
+                    List<Task> tasks = new ArrayList<>(mEntries.size());
+                    for (Entry entry : mEntries.values()) {
+                        tasks.add(entry.mTask);
+                    }
+                    snapshot = new Snapshot(mGeneration, mComplete, tasks);
+                    mSnapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return the cached tasks in insertion order, as an immutable list
+     */
+    @NonNull
+    public List<Task> getTasks() {
+        return getSnapshot().getTasks();
+    }
+
+    public int size() {
+        return mIndex.size();
+    }
+
+    public long sizeBytes() {
+        return mSizeBytes;
+    }
+
+    public long hitCount() {
+        return mHitCount.get();
+    }
+
+    public long missCount() {
+        return mMissCount.get();
+    }
+
+    public long evictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * @return the approximate number of bytes {@code task} takes in the cache, or in memory
+     */
+    public static int estimateSizeBytes(@NonNull Task task) {
+        return TASK_OVERHEAD_BYTES
+                + estimateSizeBytes(task.getId())
+                + estimateSizeBytes(task.getTitle())
+                + estimateSizeBytes(task.getDescription());
+    }
+
+    private static int estimateSizeBytes(@Nullable String value) {
+        return value == null ? 0 : STRING_OVERHEAD_BYTES + 2 * value.length();
+    }
+
+    // The methods below must be called holding mLock.
+
+    private long getVersionInternal(String taskId) {
+        Entry entry = mEntries.get(taskId);
+        if (entry != null) {
+            return entry.mVersion;
+        }
+        Long removedVersion = mRemovedVersions.get(taskId);
+        return removedVersion != null ? removedVersion : mVersionFloor;
+    }
+
+    private void putInternal(Task task) {
+        checkNotNull(task);
+        Entry entry = mEntries.get(task.getId());
+        if (entry == null) {
+            entry = new Entry(task);
+            mEntries.put(task.getId(), entry);
+            mIndex.put(task.getId(), entry);
+        } else {
+            mSizeBytes -= entry.mSizeBytes;
+            entry.setTask(task);
+        }
+        mSizeBytes += entry.mSizeBytes;
+        entry.mVersion = ++mVersion;
+        entry.mLastAccess = mAccessClock.incrementAndGet();
+        mRemovedVersions.remove(task.getId());
+    }
+
+    @Nullable
+    private Task removeInternal(String taskId) {
+        // Also versioned if it isn't cached, a load of it in flight is stale.
+        mRemovedVersions.put(taskId, ++mVersion);
+        Entry entry = mEntries.remove(taskId);
+        if (entry == null) {
+            return null;
+        }
+        mIndex.remove(taskId);
+        mSizeBytes -= entry.mSizeBytes;
+        return entry.mTask;
+    }
+
+    private void clearInternal() {
+        mEntries.clear();
+        mIndex.clear();
+        // Any task may have changed.
+        mRemovedVersions.clear();
+        mVersionFloor = ++mVersion;
+        mSizeBytes = 0;
+        mComplete = false;
+    }
+
+    private void trimToLimits() {
+        if (mEntries.size() <= mMaxEntries && mSizeBytes <= mMaxBytes) {
+            return;
+        }
+        int targetEntries = mMaxEntries - mMaxEntries / 10;
+        long targetBytes = mMaxBytes - mMaxBytes / 10;
+
+        // Readers keep updating mLastAccess, sort on a stable copy of it.
+        List<Entry> entries = new ArrayList<>(mEntries.values());
+        for (Entry entry : entries) {
+            entry.mEvictionStamp = entry.mLastAccess;
+        }
+        Collections.sort(entries, LEAST_RECENTLY_USED_FIRST);
+
+        long evicted = 0;
+        for (Entry entry : entries) {
+            if (mEntries.size() <= targetEntries && mSizeBytes <= targetBytes) {
+                break;
+            }
+            mEntries.remove(entry.mTask.getId());
+            mIndex.remove(entry.mTask.getId());
+            // Evicting doesn't change the task, it keeps its version.
+            mRemovedVersions.put(entry.mTask.getId(), entry.mVersion);
+            mSizeBytes -= entry.mSizeBytes;
+            evicted++;
+        }
+        mEvictionCount += evicted;
+        mComplete = false;
+    }
+
+    private void onChanged() {
+        mGeneration++;
+        mSnapshot = null;
+        OnChangedListener listener = mOnChangedListener;
+        if (listener != null) {
+            listener.onCacheChanged();
+        }
+    }
+
+    /**
+     * Immutable view of the cache content. Filtered lists are computed on first use and shared.
+     */
+    public static final class Snapshot {
+
+        private final int mGeneration;
+
+        private final boolean mComplete;
+
+        private final List<Task> mTasks;
+
+        private final AtomicReferenceArray<List<Task>> mFilteredTasks =
+                new AtomicReferenceArray<>(TasksFilterType.values().length);
+
+        private volatile TaskSearch mSearch;
+
+        Snapshot(int generation, boolean complete, List<Task> tasks) {
+            mGeneration = generation;
+            mComplete = complete;
+            mTasks = Collections.unmodifiableList(tasks);
+        }
+
+        public int getGeneration() {
+            return mGeneration;
+        }
+
+        public boolean isComplete() {
+            return mComplete;
+        }
+
+        @NonNull
+        public List<Task> getTasks() {
+            return mTasks;
+        }
+
+        /**
+         * @return the tasks accepted by {@code filter}, as an immutable list
+         */
+        @NonNull
+        public List<Task> getTasks(@NonNull TasksFilterType filter) {
+            if (filter == TasksFilterType.ALL_TASKS) {
+                return mTasks;
+            }
+            List<Task> filteredTasks = mFilteredTasks.get(filter.ordinal());
+            if (filteredTasks == null) {
+                // Racing readers may both compute it, they get equal lists.
+                filteredTasks = Collections.unmodifiableList(TaskPaging.filter(mTasks, filter));
+                mFilteredTasks.set(filter.ordinal(), filteredTasks);
+            }
+            return filteredTasks;
+        }
+
+        /**
+         * @return the tasks matching {@code query}, best ranked first. The search index is built
+         * on first use and shared.
+         */
+        @NonNull
+        public List<Task> search(@NonNull String query) {
+            TaskSearch search = mSearch;
+            if (search == null) {
+                // Racing readers may both build it, they get equal indexes.
+                search = new TaskSearch(mTasks);
+                mSearch = search;
+            }
+            return search.search(query);
+        }
+    }
+
+    private static final class Entry {
+
+        private volatile Task mTask;
+
+        private int mSizeBytes;
+
+        /**
+         * Version of the last write of the task, guarded by {@link #mLock}.
+         */
+        private long mVersion;
+
+        private volatile long mLastAccess;
+
+        private long mEvictionStamp;
+
+        Entry(Task task) {
+            setTask(task);
+        }
+
+        void setTask(Task task) {
+            mTask = task;
+            mSizeBytes = estimateSizeBytes(task);
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.example.mrtan.mvptest1.data.source;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.tasks.TasksFilterType;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -11,8 +14,9 @@ import java.util.List;
  * <p>
  * For simplicity, only getTasks() and getTask() has callback. Consider adding callbacks to other
  * methods to inform the user of network/databases error or successful operations.
- * For example, when a new task is created, it's synchronously stored in cache but usually every
- * operation on database or network should be executed in a different thread.
+ * For example, when a new task is created, it's synchronously stored in cache while the database
+ * and network work is executed on the {@link com.example.mrtan.mvptest1.util.AppExecutors} pools.
+ * Callbacks are always delivered on the main thread.
  */
 public interface TasksDataSource {
 
@@ -29,12 +33,78 @@ public interface TasksDataSource {
         void onDataNotAvailable();
     }
 
+    interface LoadChangesCallback {
+
+        void onChangesLoaded(TaskChanges changes);
+
+        void onDataNotAvailable();
+    }
+
+    interface GetSyncTokenCallback {
+
+        void onSyncTokenLoaded(long token);
+    }
+
+    interface GetStatisticsCallback {
+
+        void onStatisticsLoaded(TaskStatistics statistics);
+
+        void onDataNotAvailable();
+    }
+
     void getTasks(@NonNull LoadTasksCallback callback);
 
+    /**
+     * Loads the tasks accepted by {@code filter}, in the same order as
+     * {@link #getTasks(LoadTasksCallback)}.
+     * <p>
+     * {@link LoadTasksCallback#onDataNotAvailable()} is only fired if the data source has no
+     * tasks at all, a filter that matches nothing loads an empty list.
+     *
+     * 按过滤条件加载，由数据源完成过滤
+     */
+    void getTasks(@NonNull TasksFilterType filter, @NonNull LoadTasksCallback callback);
+
+    /**
+     * Loads one page of the tasks accepted by {@code filter} using keyset pagination, in the same
+     * order as {@link #getTasks(LoadTasksCallback)}.
+     * <p>
+     * Pass {@code null} as {@code afterTaskId} for the first page, then the id of the last task
+     * of the previous page. A page shorter than {@code pageSize} is the last one.
+     * {@link LoadTasksCallback#onDataNotAvailable()} is fired for the first page if the data
+     * source has no tasks at all, and for a later page if the task {@code afterTaskId} was deleted
+     * meanwhile: the caller should start again from the first page.
+     *
+     * 基于游标(上一页最后一个task的id)的分页加载
+     */
+    void getTasks(@NonNull TasksFilterType filter, @Nullable String afterTaskId, int pageSize,
+                  @NonNull LoadTasksCallback callback);
+
     void getTask(@NonNull String taskId, @NonNull GetTaskCallback callback);
 
+    /**
+     * Loads one page of the tasks whose title or description match {@code query}, best ranked
+     * first. Every word of the query matches the words it is a prefix of, and a task must match
+     * all of them, see {@link TaskSearch}.
+     * <p>
+     * Pages follow {@link #getTasks(TasksFilterType, String, int, LoadTasksCallback)}: pass
+     * {@code null} as {@code afterTaskId} for the first page, which runs the search, then the id of
+     * the last task of the previous page. A query without matches loads an empty list.
+     * {@link LoadTasksCallback#onDataNotAvailable()} is fired for a later page if the task
+     * {@code afterTaskId} no longer matches, or was deleted: search again from the first page.
+     *
+     * 全文搜索标题和描述，按相关度排序并分页
+     */
+    void searchTasks(@NonNull String query, @Nullable String afterTaskId, int pageSize,
+                     @NonNull LoadTasksCallback callback);
+
     void saveTask(@NonNull Task task);
 
+    /**
+     * Inserts or updates all the given tasks in a single batch.
+     */
+    void saveTasks(@NonNull List<Task> tasks);
+
     void completeTask(@NonNull Task task);
 
     void completeTask(@NonNull String taskId);
@@ -43,11 +113,70 @@ public interface TasksDataSource {
 
     void activateTask(@NonNull String taskId);
 
+    /**
+     * Completes all the tasks with the given ids at once. Unknown ids are ignored.
+     *
+     * 批量完成任务
+     */
+    void completeTasks(@NonNull Collection<String> taskIds);
+
+    /**
+     * Activates all the tasks with the given ids at once. Unknown ids are ignored.
+     *
+     * 批量激活任务
+     */
+    void activateTasks(@NonNull Collection<String> taskIds);
+
     void clearCompletedTasks();
 
     void refreshTasks();
 
     void deleteTask(@NonNull String taskId);
 
+    /**
+     * Deletes all the tasks with the given ids at once. Unknown ids are ignored.
+     *
+     * 批量删除任务
+     */
+    void deleteTasks(@NonNull Collection<String> taskIds);
+
     void deleteAllTasks();
+
+    /**
+     * Loads the changes made after {@code sinceToken}. Pass {@link TaskChanges#NO_TOKEN}, or a
+     * token the data source doesn't know, to get a full resync.
+     *
+     * 获取同步令牌之后的增量修改
+     */
+    void getChanges(long sinceToken, @NonNull LoadChangesCallback callback);
+
+    /**
+     * Applies changes loaded with {@link #getChanges(long, LoadChangesCallback)} and stores their
+     * token, all at once.
+     *
+     * 应用增量修改并保存同步令牌
+     */
+    void applyChanges(@NonNull TaskChanges changes);
+
+    /**
+     * Loads the token of the last changes applied with {@link #applyChanges(TaskChanges)}, or
+     * {@link TaskChanges#NO_TOKEN} if there are none.
+     */
+    void getSyncToken(@NonNull GetSyncTokenCallback callback);
+
+    /**
+     * Loads the counts of the tasks and the completions made on this device by day.
+     *
+     * 加载任务统计
+     */
+    void getStatistics(@NonNull GetStatisticsCallback callback);
+
+    /**
+     * Loads the first tasks as saved the last time they changed, to show them on a cold start
+     * while {@link #getTasks(LoadTasksCallback)} loads all of them. They may be out of date, and
+     * {@link LoadTasksCallback#onDataNotAvailable()} is called if there are none.
+     *
+     * 加载上次保存的首屏任务快照，用于冷启动时立即显示
+     */
+    void getTasksSnapshot(@NonNull LoadTasksCallback callback);
 }
@@ -0,0 +1,65 @@
+package com.example.mrtan.mvptest1.data.source.diagnostics;
+
+import android.support.annotation.NonNull;
+
+import com.example.mrtan.mvptest1.BuildConfig;
+import com.example.mrtan.mvptest1.data.source.TasksDataSource;
+import com.example.mrtan.mvptest1.data.source.metrics.MeteredTasksDataSource;
+import com.example.mrtan.mvptest1.data.source.metrics.MetricsRegistry;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Stacks the diagnostic decorators around the data sources given to the
+ * {@link com.example.mrtan.mvptest1.data.source.TaskRepository} in the {@code profile} flavor,
+ * where {@link BuildConfig#INSTRUMENT_DATA_SOURCES} is set. Other flavors get the data sources
+ * as is.
+ * <p>
+ * From the outside in: {@link MeteredTasksDataSource} records in
+ * {@link MetricsRegistry#getInstance()}, {@link TracingTasksDataSource} adds systrace sections,
+ * {@link SlowCallTasksDataSource} logs slow calls and loads, and for the local data source
+ * {@link MainThreadIoTasksDataSource} flags its I/O on the main thread, fatally in debug builds.
+ *
+ * 在profile渠道中为数据源叠加诊断用的装饰器
+ */
+public final class InstrumentedDataSources {
+
+    /**
+     * Half a frame: calls are made on the main thread and should only hand off work.
+     */
+    private static final long SLOW_CALL_MILLIS = 8;
+
+    private static final long SLOW_LOCAL_LOAD_MILLIS = 100;
+
+    private static final long SLOW_REMOTE_LOAD_MILLIS = 1000;
+
+    private InstrumentedDataSources() {
+    }
+
+    @NonNull
+    public static TasksDataSource local(@NonNull TasksDataSource taskLocalDataSource) {
+        checkNotNull(taskLocalDataSource);
+        if (!BuildConfig.INSTRUMENT_DATA_SOURCES) {
+            return taskLocalDataSource;
+        }
+        return instrument(new MainThreadIoTasksDataSource(taskLocalDataSource, BuildConfig.DEBUG),
+                "local", SLOW_LOCAL_LOAD_MILLIS);
+    }
+
+    @NonNull
+    public static TasksDataSource remote(@NonNull TasksDataSource tasksRemoteDataSource) {
+        checkNotNull(tasksRemoteDataSource);
+        if (!BuildConfig.INSTRUMENT_DATA_SOURCES) {
+            return tasksRemoteDataSource;
+        }
+        return instrument(tasksRemoteDataSource, "remote", SLOW_REMOTE_LOAD_MILLIS);
+    }
+
+    private static TasksDataSource instrument(TasksDataSource dataSource, String name,
+                                              long loadThresholdMillis) {
+        TasksDataSource slowCalls = new SlowCallTasksDataSource(dataSource, name,
+                SLOW_CALL_MILLIS, loadThresholdMillis, SlowCallTasksDataSource.LOG);
+        TasksDataSource tracing = new TracingTasksDataSource(slowCalls, name);
+        return new MeteredTasksDataSource(tracing, name, MetricsRegistry.getInstance());
+    }
+}
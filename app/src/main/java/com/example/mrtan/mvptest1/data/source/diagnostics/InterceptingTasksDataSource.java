@@ -0,0 +1,377 @@
+package com.example.mrtan.mvptest1.data.source.diagnostics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.data.source.ForwardingTasksDataSource;
+import com.example.mrtan.mvptest1.data.source.TaskChanges;
+import com.example.mrtan.mvptest1.data.source.TaskStatistics;
+import com.example.mrtan.mvptest1.data.source.TasksDataSource;
+import com.example.mrtan.mvptest1.tasks.TasksFilterType;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A data source that runs every call to its delegate, and every callback of a load, through two
+ * hooks, so a diagnostic decorator only implements those instead of every method.
+ * <p>
+ * Calls are named after the method, loads of filtered tasks and of a page being
+ * {@code getFilteredTasks} and {@code getTasksPage}. Meant for debug and profiling builds: every
+ * call allocates.
+ *
+ * 拦截所有调用和回调的数据源，诊断用的装饰器只需实现两个钩子
+ */
+public abstract class InterceptingTasksDataSource extends ForwardingTasksDataSource {
+
+    protected InterceptingTasksDataSource(@NonNull TasksDataSource delegate) {
+        super(delegate);
+    }
+
+    /**
+     * Runs {@code call}, the call of {@code method} on the delegate.
+     */
+    protected abstract void interceptCall(@NonNull String method, @NonNull Runnable call);
+
+    /**
+     * Runs {@code callback}, the result of a load by {@code method} started at
+     * {@code startNanos}, a value of {@link System#nanoTime()}.
+     */
+    protected abstract void interceptCallback(@NonNull String method, long startNanos,
+                                              @NonNull Runnable callback);
+
+    @Override
+    public void getTasks(@NonNull final LoadTasksCallback callback) {
+        interceptCall("getTasks", new Runnable() {
+            @Override
+            public void run() {
+                delegate().getTasks(intercept("getTasks", callback));
+            }
+        });
+    }
+
+    @Override
+    public void getTasks(@NonNull final TasksFilterType filter,
+                         @NonNull final LoadTasksCallback callback) {
+        interceptCall("getFilteredTasks", new Runnable() {
+            @Override
+            public void run() {
+                delegate().getTasks(filter, intercept("getFilteredTasks", callback));
+            }
+        });
+    }
+
+    @Override
+    public void getTasks(@NonNull final TasksFilterType filter, @Nullable final String afterTaskId,
+                         final int pageSize, @NonNull final LoadTasksCallback callback) {
+        interceptCall("getTasksPage", new Runnable() {
+            @Override
+            public void run() {
+                delegate().getTasks(filter, afterTaskId, pageSize,
+                        intercept("getTasksPage", callback));
+            }
+        });
+    }
+
+    @Override
+    public void getTask(@NonNull final String taskId, @NonNull final GetTaskCallback callback) {
+        final long start = System.nanoTime();
+        interceptCall("getTask", new Runnable() {
+            @Override
+            public void run() {
+                delegate().getTask(taskId, new GetTaskCallback() {
+                    @Override
+                    public void onTaskLoaded(final Task task) {
+                        interceptCallback("getTask", start, new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onTaskLoaded(task);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onDataNotAvailable() {
+                        interceptCallback("getTask", start, new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onDataNotAvailable();
+                            }
+                        });
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void searchTasks(@NonNull final String query, @Nullable final String afterTaskId,
+                            final int pageSize, @NonNull final LoadTasksCallback callback) {
+        interceptCall("searchTasks", new Runnable() {
+            @Override
+            public void run() {
+                delegate().searchTasks(query, afterTaskId, pageSize,
+                        intercept("searchTasks", callback));
+            }
+        });
+    }
+
+    @Override
+    public void saveTask(@NonNull final Task task) {
+        interceptCall("saveTask", new Runnable() {
+            @Override
+            public void run() {
+                delegate().saveTask(task);
+            }
+        });
+    }
+
+    @Override
+    public void saveTasks(@NonNull final List<Task> tasks) {
+        interceptCall("saveTasks", new Runnable() {
+            @Override
+            public void run() {
+                delegate().saveTasks(tasks);
+            }
+        });
+    }
+
+    @Override
+    public void completeTask(@NonNull final Task task) {
+        interceptCall("completeTask", new Runnable() {
+            @Override
+            public void run() {
+                delegate().completeTask(task);
+            }
+        });
+    }
+
+    @Override
+    public void completeTask(@NonNull final String taskId) {
+        interceptCall("completeTask", new Runnable() {
+            @Override
+            public void run() {
+                delegate().completeTask(taskId);
+            }
+        });
+    }
+
+    @Override
+    public void activateTask(@NonNull final Task task) {
+        interceptCall("activateTask", new Runnable() {
+            @Override
+            public void run() {
+                delegate().activateTask(task);
+            }
+        });
+    }
+
+    @Override
+    public void activateTask(@NonNull final String taskId) {
+        interceptCall("activateTask", new Runnable() {
+            @Override
+            public void run() {
+                delegate().activateTask(taskId);
+            }
+        });
+    }
+
+    @Override
+    public void completeTasks(@NonNull final Collection<String> taskIds) {
+        interceptCall("completeTasks", new Runnable() {
+            @Override
+            public void run() {
+                delegate().completeTasks(taskIds);
+            }
+        });
+    }
+
+    @Override
+    public void activateTasks(@NonNull final Collection<String> taskIds) {
+        interceptCall("activateTasks", new Runnable() {
+            @Override
+            public void run() {
+                delegate().activateTasks(taskIds);
+            }
+        });
+    }
+
+    @Override
+    public void clearCompletedTasks() {
+        interceptCall("clearCompletedTasks", new Runnable() {
+            @Override
+            public void run() {
+                delegate().clearCompletedTasks();
+            }
+        });
+    }
+
+    @Override
+    public void refreshTasks() {
+        interceptCall("refreshTasks", new Runnable() {
+            @Override
+            public void run() {
+                delegate().refreshTasks();
+            }
+        });
+    }
+
+    @Override
+    public void deleteTask(@NonNull final String taskId) {
+        interceptCall("deleteTask", new Runnable() {
+            @Override
+            public void run() {
+                delegate().deleteTask(taskId);
+            }
+        });
+    }
+
+    @Override
+    public void deleteTasks(@NonNull final Collection<String> taskIds) {
+        interceptCall("deleteTasks", new Runnable() {
+            @Override
+            public void run() {
+                delegate().deleteTasks(taskIds);
+            }
+        });
+    }
+
+    @Override
+    public void deleteAllTasks() {
+        interceptCall("deleteAllTasks", new Runnable() {
+            @Override
+            public void run() {
+                delegate().deleteAllTasks();
+            }
+        });
+    }
+
+    @Override
+    public void getChanges(final long sinceToken, @NonNull final LoadChangesCallback callback) {
+        final long start = System.nanoTime();
+        interceptCall("getChanges", new Runnable() {
+            @Override
+            public void run() {
+                delegate().getChanges(sinceToken, new LoadChangesCallback() {
+                    @Override
+                    public void onChangesLoaded(final TaskChanges changes) {
+                        interceptCallback("getChanges", start, new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onChangesLoaded(changes);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onDataNotAvailable() {
+                        interceptCallback("getChanges", start, new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onDataNotAvailable();
+                            }
+                        });
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void applyChanges(@NonNull final TaskChanges changes) {
+        interceptCall("applyChanges", new Runnable() {
+            @Override
+            public void run() {
+                delegate().applyChanges(changes);
+            }
+        });
+    }
+
+    @Override
+    public void getSyncToken(@NonNull final GetSyncTokenCallback callback) {
+        final long start = System.nanoTime();
+        interceptCall("getSyncToken", new Runnable() {
+            @Override
+            public void run() {
+                delegate().getSyncToken(new GetSyncTokenCallback() {
+                    @Override
+                    public void onSyncTokenLoaded(final long token) {
+                        interceptCallback("getSyncToken", start, new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onSyncTokenLoaded(token);
+                            }
+                        });
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void getStatistics(@NonNull final GetStatisticsCallback callback) {
+        final long start = System.nanoTime();
+        interceptCall("getStatistics", new Runnable() {
+            @Override
+            public void run() {
+                delegate().getStatistics(new GetStatisticsCallback() {
+                    @Override
+                    public void onStatisticsLoaded(final TaskStatistics statistics) {
+                        interceptCallback("getStatistics", start, new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onStatisticsLoaded(statistics);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onDataNotAvailable() {
+                        interceptCallback("getStatistics", start, new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onDataNotAvailable();
+                            }
+                        });
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void getTasksSnapshot(@NonNull final LoadTasksCallback callback) {
+        interceptCall("getTasksSnapshot", new Runnable() {
+            @Override
+            public void run() {
+                delegate().getTasksSnapshot(intercept("getTasksSnapshot", callback));
+            }
+        });
+    }
+
+    private LoadTasksCallback intercept(final String method, final LoadTasksCallback callback) {
+        final long start = System.nanoTime();
+        return new LoadTasksCallback() {
+            @Override
+            public void onTaskLoaded(final List<Task> tasks) {
+                interceptCallback(method, start, new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onTaskLoaded(tasks);
+                    }
+                });
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                interceptCallback(method, start, new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onDataNotAvailable();
+                    }
+                });
+            }
+        };
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.mrtan.mvptest1.data.source.diagnostics;
+
+import android.os.Looper;
+import android.os.StrictMode;
+import android.support.annotation.NonNull;
+
+import com.example.mrtan.mvptest1.data.source.TasksDataSource;
+
+/**
+ * Flags any disk or network I/O a data source does on the main thread, such as opening the
+ * database or a query that bypasses the executors.
+ * <p>
+ * Calls made on the main looper run under a {@link StrictMode} thread policy detecting disk
+ * reads, disk writes and network, so each violation is logged with its stack and, if fatal,
+ * crashes the app. Calls on other threads, and the I/O the data source hands off to its
+ * executors, run as is.
+ *
+ * 检测数据源在主线程上的磁盘和网络读写
+ */
+public class MainThreadIoTasksDataSource extends InterceptingTasksDataSource {
+
+    private final boolean mFatal;
+
+    /**
+     * @param fatal whether a violation crashes the app instead of only being logged
+     */
+    public MainThreadIoTasksDataSource(@NonNull TasksDataSource delegate, boolean fatal) {
+        super(delegate);
+        mFatal = fatal;
+    }
+
+    @Override
+    protected void interceptCall(@NonNull String method, @NonNull Runnable call) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            call.run();
+            return;
+        }
+        StrictMode.ThreadPolicy oldPolicy = StrictMode.getThreadPolicy();
+        StrictMode.ThreadPolicy.Builder policy = new StrictMode.ThreadPolicy.Builder(oldPolicy)
+                .detectDiskReads()
+                .detectDiskWrites()
+                .detectNetwork()
+                .penaltyLog();
+        if (mFatal) {
+            policy.penaltyDeath();
+        }
+        StrictMode.setThreadPolicy(policy.build());
+        try {
+            call.run();
+        } finally {
+            StrictMode.setThreadPolicy(oldPolicy);
+        }
+    }
+
+    @Override
+    protected void interceptCallback(@NonNull String method, long startNanos,
+                                     @NonNull Runnable callback) {
+        // Callbacks run the caller's code, not the data source's.
+        callback.run();
+    }
+}
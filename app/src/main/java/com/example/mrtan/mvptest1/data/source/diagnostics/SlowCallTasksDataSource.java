@@ -0,0 +1,99 @@
+package com.example.mrtan.mvptest1.data.source.diagnostics;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.example.mrtan.mvptest1.data.source.TasksDataSource;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reports the calls to a data source that block their thread longer than a threshold, and the
+ * loads that take longer than another one to call back.
+ * <p>
+ * A blocking call is reported with the stack of its caller. By default reports are logged with
+ * the {@code SlowTasksCall} tag, so slow paths show up in QA logs.
+ *
+ * 检测阻塞调用线程或回调过慢的数据源调用
+ */
+public class SlowCallTasksDataSource extends InterceptingTasksDataSource {
+
+    public interface Listener {
+
+        /**
+         * A call of {@code call}, {@code <name>.<method>}, blocked {@code thread} for
+         * {@code millis}. {@code stack} is the stack of the caller.
+         */
+        void onSlowCall(@NonNull String call, long millis, @NonNull Thread thread,
+                        @NonNull Throwable stack);
+
+        /**
+         * A load by {@code call} took {@code millis} to call back.
+         */
+        void onSlowLoad(@NonNull String call, long millis);
+    }
+
+    private static final String TAG = "SlowTasksCall";
+
+    public static final Listener LOG = new Listener() {
+        @Override
+        public void onSlowCall(@NonNull String call, long millis, @NonNull Thread thread,
+                               @NonNull Throwable stack) {
+            Log.w(TAG, call + " blocked " + thread.getName() + " for " + millis + " ms", stack);
+        }
+
+        @Override
+        public void onSlowLoad(@NonNull String call, long millis) {
+            Log.w(TAG, call + " called back after " + millis + " ms");
+        }
+    };
+
+    private final String mName;
+
+    private final long mCallThresholdNanos;
+
+    private final long mLoadThresholdNanos;
+
+    private final Listener mListener;
+
+    /**
+     * @param name prefix of the calls reported, e.g. {@code local} or {@code remote}
+     * @param callThresholdMillis how long a call may block its thread
+     * @param loadThresholdMillis how long a load may take to call back
+     */
+    public SlowCallTasksDataSource(@NonNull TasksDataSource delegate, @NonNull String name,
+                                   long callThresholdMillis, long loadThresholdMillis,
+                                   @NonNull Listener listener) {
+        super(delegate);
+        checkArgument(callThresholdMillis >= 0);
+        checkArgument(loadThresholdMillis >= 0);
+        mName = checkNotNull(name);
+        mCallThresholdNanos = TimeUnit.MILLISECONDS.toNanos(callThresholdMillis);
+        mLoadThresholdNanos = TimeUnit.MILLISECONDS.toNanos(loadThresholdMillis);
+        mListener = checkNotNull(listener);
+    }
+
+    @Override
+    protected void interceptCall(@NonNull String method, @NonNull Runnable call) {
+        long start = System.nanoTime();
+        call.run();
+        long elapsed = System.nanoTime() - start;
+        if (elapsed > mCallThresholdNanos) {
+            mListener.onSlowCall(mName + "." + method, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                    Thread.currentThread(), new Throwable("Caller of " + mName + "." + method));
+        }
+    }
+
+    @Override
+    protected void interceptCallback(@NonNull String method, long startNanos,
+                                     @NonNull Runnable callback) {
+        long elapsed = System.nanoTime() - startNanos;
+        if (elapsed > mLoadThresholdNanos) {
+            mListener.onSlowLoad(mName + "." + method, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+        callback.run();
+    }
+}
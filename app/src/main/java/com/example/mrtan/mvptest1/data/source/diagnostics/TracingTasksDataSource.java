@@ -0,0 +1,49 @@
+package com.example.mrtan.mvptest1.data.source.diagnostics;
+
+import android.support.annotation.NonNull;
+import android.support.v4.os.TraceCompat;
+
+import com.example.mrtan.mvptest1.data.source.TasksDataSource;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Wraps every call to a data source in a systrace section named {@code <name>.<method>}, and
+ * every callback of a load in a {@code <name>.<method>.callback} section, so they show up in
+ * systrace and Android Studio's CPU profiler next to the frames they delay.
+ *
+ * 在systrace中为数据源的每个调用和回调添加区段
+ */
+public class TracingTasksDataSource extends InterceptingTasksDataSource {
+
+    private final String mName;
+
+    /**
+     * @param name prefix of the sections, e.g. {@code local} or {@code remote}
+     */
+    public TracingTasksDataSource(@NonNull TasksDataSource delegate, @NonNull String name) {
+        super(delegate);
+        mName = checkNotNull(name);
+    }
+
+    @Override
+    protected void interceptCall(@NonNull String method, @NonNull Runnable call) {
+        TraceCompat.beginSection(mName + "." + method);
+        try {
+            call.run();
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    @Override
+    protected void interceptCallback(@NonNull String method, long startNanos,
+                                     @NonNull Runnable callback) {
+        TraceCompat.beginSection(mName + "." + method + ".callback");
+        try {
+            callback.run();
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+}
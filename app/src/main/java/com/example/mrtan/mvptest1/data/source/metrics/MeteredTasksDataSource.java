@@ -0,0 +1,333 @@
+package com.example.mrtan.mvptest1.data.source.metrics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.data.source.ForwardingTasksDataSource;
+import com.example.mrtan.mvptest1.data.source.TaskChanges;
+import com.example.mrtan.mvptest1.data.source.TaskStatistics;
+import com.example.mrtan.mvptest1.data.source.TasksCache;
+import com.example.mrtan.mvptest1.data.source.TasksDataSource;
+import com.example.mrtan.mvptest1.tasks.TasksFilterType;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Records the latency of every call to a data source in a {@link MetricsRegistry}, as
+ * {@code <name>.<method>}, e.g. {@code local.getTasks}.
+ * <p>
+ * The latency of a load runs from the call to its callback, so it includes the time spent
+ * waiting for the executor. Loads also count the tasks they materialize and their approximate
+ * size in {@code <name>.<method>.rows} and {@code <name>.<method>.bytes}, and the loads without
+ * data in {@code <name>.<method>.notAvailable}. Writes are asynchronous in most data sources,
+ * their latency is the time the caller is blocked.
+ *
+ * 记录数据源每个调用的延迟、加载的行数和字节数
+ */
+public class MeteredTasksDataSource extends ForwardingTasksDataSource {
+
+    private final String mName;
+
+    private final MetricsRegistry mRegistry;
+
+    private final ConcurrentMap<String, Operation> mOperations = new ConcurrentHashMap<>();
+
+    /**
+     * @param name prefix of the metrics, e.g. {@code local} or {@code remote}
+     */
+    public MeteredTasksDataSource(@NonNull TasksDataSource delegate, @NonNull String name,
+                                  @NonNull MetricsRegistry registry) {
+        super(delegate);
+        mName = checkNotNull(name);
+        mRegistry = checkNotNull(registry);
+    }
+
+    @Override
+    public void getTasks(@NonNull LoadTasksCallback callback) {
+        delegate().getTasks(new MeteredLoadTasksCallback(operation("getTasks"), callback));
+    }
+
+    @Override
+    public void getTasks(@NonNull TasksFilterType filter, @NonNull LoadTasksCallback callback) {
+        delegate().getTasks(filter,
+                new MeteredLoadTasksCallback(operation("getFilteredTasks"), callback));
+    }
+
+    @Override
+    public void getTasks(@NonNull TasksFilterType filter, @Nullable String afterTaskId,
+                         int pageSize, @NonNull LoadTasksCallback callback) {
+        delegate().getTasks(filter, afterTaskId, pageSize,
+                new MeteredLoadTasksCallback(operation("getTasksPage"), callback));
+    }
+
+    @Override
+    public void getTask(@NonNull String taskId, @NonNull GetTaskCallback callback) {
+        delegate().getTask(taskId, new MeteredGetTaskCallback(operation("getTask"), callback));
+    }
+
+    @Override
+    public void searchTasks(@NonNull String query, @Nullable String afterTaskId, int pageSize,
+                            @NonNull LoadTasksCallback callback) {
+        delegate().searchTasks(query, afterTaskId, pageSize,
+                new MeteredLoadTasksCallback(operation("searchTasks"), callback));
+    }
+
+    @Override
+    public void saveTask(@NonNull Task task) {
+        long start = System.nanoTime();
+        delegate().saveTask(task);
+        operation("saveTask").mLatency.recordSince(start);
+    }
+
+    @Override
+    public void saveTasks(@NonNull List<Task> tasks) {
+        long start = System.nanoTime();
+        delegate().saveTasks(tasks);
+        operation("saveTasks").mLatency.recordSince(start);
+    }
+
+    @Override
+    public void completeTask(@NonNull Task task) {
+        long start = System.nanoTime();
+        delegate().completeTask(task);
+        operation("completeTask").mLatency.recordSince(start);
+    }
+
+    @Override
+    public void completeTask(@NonNull String taskId) {
+        long start = System.nanoTime();
+        delegate().completeTask(taskId);
+        operation("completeTask").mLatency.recordSince(start);
+    }
+
+    @Override
+    public void activateTask(@NonNull Task task) {
+        long start = System.nanoTime();
+        delegate().activateTask(task);
+        operation("activateTask").mLatency.recordSince(start);
+    }
+
+    @Override
+    public void activateTask(@NonNull String taskId) {
+        long start = System.nanoTime();
+        delegate().activateTask(taskId);
+        operation("activateTask").mLatency.recordSince(start);
+    }
+
+    @Override
+    public void completeTasks(@NonNull Collection<String> taskIds) {
+        long start = System.nanoTime();
+        delegate().completeTasks(taskIds);
+        operation("completeTasks").mLatency.recordSince(start);
+    }
+
+    @Override
+    public void activateTasks(@NonNull Collection<String> taskIds) {
+        long start = System.nanoTime();
+        delegate().activateTasks(taskIds);
+        operation("activateTasks").mLatency.recordSince(start);
+    }
+
+    @Override
+    public void clearCompletedTasks() {
+        long start = System.nanoTime();
+        delegate().clearCompletedTasks();
+        operation("clearCompletedTasks").mLatency.recordSince(start);
+    }
+
+    @Override
+    public void deleteTask(@NonNull String taskId) {
+        long start = System.nanoTime();
+        delegate().deleteTask(taskId);
+        operation("deleteTask").mLatency.recordSince(start);
+    }
+
+    @Override
+    public void deleteTasks(@NonNull Collection<String> taskIds) {
+        long start = System.nanoTime();
+        delegate().deleteTasks(taskIds);
+        operation("deleteTasks").mLatency.recordSince(start);
+    }
+
+    @Override
+    public void deleteAllTasks() {
+        long start = System.nanoTime();
+        delegate().deleteAllTasks();
+        operation("deleteAllTasks").mLatency.recordSince(start);
+    }
+
+    @Override
+    public void getChanges(long sinceToken, @NonNull final LoadChangesCallback callback) {
+        final Operation operation = operation("getChanges");
+        final long start = System.nanoTime();
+        delegate().getChanges(sinceToken, new LoadChangesCallback() {
+            @Override
+            public void onChangesLoaded(TaskChanges changes) {
+                operation.mLatency.recordSince(start);
+                operation.countTasks(changes.getUpdatedTasks());
+                callback.onChangesLoaded(changes);
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                operation.mLatency.recordSince(start);
+                operation.mNotAvailable.incrementAndGet();
+                callback.onDataNotAvailable();
+            }
+        });
+    }
+
+    @Override
+    public void applyChanges(@NonNull TaskChanges changes) {
+        long start = System.nanoTime();
+        delegate().applyChanges(changes);
+        operation("applyChanges").mLatency.recordSince(start);
+    }
+
+    @Override
+    public void getSyncToken(@NonNull final GetSyncTokenCallback callback) {
+        final Operation operation = operation("getSyncToken");
+        final long start = System.nanoTime();
+        delegate().getSyncToken(new GetSyncTokenCallback() {
+            @Override
+            public void onSyncTokenLoaded(long token) {
+                operation.mLatency.recordSince(start);
+                callback.onSyncTokenLoaded(token);
+            }
+        });
+    }
+
+    @Override
+    public void getStatistics(@NonNull final GetStatisticsCallback callback) {
+        final Operation operation = operation("getStatistics");
+        final long start = System.nanoTime();
+        delegate().getStatistics(new GetStatisticsCallback() {
+            @Override
+            public void onStatisticsLoaded(TaskStatistics statistics) {
+                operation.mLatency.recordSince(start);
+                callback.onStatisticsLoaded(statistics);
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                operation.mLatency.recordSince(start);
+                operation.mNotAvailable.incrementAndGet();
+                callback.onDataNotAvailable();
+            }
+        });
+    }
+
+    @Override
+    public void getTasksSnapshot(@NonNull LoadTasksCallback callback) {
+        delegate().getTasksSnapshot(
+                new MeteredLoadTasksCallback(operation("getTasksSnapshot"), callback));
+    }
+
+    private Operation operation(String method) {
+        Operation operation = mOperations.get(method);
+        if (operation == null) {
+            // Racing threads get the same metrics from the registry.
+            operation = new Operation(mRegistry, mName + "." + method);
+            mOperations.put(method, operation);
+        }
+        return operation;
+    }
+
+    /**
+     * Metrics of one method.
+     */
+    private static final class Operation {
+
+        final LatencyHistogram mLatency;
+
+        final AtomicLong mRows;
+
+        final AtomicLong mBytes;
+
+        final AtomicLong mNotAvailable;
+
+        Operation(MetricsRegistry registry, String name) {
+            mLatency = registry.histogram(name);
+            mRows = registry.counter(name + ".rows");
+            mBytes = registry.counter(name + ".bytes");
+            mNotAvailable = registry.counter(name + ".notAvailable");
+        }
+
+        void countTasks(List<Task> tasks) {
+            long bytes = 0;
+            for (Task task : tasks) {
+                bytes += TasksCache.estimateSizeBytes(task);
+            }
+            mRows.addAndGet(tasks.size());
+            mBytes.addAndGet(bytes);
+        }
+
+        void countTask(Task task) {
+            mRows.incrementAndGet();
+            mBytes.addAndGet(TasksCache.estimateSizeBytes(task));
+        }
+    }
+
+    private static final class MeteredLoadTasksCallback implements LoadTasksCallback {
+
+        private final Operation mOperation;
+
+        private final LoadTasksCallback mCallback;
+
+        private final long mStartNanos = System.nanoTime();
+
+        MeteredLoadTasksCallback(Operation operation, LoadTasksCallback callback) {
+            mOperation = operation;
+            mCallback = checkNotNull(callback);
+        }
+
+        @Override
+        public void onTaskLoaded(List<Task> tasks) {
+            mOperation.mLatency.recordSince(mStartNanos);
+            mOperation.countTasks(tasks);
+            mCallback.onTaskLoaded(tasks);
+        }
+
+        @Override
+        public void onDataNotAvailable() {
+            mOperation.mLatency.recordSince(mStartNanos);
+            mOperation.mNotAvailable.incrementAndGet();
+            mCallback.onDataNotAvailable();
+        }
+    }
+
+    private static final class MeteredGetTaskCallback implements GetTaskCallback {
+
+        private final Operation mOperation;
+
+        private final GetTaskCallback mCallback;
+
+        private final long mStartNanos = System.nanoTime();
+
+        MeteredGetTaskCallback(Operation operation, GetTaskCallback callback) {
+            mOperation = operation;
+            mCallback = checkNotNull(callback);
+        }
+
+        @Override
+        public void onTaskLoaded(Task task) {
+            mOperation.mLatency.recordSince(mStartNanos);
+            mOperation.countTask(task);
+            mCallback.onTaskLoaded(task);
+        }
+
+        @Override
+        public void onDataNotAvailable() {
+            mOperation.mLatency.recordSince(mStartNanos);
+            mOperation.mNotAvailable.incrementAndGet();
+            mCallback.onDataNotAvailable();
+        }
+    }
+}
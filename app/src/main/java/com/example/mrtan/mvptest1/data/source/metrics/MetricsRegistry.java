@@ -0,0 +1,144 @@
+package com.example.mrtan.mvptest1.data.source.metrics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * In-process registry of the data layer metrics, by name: latency histograms, counters and
+ * gauges read when reported. Metrics are created the first time they are asked for, and can be
+ * queried at any time, from any thread.
+ * <p>
+ * Metrics are never removed, so callers may keep them instead of looking them up every time.
+ * Names are dot separated, starting with the component, e.g. {@code local.getTasks} for the
+ * latency of the local data source's {@code getTasks} or {@code repository.cacheHits}.
+ *
+ * 进程内的指标注册表：延迟直方图、计数器和读取时计算的指标
+ */
+public final class MetricsRegistry {
+
+    /**
+     * A value read when the metrics are reported, e.g. the size of a cache.
+     */
+    public interface Gauge {
+
+        long getValue();
+    }
+
+    private static volatile MetricsRegistry INSTANCE;
+
+    private final ConcurrentMap<String, LatencyHistogram> mHistograms = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, AtomicLong> mCounters = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Gauge> mGauges = new ConcurrentHashMap<>();
+
+    public MetricsRegistry() {
+    }
+
+    /**
+     * @return the registry the app reports, see {@link MetricsReporter}
+     */
+    public static MetricsRegistry getInstance() {
+        if (INSTANCE == null) {
+            synchronized (MetricsRegistry.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new MetricsRegistry();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    @NonNull
+    public LatencyHistogram histogram(@NonNull String name) {
+        LatencyHistogram histogram = mHistograms.get(checkNotNull(name));
+        if (histogram == null) {
+            LatencyHistogram newHistogram = new LatencyHistogram();
+            histogram = mHistograms.putIfAbsent(name, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    @NonNull
+    public AtomicLong counter(@NonNull String name) {
+        AtomicLong counter = mCounters.get(checkNotNull(name));
+        if (counter == null) {
+            AtomicLong newCounter = new AtomicLong();
+            counter = mCounters.putIfAbsent(name, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Registers {@code gauge}, replacing the one with the same name.
+     */
+    public void register(@NonNull String name, @NonNull Gauge gauge) {
+        mGauges.put(checkNotNull(name), checkNotNull(gauge));
+    }
+
+    /**
+     * @return the histogram named {@code name}, or {@code null} if nothing was recorded in it
+     */
+    @Nullable
+    public LatencyHistogram getHistogram(@NonNull String name) {
+        return mHistograms.get(name);
+    }
+
+    /**
+     * @return the value of the counter or the gauge named {@code name}, 0 if there is none
+     */
+    public long getValue(@NonNull String name) {
+        AtomicLong counter = mCounters.get(name);
+        if (counter != null) {
+            return counter.get();
+        }
+        Gauge gauge = mGauges.get(name);
+        return gauge != null ? gauge.getValue() : 0;
+    }
+
+    /**
+     * @return one line per metric, sorted by name, latencies in milliseconds
+     */
+    @NonNull
+    public List<String> report() {
+        SortedMap<String, String> lines = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : mHistograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            lines.put(entry.getKey(), String.format(Locale.US,
+                    "%s count=%d mean=%.2fms p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms",
+                    entry.getKey(), histogram.count(), millis(histogram.meanMicros()),
+                    millis(histogram.percentileMicros(50)),
+                    millis(histogram.percentileMicros(95)),
+                    millis(histogram.percentileMicros(99)), millis(histogram.maxMicros())));
+        }
+        for (Map.Entry<String, AtomicLong> entry : mCounters.entrySet()) {
+            lines.put(entry.getKey(), entry.getKey() + " " + entry.getValue().get());
+        }
+        for (Map.Entry<String, Gauge> entry : mGauges.entrySet()) {
+            lines.put(entry.getKey(), entry.getKey() + " " + entry.getValue().getValue());
+        }
+        return new ArrayList<>(lines.values());
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.mrtan.mvptest1.data.source.metrics;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Dumps a {@link MetricsRegistry} periodically to logcat, with the {@code TaskMetrics} tag, and
+ * optionally appends it to a file.
+ * <p>
+ * Reports are scheduled and written on a background thread of the reporter, so they never queue
+ * behind, or delay, the database work of the disk IO executor. The thread runs from
+ * {@link #start(long)} to {@link #stop()}.
+ *
+ * 定期把指标输出到logcat和文件，在独立的后台线程上执行
+ */
+public class MetricsReporter {
+
+    private static final String TAG = "TaskMetrics";
+
+    private final MetricsRegistry mRegistry;
+
+    @Nullable
+    private final File mFile;
+
+    // The fields below are guarded by this.
+
+    @Nullable
+    private HandlerThread mThread;
+
+    @Nullable
+    private Handler mHandler;
+
+    private final Runnable mReportRunnable = new Runnable() {
+        @Override
+        public void run() {
+            write();
+            synchronized (MetricsReporter.this) {
+                // Not if stopped, or restarted on another thread since.
+                if (mHandler != null && mHandler.getLooper() == Looper.myLooper()) {
+                    mHandler.postDelayed(this, mPeriodMillis);
+                }
+            }
+        }
+    };
+
+    private volatile long mPeriodMillis;
+
+    /**
+     * @param file the file reports are appended to, or {@code null} to only log them
+     */
+    public MetricsReporter(@NonNull MetricsRegistry registry, @Nullable File file) {
+        mRegistry = checkNotNull(registry);
+        mFile = file;
+    }
+
+    /**
+     * Starts the thread of the reporter if needed and reports every {@code periodMillis}, until
+     * {@link #stop()}.
+     */
+    public synchronized void start(long periodMillis) {
+        checkArgument(periodMillis > 0);
+        mPeriodMillis = periodMillis;
+        if (mThread == null) {
+            mThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+            mThread.start();
+            mHandler = new Handler(mThread.getLooper());
+        }
+        mHandler.removeCallbacks(mReportRunnable);
+        mHandler.postDelayed(mReportRunnable, periodMillis);
+    }
+
+    /**
+     * Stops reporting and quits the thread of the reporter. It can be started again.
+     */
+    public synchronized void stop() {
+        if (mThread == null) {
+            return;
+        }
+        mHandler.removeCallbacks(mReportRunnable);
+        mThread.quit();
+        mThread = null;
+        mHandler = null;
+    }
+
+    /**
+     * Reports now, on the thread of the reporter. Does nothing while it is stopped.
+     */
+    public synchronized void report() {
+        if (mHandler == null) {
+            return;
+        }
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        });
+    }
+
+    private void write() {
+        List<String> lines = mRegistry.report();
+        for (String line : lines) {
+            Log.i(TAG, line);
+        }
+        if (mFile != null) {
+            append(lines);
+        }
+    }
+
+    private void append(List<String> lines) {
+        Writer writer = null;
+        try {
+            writer = new FileWriter(mFile, true);
+            writer.write("--- " + System.currentTimeMillis() + "\n");
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write the metrics to " + mFile, e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // Nothing more to do.
+                }
+            }
+        }
+    }
+}
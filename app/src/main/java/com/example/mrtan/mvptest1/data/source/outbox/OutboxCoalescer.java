@@ -0,0 +1,75 @@
+package com.example.mrtan.mvptest1.data.source.outbox;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collapses outbox operations into the fewest that have the same effect on the remote data
+ * source.
+ * <p>
+ * Between two barriers only the last write of each task is kept, e.g. saving, completing and then
+ * deleting a task is a single delete. A completion or activation by id amends the write before it
+ * instead, e.g. saving and then completing a task by id is a single save of the completed task.
+ * Writes are never moved across a barrier, and everything before the last delete all is dropped.
+ * In the result the saves between two barriers come first, so they can be sent as one batch,
+ * followed by the completions, the activations, the deletes and then the barrier.
+ *
+ * 合并待发送的写操作：屏障之间每个任务只保留最后一次写操作
+ */
+final class OutboxCoalescer {
+
+    private OutboxCoalescer() {
+    }
+
+    @NonNull
+    static List<OutboxOperation> coalesce(@NonNull List<OutboxOperation> operations) {
+        int start = 0;
+        for (int i = operations.size() - 1; i >= 0; i--) {
+            if (operations.get(i).getType() == OutboxOperation.TYPE_DELETE_ALL) {
+                start = i;
+                break;
+            }
+        }
+
+        List<OutboxOperation> coalesced = new ArrayList<>();
+        Map<String, OutboxOperation> lastWrites = new LinkedHashMap<>();
+        for (int i = start; i < operations.size(); i++) {
+            OutboxOperation operation = operations.get(i);
+            if (operation.isBarrier()) {
+                addWrites(lastWrites, coalesced);
+                coalesced.add(operation);
+            } else {
+                // Remove first so the task moves to the position of its last write.
+                OutboxOperation lastWrite = lastWrites.remove(operation.getTaskId());
+                if (lastWrite != null && operation.isStateChange()) {
+                    operation = lastWrite.amend(operation);
+                }
+                lastWrites.put(operation.getTaskId(), operation);
+            }
+        }
+        addWrites(lastWrites, coalesced);
+        return coalesced;
+    }
+
+    private static void addWrites(Map<String, OutboxOperation> lastWrites,
+                                  List<OutboxOperation> coalesced) {
+        addWrites(lastWrites, OutboxOperation.TYPE_SAVE, coalesced);
+        addWrites(lastWrites, OutboxOperation.TYPE_COMPLETE, coalesced);
+        addWrites(lastWrites, OutboxOperation.TYPE_ACTIVATE, coalesced);
+        addWrites(lastWrites, OutboxOperation.TYPE_DELETE, coalesced);
+        lastWrites.clear();
+    }
+
+    private static void addWrites(Map<String, OutboxOperation> lastWrites, int type,
+                                  List<OutboxOperation> coalesced) {
+        for (OutboxOperation operation : lastWrites.values()) {
+            if (operation.getType() == type) {
+                coalesced.add(operation);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.mrtan.mvptest1.data.source.outbox;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.example.mrtan.mvptest1.data.Task;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A task write waiting in the outbox to be sent to the remote data source.
+ * <p>
+ * A save carries the whole state of the task, so saving, completing and activating a task are the
+ * same operation and only the last one matters. Completing or activating a task by id, from a bulk
+ * write, only changes its state: it amends an earlier save of the task instead of replacing it.
+ * Clearing the completed tasks and deleting all the tasks affect tasks by state rather than by id,
+ * they are barriers the writes before them can't be moved across.
+ *
+ * 等待发送到远程数据源的写操作
+ */
+public final class OutboxOperation {
+
+    public static final int TYPE_SAVE = 1;
+
+    public static final int TYPE_DELETE = 2;
+
+    public static final int TYPE_CLEAR_COMPLETED = 3;
+
+    public static final int TYPE_DELETE_ALL = 4;
+
+    public static final int TYPE_COMPLETE = 5;
+
+    public static final int TYPE_ACTIVATE = 6;
+
+    private final long mSequence;
+
+    private final int mType;
+
+    @Nullable
+    private final String mTaskId;
+
+    @Nullable
+    private final Task mTask;
+
+    /**
+     * @param sequence the position in the outbox, 0 if the operation isn't stored yet
+     */
+    public OutboxOperation(long sequence, int type, @Nullable String taskId, @Nullable Task task) {
+        checkArgument(type >= TYPE_SAVE && type <= TYPE_ACTIVATE);
+        checkArgument(type != TYPE_SAVE || task != null);
+        checkArgument(isBarrier(type) || type == TYPE_SAVE || taskId != null);
+        mSequence = sequence;
+        mType = type;
+        mTaskId = task != null ? task.getId() : taskId;
+        mTask = task;
+    }
+
+    public static OutboxOperation save(@NonNull Task task) {
+        return new OutboxOperation(0, TYPE_SAVE, null, checkNotNull(task));
+    }
+
+    public static OutboxOperation delete(@NonNull String taskId) {
+        return new OutboxOperation(0, TYPE_DELETE, checkNotNull(taskId), null);
+    }
+
+    public static OutboxOperation complete(@NonNull String taskId) {
+        return new OutboxOperation(0, TYPE_COMPLETE, checkNotNull(taskId), null);
+    }
+
+    public static OutboxOperation activate(@NonNull String taskId) {
+        return new OutboxOperation(0, TYPE_ACTIVATE, checkNotNull(taskId), null);
+    }
+
+    public static OutboxOperation clearCompleted() {
+        return new OutboxOperation(0, TYPE_CLEAR_COMPLETED, null, null);
+    }
+
+    public static OutboxOperation deleteAll() {
+        return new OutboxOperation(0, TYPE_DELETE_ALL, null, null);
+    }
+
+    public long getSequence() {
+        return mSequence;
+    }
+
+    public int getType() {
+        return mType;
+    }
+
+    /**
+     * @return the id of the task written, {@code null} for barriers
+     */
+    @Nullable
+    public String getTaskId() {
+        return mTaskId;
+    }
+
+    /**
+     * @return the task saved, {@code null} unless this is a save
+     */
+    @Nullable
+    public Task getTask() {
+        return mTask;
+    }
+
+    public boolean isBarrier() {
+        return isBarrier(mType);
+    }
+
+    /**
+     * @return whether this only sets completed, see {@link #TYPE_COMPLETE} and
+     * {@link #TYPE_ACTIVATE}
+     */
+    public boolean isStateChange() {
+        return mType == TYPE_COMPLETE || mType == TYPE_ACTIVATE;
+    }
+
+    /**
+     * @return the operation with the effect of this one followed by {@code stateChange}
+     */
+    @NonNull
+    OutboxOperation amend(@NonNull OutboxOperation stateChange) {
+        checkArgument(stateChange.isStateChange());
+        switch (mType) {
+            case TYPE_SAVE:
+                return save(new Task(mTask.getTitle(), mTask.getDescription(), mTaskId,
+                        stateChange.getType() == TYPE_COMPLETE, mTask.getVersion()));
+            case TYPE_DELETE:
+                // Changing the state of a deleted task does nothing.
+                return this;
+            default:
+                return stateChange;
+        }
+    }
+
+    private static boolean isBarrier(int type) {
+        return type == TYPE_CLEAR_COMPLETED || type == TYPE_DELETE_ALL;
+    }
+
+    @Override
+    public String toString() {
+        return "OutboxOperation " + mSequence + " type " + mType + " task " + mTaskId;
+    }
+}
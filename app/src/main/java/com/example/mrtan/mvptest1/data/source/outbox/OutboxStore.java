@@ -0,0 +1,43 @@
+package com.example.mrtan.mvptest1.data.source.outbox;
+
+import android.support.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * Durable queue of the {@link OutboxOperation}s not sent to the remote data source yet.
+ * <p>
+ * Implementations run their work in order on a background thread and call back on the main
+ * thread, so an operation appended before a {@link #load(int, LoadOperationsCallback)} is always
+ * loaded by it.
+ *
+ * 持久化的待发送写操作队列
+ */
+public interface OutboxStore {
+
+    interface LoadOperationsCallback {
+
+        /**
+         * @param operations the oldest operations, in the order they were appended, empty if the
+         *                   outbox is empty
+         */
+        void onOperationsLoaded(List<OutboxOperation> operations);
+    }
+
+    void append(@NonNull OutboxOperation operation);
+
+    /**
+     * Appends all the operations at once, in order.
+     */
+    void appendAll(@NonNull List<OutboxOperation> operations);
+
+    /**
+     * Loads at most {@code limit} of the oldest operations, with their sequence set.
+     */
+    void load(int limit, @NonNull LoadOperationsCallback callback);
+
+    /**
+     * Removes the operations up to and including {@code sequence}, once they were sent.
+     */
+    void remove(long sequence);
+}
@@ -0,0 +1,468 @@
+package com.example.mrtan.mvptest1.data.source.outbox;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.data.source.TaskChanges;
+import com.example.mrtan.mvptest1.data.source.TasksDataSource;
+import com.example.mrtan.mvptest1.tasks.TasksFilterType;
+import com.example.mrtan.mvptest1.util.AppExecutors;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Write-behind wrapper of the remote data source.
+ * <p>
+ * Writes are appended to a durable {@link OutboxStore} instead of being sent one by one, and a
+ * flush shortly after the last write sends them in batches on {@link AppExecutors#networkIO()},
+ * after {@link OutboxCoalescer coalescing} them. If the remote data source fails, by throwing,
+ * the operations stay in the outbox and the flush is retried with exponential backoff. Reads go
+ * straight to the remote data source, except {@link #getChanges(long, LoadChangesCallback)} which
+ * first flushes the outbox so the changes include the local writes. The outbox left by an earlier
+ * process is flushed as soon as the instance is created.
+ *
+ * 远程数据源的写缓冲：写操作先存入outbox，再批量合并发送，失败时指数退避重试
+ */
+public class OutboxTasksDataSource implements TasksDataSource {
+
+    /**
+     * Writes made within this delay are sent together.
+     */
+    private static final long FLUSH_DELAY_MILLIS = 500;
+
+    private static final long INITIAL_RETRY_DELAY_MILLIS = 1000;
+
+    private static final long MAX_RETRY_DELAY_MILLIS = 5 * 60 * 1000;
+
+    @VisibleForTesting
+    static final int BATCH_SIZE = 500;
+
+    interface FlushCallback {
+
+        void onFlushed();
+
+        void onFlushFailed();
+    }
+
+    /**
+     * Runs the flushes, on the main thread by default.
+     */
+    @VisibleForTesting
+    interface FlushScheduler {
+
+        /**
+         * Runs {@code runnable} after {@code delayMillis}, instead of any earlier pending run.
+         */
+        void schedule(@NonNull Runnable runnable, long delayMillis);
+    }
+
+    private static volatile OutboxTasksDataSource INSTANCE;
+
+    private final TasksDataSource mTasksRemoteDataSource;
+
+    private final OutboxStore mOutboxStore;
+
+    private final AppExecutors mAppExecutors;
+
+    private final FlushScheduler mFlushScheduler;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    // The fields below are guarded by this.
+
+    private boolean mFlushScheduled;
+
+    private boolean mFlushing;
+
+    /**
+     * Set if a flush was requested while one was running, which may have loaded the outbox
+     * before the latest writes.
+     */
+    private boolean mFlushAgain;
+
+    private long mRetryDelayMillis = INITIAL_RETRY_DELAY_MILLIS;
+
+    private final List<FlushCallback> mFlushCallbacks = new ArrayList<>();
+
+    private OutboxTasksDataSource(@NonNull TasksDataSource tasksRemoteDataSource,
+                                  @NonNull OutboxStore outboxStore,
+                                  @NonNull AppExecutors appExecutors) {
+        this(tasksRemoteDataSource, outboxStore, appExecutors, new MainThreadFlushScheduler());
+    }
+
+    @VisibleForTesting
+    OutboxTasksDataSource(@NonNull TasksDataSource tasksRemoteDataSource,
+                          @NonNull OutboxStore outboxStore,
+                          @NonNull AppExecutors appExecutors,
+                          @NonNull FlushScheduler flushScheduler) {
+        mTasksRemoteDataSource = checkNotNull(tasksRemoteDataSource);
+        mOutboxStore = checkNotNull(outboxStore);
+        mAppExecutors = checkNotNull(appExecutors);
+        mFlushScheduler = checkNotNull(flushScheduler);
+        // Sends what an earlier process left in the outbox, without waiting for the next write.
+        scheduleFlush(0);
+    }
+
+    public static OutboxTasksDataSource getInstance(@NonNull TasksDataSource tasksRemoteDataSource,
+                                                    @NonNull OutboxStore outboxStore,
+                                                    @NonNull AppExecutors appExecutors) {
+        if (INSTANCE == null) {
+            synchronized (OutboxTasksDataSource.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new OutboxTasksDataSource(tasksRemoteDataSource, outboxStore,
+                            appExecutors);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    @Override
+    public void getTasks(@NonNull LoadTasksCallback callback) {
+        mTasksRemoteDataSource.getTasks(callback);
+    }
+
+    @Override
+    public void getTasks(@NonNull TasksFilterType filter, @NonNull LoadTasksCallback callback) {
+        mTasksRemoteDataSource.getTasks(filter, callback);
+    }
+
+    @Override
+    public void getTasks(@NonNull TasksFilterType filter, @Nullable String afterTaskId,
+                         int pageSize, @NonNull LoadTasksCallback callback) {
+        mTasksRemoteDataSource.getTasks(filter, afterTaskId, pageSize, callback);
+    }
+
+    @Override
+    public void getTask(@NonNull String taskId, @NonNull GetTaskCallback callback) {
+        mTasksRemoteDataSource.getTask(taskId, callback);
+    }
+
+    @Override
+    public void searchTasks(@NonNull String query, @Nullable String afterTaskId, int pageSize,
+                            @NonNull LoadTasksCallback callback) {
+        mTasksRemoteDataSource.searchTasks(query, afterTaskId, pageSize, callback);
+    }
+
+    @Override
+    public void saveTask(@NonNull Task task) {
+        enqueue(OutboxOperation.save(task));
+    }
+
+    @Override
+    public void saveTasks(@NonNull List<Task> tasks) {
+        List<OutboxOperation> operations = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            operations.add(OutboxOperation.save(task));
+        }
+        enqueueAll(operations);
+    }
+
+    @Override
+    public void completeTask(@NonNull Task task) {
+        enqueue(OutboxOperation.save(new Task(task.getTitle(), task.getDescription(),
+                task.getId(), true, task.getVersion())));
+    }
+
+    @Override
+    public void completeTask(@NonNull String taskId) {
+        // Not required because the {@link TaskRepository} handles converting from a
+        // {@code taskId} to a {@link task} using its cached data.
+    }
+
+    @Override
+    public void activateTask(@NonNull Task task) {
+        enqueue(OutboxOperation.save(new Task(task.getTitle(), task.getDescription(),
+                task.getId(), false, task.getVersion())));
+    }
+
+    @Override
+    public void activateTask(@NonNull String taskId) {
+        // Not required because the {@link TaskRepository} handles converting from a
+        // {@code taskId} to a {@link task} using its cached data.
+    }
+
+    @Override
+    public void completeTasks(@NonNull Collection<String> taskIds) {
+        List<OutboxOperation> operations = new ArrayList<>(taskIds.size());
+        for (String taskId : taskIds) {
+            operations.add(OutboxOperation.complete(taskId));
+        }
+        enqueueAll(operations);
+    }
+
+    @Override
+    public void activateTasks(@NonNull Collection<String> taskIds) {
+        List<OutboxOperation> operations = new ArrayList<>(taskIds.size());
+        for (String taskId : taskIds) {
+            operations.add(OutboxOperation.activate(taskId));
+        }
+        enqueueAll(operations);
+    }
+
+    @Override
+    public void clearCompletedTasks() {
+        enqueue(OutboxOperation.clearCompleted());
+    }
+
+    @Override
+    public void refreshTasks() {
+        // Not required because the {@link TaskRepository} handles the logic of refreshing the
+        // tasks from all the available data sources.
+    }
+
+    @Override
+    public void deleteTask(@NonNull String taskId) {
+        enqueue(OutboxOperation.delete(taskId));
+    }
+
+    @Override
+    public void deleteTasks(@NonNull Collection<String> taskIds) {
+        List<OutboxOperation> operations = new ArrayList<>(taskIds.size());
+        for (String taskId : taskIds) {
+            operations.add(OutboxOperation.delete(taskId));
+        }
+        enqueueAll(operations);
+    }
+
+    @Override
+    public void deleteAllTasks() {
+        enqueue(OutboxOperation.deleteAll());
+    }
+
+    /**
+     * The outbox is flushed first, the changes would otherwise miss or undo the local writes.
+     * {@link LoadChangesCallback#onDataNotAvailable()} is fired if the flush fails.
+     */
+    @Override
+    public void getChanges(final long sinceToken, @NonNull final LoadChangesCallback callback) {
+        checkNotNull(callback);
+        flush(new FlushCallback() {
+            @Override
+            public void onFlushed() {
+                mTasksRemoteDataSource.getChanges(sinceToken, callback);
+            }
+
+            @Override
+            public void onFlushFailed() {
+                callback.onDataNotAvailable();
+            }
+        });
+    }
+
+    @Override
+    public void applyChanges(@NonNull TaskChanges changes) {
+        mTasksRemoteDataSource.applyChanges(changes);
+    }
+
+    @Override
+    public void getSyncToken(@NonNull GetSyncTokenCallback callback) {
+        mTasksRemoteDataSource.getSyncToken(callback);
+    }
+
+    @Override
+    public void getStatistics(@NonNull GetStatisticsCallback callback) {
+        mTasksRemoteDataSource.getStatistics(callback);
+    }
+
+    @Override
+    public void getTasksSnapshot(@NonNull LoadTasksCallback callback) {
+        mTasksRemoteDataSource.getTasksSnapshot(callback);
+    }
+
+    /**
+     * Sends everything in the outbox now, then calls back on the main thread.
+     */
+    void flush(@NonNull FlushCallback callback) {
+        synchronized (this) {
+            mFlushCallbacks.add(callback);
+        }
+        scheduleFlush(0);
+    }
+
+    private void enqueue(OutboxOperation operation) {
+        mOutboxStore.append(operation);
+        scheduleFlush(FLUSH_DELAY_MILLIS);
+    }
+
+    private void enqueueAll(List<OutboxOperation> operations) {
+        if (operations.isEmpty()) {
+            return;
+        }
+        mOutboxStore.appendAll(operations);
+        scheduleFlush(FLUSH_DELAY_MILLIS);
+    }
+
+    private synchronized void scheduleFlush(long delayMillis) {
+        if (mFlushScheduled && delayMillis > 0) {
+            return;
+        }
+        mFlushScheduled = true;
+        mFlushScheduler.schedule(mFlushRunnable, delayMillis);
+    }
+
+    private void flush() {
+        synchronized (this) {
+            mFlushScheduled = false;
+            if (mFlushing) {
+                mFlushAgain = true;
+                return;
+            }
+            mFlushing = true;
+            mFlushAgain = false;
+        }
+        flushBatch();
+    }
+
+    private void flushBatch() {
+        mOutboxStore.load(BATCH_SIZE, new OutboxStore.LoadOperationsCallback() {
+            @Override
+            public void onOperationsLoaded(final List<OutboxOperation> operations) {
+                if (operations.isEmpty()) {
+                    onOutboxEmpty();
+                    return;
+                }
+                mAppExecutors.networkIO().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            send(OutboxCoalescer.coalesce(operations));
+                        } catch (RuntimeException e) {
+                            onFlushFailed();
+                            return;
+                        }
+                        mOutboxStore.remove(operations.get(operations.size() - 1).getSequence());
+                        // Keep going until the outbox is empty, it may have grown meanwhile.
+                        flushBatch();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Sends the writes between two barriers as one request per type.
+     */
+    private void send(List<OutboxOperation> operations) {
+        Batch batch = new Batch();
+        for (OutboxOperation operation : operations) {
+            switch (operation.getType()) {
+                case OutboxOperation.TYPE_SAVE:
+                    batch.mSaves.add(operation.getTask());
+                    break;
+                case OutboxOperation.TYPE_COMPLETE:
+                    batch.mCompletes.add(operation.getTaskId());
+                    break;
+                case OutboxOperation.TYPE_ACTIVATE:
+                    batch.mActivates.add(operation.getTaskId());
+                    break;
+                case OutboxOperation.TYPE_DELETE:
+                    batch.mDeletes.add(operation.getTaskId());
+                    break;
+                case OutboxOperation.TYPE_CLEAR_COMPLETED:
+                    send(batch);
+                    batch = new Batch();
+                    mTasksRemoteDataSource.clearCompletedTasks();
+                    break;
+                case OutboxOperation.TYPE_DELETE_ALL:
+                    send(batch);
+                    batch = new Batch();
+                    mTasksRemoteDataSource.deleteAllTasks();
+                    break;
+            }
+        }
+        send(batch);
+    }
+
+    private void send(Batch batch) {
+        if (!batch.mSaves.isEmpty()) {
+            mTasksRemoteDataSource.saveTasks(batch.mSaves);
+        }
+        if (!batch.mCompletes.isEmpty()) {
+            mTasksRemoteDataSource.completeTasks(batch.mCompletes);
+        }
+        if (!batch.mActivates.isEmpty()) {
+            mTasksRemoteDataSource.activateTasks(batch.mActivates);
+        }
+        if (!batch.mDeletes.isEmpty()) {
+            mTasksRemoteDataSource.deleteTasks(batch.mDeletes);
+        }
+    }
+
+    private void onOutboxEmpty() {
+        List<FlushCallback> callbacks;
+        synchronized (this) {
+            if (mFlushAgain) {
+                mFlushAgain = false;
+                flushBatch();
+                return;
+            }
+            mFlushing = false;
+            mRetryDelayMillis = INITIAL_RETRY_DELAY_MILLIS;
+            callbacks = new ArrayList<>(mFlushCallbacks);
+            mFlushCallbacks.clear();
+        }
+        for (FlushCallback callback : callbacks) {
+            callback.onFlushed();
+        }
+    }
+
+    private void onFlushFailed() {
+        final List<FlushCallback> callbacks;
+        synchronized (this) {
+            mFlushing = false;
+            long retryDelayMillis = mRetryDelayMillis;
+            mRetryDelayMillis = Math.min(mRetryDelayMillis * 2, MAX_RETRY_DELAY_MILLIS);
+            callbacks = new ArrayList<>(mFlushCallbacks);
+            mFlushCallbacks.clear();
+            mFlushScheduled = true;
+            mFlushScheduler.schedule(mFlushRunnable, retryDelayMillis);
+        }
+        mAppExecutors.mainThread().execute(new Runnable() {
+            @Override
+            public void run() {
+                for (FlushCallback callback : callbacks) {
+                    callback.onFlushFailed();
+                }
+            }
+        });
+    }
+
+    private static final class MainThreadFlushScheduler implements FlushScheduler {
+
+        private final Handler mMainThreadHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void schedule(@NonNull Runnable runnable, long delayMillis) {
+            mMainThreadHandler.removeCallbacks(runnable);
+            mMainThreadHandler.postDelayed(runnable, delayMillis);
+        }
+    }
+
+    /**
+     * Writes between two barriers, by type.
+     */
+    private static final class Batch {
+
+        final List<Task> mSaves = new ArrayList<>();
+
+        final List<String> mCompletes = new ArrayList<>();
+
+        final List<String> mActivates = new ArrayList<>();
+
+        final List<String> mDeletes = new ArrayList<>();
+    }
+}
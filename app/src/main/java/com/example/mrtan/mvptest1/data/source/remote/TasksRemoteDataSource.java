@@ -1,16 +1,27 @@
 package com.example.mrtan.mvptest1.data.source.remote;
 
 import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.data.source.TaskChanges;
+import com.example.mrtan.mvptest1.data.source.TaskPaging;
+import com.example.mrtan.mvptest1.data.source.TaskSearch;
 import com.example.mrtan.mvptest1.data.source.TasksDataSource;
+import com.example.mrtan.mvptest1.tasks.TasksFilterType;
 import com.google.common.collect.Lists;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 /**
  * Implementation of the data source that add a latency simulating network.
  */
@@ -22,6 +33,19 @@ public class TasksRemoteDataSource implements TasksDataSource {
 
     private final static Map<String, Task> TASK_SERVICE_DATA;
 
+    /**
+     * Versions the tasks were deleted at, by task id, so delta syncs can report the deletions.
+     * 被删除任务的版本号，用于增量同步
+     */
+    private final static Map<String, Long> TASK_TOMBSTONES = new LinkedHashMap<>();
+
+    /**
+     * Version of the latest change, every change gets the next one.
+     */
+    private static long sVersion = TaskChanges.NO_TOKEN;
+
+    private final Handler mMainThreadHandler = new Handler(Looper.getMainLooper());
+
     static {
         TASK_SERVICE_DATA = new LinkedHashMap<>();
         addTask("Build tower in pisa", "Ground looks good, no foundation work required");
@@ -40,8 +64,41 @@ public class TasksRemoteDataSource implements TasksDataSource {
     private TasksRemoteDataSource(){}
 
     private static void addTask(String title, String description) {
-        Task newTask = new Task(title, description);
-        TASK_SERVICE_DATA.put(newTask.getId(), newTask);
+        putTask(new Task(title, description));
+    }
+
+    /**
+     * Stores {@code task} stamped with the next version.
+     */
+    private static void putTask(Task task) {
+        synchronized (TASK_SERVICE_DATA) {
+            long version = ++sVersion;
+            TASK_SERVICE_DATA.put(task.getId(), new Task(task.getTitle(), task.getDescription(),
+                    task.getId(), task.isCompleted(), version));
+            TASK_TOMBSTONES.remove(task.getId());
+        }
+    }
+
+    private static void setCompleted(Collection<String> taskIds, boolean completed) {
+        synchronized (TASK_SERVICE_DATA) {
+            for (String taskId : taskIds) {
+                Task task = TASK_SERVICE_DATA.get(taskId);
+                if (task != null && task.isCompleted() != completed) {
+                    putTask(new Task(task.getTitle(), task.getDescription(), taskId, completed));
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the task and leaves a tombstone stamped with the next version.
+     */
+    private static void removeTask(String taskId) {
+        synchronized (TASK_SERVICE_DATA) {
+            if (TASK_SERVICE_DATA.remove(taskId) != null) {
+                TASK_TOMBSTONES.put(taskId, ++sVersion);
+            }
+        }
     }
 
     /**
@@ -51,13 +108,66 @@ public class TasksRemoteDataSource implements TasksDataSource {
      */
     @Override
     public void getTasks(@NonNull final LoadTasksCallback callback) {
+        final List<Task> tasks;
+        synchronized (TASK_SERVICE_DATA) {
+            tasks = Lists.newArrayList(TASK_SERVICE_DATA.values());
+        }
 
         //Simulate network by delaying the execution.模仿网络加载数据
-        Handler handler = new Handler();
-        handler.postDelayed(new Runnable() {
+        mMainThreadHandler.postDelayed(new Runnable() {
             @Override
             public void run() {
-                callback.onTaskLoaded(Lists.newArrayList(TASK_SERVICE_DATA.values()));
+                callback.onTaskLoaded(tasks);
+            }
+        }, SERVICE_LATENCY_IN_MILLIS);
+    }
+
+    /**
+     * Note: {@link LoadTasksCallback#onDataNotAvailable()} is never fired. In a real remote data
+     * source implementation the filter would be sent to the server.
+     */
+    @Override
+    public void getTasks(@NonNull TasksFilterType filter,
+                         @NonNull final LoadTasksCallback callback) {
+        final List<Task> tasks;
+        synchronized (TASK_SERVICE_DATA) {
+            tasks = TaskPaging.filter(TASK_SERVICE_DATA.values(), filter);
+        }
+
+        //Simulate network by delaying the execution.模仿网络加载数据
+        mMainThreadHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                callback.onTaskLoaded(tasks);
+            }
+        }, SERVICE_LATENCY_IN_MILLIS);
+    }
+
+    /**
+     * Note: {@link LoadTasksCallback#onDataNotAvailable()} is only fired when there are no tasks
+     * at all, or when {@code afterTaskId} was deleted. In a real remote data source
+     * implementation, the page would be requested from the server.
+     */
+    @Override
+    public void getTasks(@NonNull TasksFilterType filter, @Nullable String afterTaskId,
+                         int pageSize, @NonNull final LoadTasksCallback callback) {
+        checkArgument(pageSize > 0);
+        final List<Task> page;
+        final boolean noData;
+        synchronized (TASK_SERVICE_DATA) {
+            page = TaskPaging.page(TASK_SERVICE_DATA.values(), filter, afterTaskId, pageSize);
+            noData = page == null || (afterTaskId == null && TASK_SERVICE_DATA.isEmpty());
+        }
+
+        //Simulate network by delaying the execution.模仿网络加载数据
+        mMainThreadHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (noData) {
+                    callback.onDataNotAvailable();
+                } else {
+                    callback.onTaskLoaded(page);
+                }
             }
         }, SERVICE_LATENCY_IN_MILLIS);
     }
@@ -69,11 +179,13 @@ public class TasksRemoteDataSource implements TasksDataSource {
      */
     @Override
     public void getTask(@NonNull String taskId, @NonNull final GetTaskCallback callback) {
-        final Task task = TASK_SERVICE_DATA.get(taskId);
+        final Task task;
+        synchronized (TASK_SERVICE_DATA) {
+            task = TASK_SERVICE_DATA.get(taskId);
+        }
 
         //Simulate network by delaying the execution.模仿网络加载数据
-        Handler handler = new Handler();
-        handler.postDelayed(new Runnable() {
+        mMainThreadHandler.postDelayed(new Runnable() {
             @Override
             public void run() {
                 callback.onTaskLoaded(task);
@@ -81,15 +193,50 @@ public class TasksRemoteDataSource implements TasksDataSource {
         }, SERVICE_LATENCY_IN_MILLIS);
     }
 
+    /**
+     * Note: {@link LoadTasksCallback#onDataNotAvailable()} is only fired when {@code afterTaskId}
+     * no longer matches. In a real remote data source implementation the query would be sent to
+     * the server.
+     */
+    @Override
+    public void searchTasks(@NonNull String query, @Nullable String afterTaskId, int pageSize,
+                            @NonNull final LoadTasksCallback callback) {
+        checkArgument(pageSize > 0);
+        List<Task> results;
+        synchronized (TASK_SERVICE_DATA) {
+            results = new TaskSearch(TASK_SERVICE_DATA.values()).search(query);
+        }
+        final List<Task> page = TaskPaging.page(results, afterTaskId, pageSize);
+
+        //Simulate network by delaying the execution.模仿网络加载数据
+        mMainThreadHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (page != null) {
+                    callback.onTaskLoaded(page);
+                } else {
+                    callback.onDataNotAvailable();
+                }
+            }
+        }, SERVICE_LATENCY_IN_MILLIS);
+    }
+
     @Override
     public void saveTask(@NonNull Task task) {
-        TASK_SERVICE_DATA.put(task.getId(), task);
+        putTask(task);
+    }
+
+    @Override
+    public void saveTasks(@NonNull List<Task> tasks) {
+        for (Task task : tasks) {
+            putTask(task);
+        }
     }
 
     @Override
     public void completeTask(@NonNull Task task) {
         Task completedTask = new Task(task.getTitle(), task.getDescription(), task.getId(), true);
-        TASK_SERVICE_DATA.put(completedTask.getId(), completedTask);
+        putTask(completedTask);
     }
 
     @Override
@@ -101,7 +248,7 @@ public class TasksRemoteDataSource implements TasksDataSource {
     @Override
     public void activateTask(@NonNull Task task) {
         Task activeTask = new Task(task.getTitle(), task.getDescription(),task.getId());
-        TASK_SERVICE_DATA.put(task.getId(), activeTask);
+        putTask(activeTask);
     }
 
     @Override
@@ -110,13 +257,32 @@ public class TasksRemoteDataSource implements TasksDataSource {
         //converting from a {@code taskId} to a {@link task} using its cached data.
     }
 
+    /**
+     * One request for all the tasks.
+     */
+    @Override
+    public void completeTasks(@NonNull Collection<String> taskIds) {
+        setCompleted(taskIds, true);
+    }
+
+    /**
+     * One request for all the tasks.
+     */
+    @Override
+    public void activateTasks(@NonNull Collection<String> taskIds) {
+        setCompleted(taskIds, false);
+    }
+
     @Override
     public void clearCompletedTasks() {
-        Iterator<Map.Entry<String, Task>> it = TASK_SERVICE_DATA.entrySet().iterator();
-        while(it.hasNext()){
-            Map.Entry<String, Task> entry = it.next();
-            if (entry.getValue().isCompleted()){
-                it.remove();
+        synchronized (TASK_SERVICE_DATA) {
+            Iterator<Map.Entry<String, Task>> it = TASK_SERVICE_DATA.entrySet().iterator();
+            while(it.hasNext()){
+                Map.Entry<String, Task> entry = it.next();
+                if (entry.getValue().isCompleted()){
+                    it.remove();
+                    TASK_TOMBSTONES.put(entry.getKey(), ++sVersion);
+                }
             }
         }
     }
@@ -129,11 +295,91 @@ public class TasksRemoteDataSource implements TasksDataSource {
 
     @Override
     public void deleteTask(@NonNull String taskId) {
-        TASK_SERVICE_DATA.remove(taskId);
+        removeTask(taskId);
+    }
+
+    /**
+     * One request for all the tasks.
+     */
+    @Override
+    public void deleteTasks(@NonNull Collection<String> taskIds) {
+        synchronized (TASK_SERVICE_DATA) {
+            for (String taskId : taskIds) {
+                removeTask(taskId);
+            }
+        }
     }
 
     @Override
     public void deleteAllTasks() {
-        TASK_SERVICE_DATA.clear();
+        synchronized (TASK_SERVICE_DATA) {
+            for (String taskId : Lists.newArrayList(TASK_SERVICE_DATA.keySet())) {
+                removeTask(taskId);
+            }
+        }
+    }
+
+    /**
+     * Note: {@link LoadChangesCallback#onDataNotAvailable()} is never fired. A token newer than
+     * the latest change, e.g. after the server data was reset, gets a full resync. In a real
+     * remote data source implementation tombstones would expire, and tokens older than the oldest
+     * kept tombstone would get a full resync too.
+     */
+    @Override
+    public void getChanges(long sinceToken, @NonNull final LoadChangesCallback callback) {
+        final TaskChanges changes;
+        synchronized (TASK_SERVICE_DATA) {
+            boolean fullSync = sinceToken == TaskChanges.NO_TOKEN || sinceToken > sVersion;
+            List<Task> updatedTasks = new ArrayList<>();
+            for (Task task : TASK_SERVICE_DATA.values()) {
+                if (fullSync || task.getVersion() > sinceToken) {
+                    updatedTasks.add(task);
+                }
+            }
+            List<String> deletedTaskIds = new ArrayList<>();
+            if (!fullSync) {
+                for (Map.Entry<String, Long> tombstone : TASK_TOMBSTONES.entrySet()) {
+                    if (tombstone.getValue() > sinceToken) {
+                        deletedTaskIds.add(tombstone.getKey());
+                    }
+                }
+            }
+            changes = new TaskChanges(sVersion, fullSync, updatedTasks, deletedTaskIds);
+        }
+
+        //Simulate network by delaying the execution.模仿网络加载数据
+        mMainThreadHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                callback.onChangesLoaded(changes);
+            }
+        }, SERVICE_LATENCY_IN_MILLIS);
+    }
+
+    @Override
+    public void applyChanges(@NonNull TaskChanges changes) {
+        // Not required for the remote data source because it is the reference the changes come
+        // from.
+    }
+
+    @Override
+    public void getSyncToken(@NonNull GetSyncTokenCallback callback) {
+        // Not required for the remote data source because it is the reference the changes come
+        // from, it has no token of its own.
+        callback.onSyncTokenLoaded(TaskChanges.NO_TOKEN);
+    }
+
+    @Override
+    public void getStatistics(@NonNull GetStatisticsCallback callback) {
+        // Not required for the remote data source because the statistics are kept on the device,
+        // the {@link TaskRepository} only loads them from the local data source.
+        callback.onDataNotAvailable();
+    }
+
+    @Override
+    public void getTasksSnapshot(@NonNull LoadTasksCallback callback) {
+        // Not required for the remote data source because the snapshot is a file on the device,
+        // the {@link TaskRepository} only loads it from the local data source.
+        callback.onDataNotAvailable();
     }
 }
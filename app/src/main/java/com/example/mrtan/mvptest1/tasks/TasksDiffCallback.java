@@ -0,0 +1,47 @@
+package com.example.mrtan.mvptest1.tasks;
+
+import android.support.v7.util.DiffUtil;
+
+import com.example.mrtan.mvptest1.data.Task;
+
+import java.util.List;
+
+/**
+ * Compares two lists of {@link Task}s for {@link DiffUtil}: rows are the same task if they have
+ * the same id, and unchanged if all the fields are equal. The description isn't shown but it
+ * still counts, the row hands its task to the click listeners.
+ *
+ * 比较两个任务列表：id相同为同一个任务，所有字段相同为未变化
+ */
+class TasksDiffCallback extends DiffUtil.Callback {
+
+    private final List<Task> mOldTasks;
+
+    private final List<Task> mNewTasks;
+
+    TasksDiffCallback(List<Task> oldTasks, List<Task> newTasks) {
+        mOldTasks = oldTasks;
+        mNewTasks = newTasks;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return mOldTasks.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return mNewTasks.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        return mOldTasks.get(oldItemPosition).getId()
+                .equals(mNewTasks.get(newItemPosition).getId());
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        return Task.sameContent(mOldTasks.get(oldItemPosition), mNewTasks.get(newItemPosition));
+    }
+}
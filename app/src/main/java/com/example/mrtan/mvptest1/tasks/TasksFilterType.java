@@ -1,7 +1,14 @@
 package com.example.mrtan.mvptest1.tasks;
 
+import android.support.annotation.NonNull;
+
+import com.example.mrtan.mvptest1.data.Task;
+
 /**
  * Used with the filter spinner in the tasks list.
+ * <p>
+ * The data layer uses it too, so filtering can be pushed down to the data sources instead of
+ * being done on the full list.
  */
 public enum TasksFilterType {
 
@@ -18,5 +25,19 @@ public enum TasksFilterType {
     /**
      *Filter only the completed tasks.
      */
-    COMPLETED_TASKS
+    COMPLETED_TASKS;
+
+    /**
+     * @return true if the task should be shown with this filter
+     */
+    public boolean accepts(@NonNull Task task) {
+        switch (this) {
+            case ACTIVE_TASKS:
+                return !task.isCompleted();
+            case COMPLETED_TASKS:
+                return task.isCompleted();
+            default:
+                return true;
+        }
+    }
 }
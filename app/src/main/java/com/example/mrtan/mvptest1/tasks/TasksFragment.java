@@ -1,18 +1,29 @@
 package com.example.mrtan.mvptest1.tasks;
 
 import android.app.Fragment;
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.os.Bundle;
+import android.support.annotation.Nullable;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.view.ViewCompat;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.BaseAdapter;
 import android.widget.CheckBox;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
+import com.example.mrtan.mvptest1.Injection;
 import com.example.mrtan.mvptest1.R;
 import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.util.AppExecutors;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -38,6 +49,63 @@ public class TasksFragment extends Fragment implements TaskContract.View {
 
     private TextView mFilteringLabelView;
 
+    public TasksFragment() {
+        // Requires empty public constructor
+    }
+
+    public static TasksFragment newInstance() {
+        return new TasksFragment();
+    }
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        mListAdapter = new TasksAdapter(new ArrayList<Task>(0), mItemListener,
+                Injection.provideAppExecutors());
+    }
+
+    @Nullable
+    @Override
+    public View onCreateView(LayoutInflater inflater, @Nullable ViewGroup container,
+                             @Nullable Bundle savedInstanceState) {
+        View root = inflater.inflate(R.layout.tasks_frag, container, false);
+
+        // Set up tasks view
+        RecyclerView recyclerView = (RecyclerView) root.findViewById(R.id.tasks_list);
+        recyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
+        recyclerView.setAdapter(mListAdapter);
+        mFilteringLabelView = (TextView) root.findViewById(R.id.filteringLabel);
+        mTasksView = (LinearLayout) root.findViewById(R.id.tasksLL);
+
+        // Set up no tasks view
+        mNoTasksView = root.findViewById(R.id.noTasks);
+        mNoTaskIcon = (ImageView) root.findViewById(R.id.noTasksIcon);
+        mNoTaskMainView = (TextView) root.findViewById(R.id.noTasksMain);
+        mNoTaskAddView = (TextView) root.findViewById(R.id.noTasksAdd);
+
+        return root;
+    }
+
+    /**
+     * Listener for clicks on tasks in the list.
+     */
+    TasksAdapter.TaskItemListener mItemListener = new TasksAdapter.TaskItemListener() {
+        @Override
+        public void onTaskClick(Task clickedTask) {
+            mPresenter.openTaskDetails(clickedTask);
+        }
+
+        @Override
+        public void onCompleteTask(Task completedTask) {
+            mPresenter.completeTask(completedTask);
+        }
+
+        @Override
+        public void onActivateTaskClick(Task activatedTask) {
+            mPresenter.activateTask(activatedTask);
+        }
+    };
+
     @Override
     public void setLoadingIndicator(boolean active) {
 
@@ -45,7 +113,10 @@ public class TasksFragment extends Fragment implements TaskContract.View {
 
     @Override
     public void showTasks(List<Task> tasks) {
+        mListAdapter.replaceData(tasks);
 
+        mTasksView.setVisibility(View.VISIBLE);
+        mNoTasksView.setVisibility(View.GONE);
     }
 
     @Override
@@ -125,79 +196,186 @@ public class TasksFragment extends Fragment implements TaskContract.View {
 
     @Override
     public void setPresenter(TaskContract.Presenter presenter) {
-
+        mPresenter = checkNotNull(presenter);
     }
 
-    private static class TasksAdapter extends BaseAdapter {
+    /**
+     * Adapter with stable ids that updates the list incrementally: a new list is diffed against
+     * the current one on a background thread and only the rows that were inserted, removed,
+     * moved or changed are notified.
+     * 增量更新列表：在后台线程计算差异，只通知变化的行
+     */
+    static class TasksAdapter extends RecyclerView.Adapter<TasksAdapter.TaskViewHolder> {
+
+        private final AppExecutors mAppExecutors;
 
         private List<Task> mTasks;
+
         private TaskItemListener mItemListener;
 
-        public TasksAdapter(List<Task> tasks, TaskItemListener itemListener) {
+        /**
+         * Incremented for every new list, a diff is only applied if no newer list was set since
+         * it was started.
+         */
+        private int mListGeneration;
+
+        public TasksAdapter(List<Task> tasks, TaskItemListener itemListener,
+                            AppExecutors appExecutors) {
+            mAppExecutors = checkNotNull(appExecutors);
+            setHasStableIds(true);
             setList(tasks);
             mItemListener = itemListener;
         }
 
+        /**
+         * Must be called on the main thread.
+         */
+        public void replaceData(List<Task> tasks) {
+            final List<Task> oldTasks = mTasks;
+            final List<Task> newTasks = new ArrayList<>(checkNotNull(tasks));
+            final int generation = ++mListGeneration;
+            if (oldTasks.isEmpty() || newTasks.isEmpty()) {
+                // Nothing to diff.
+                setList(newTasks);
+                notifyDataSetChanged();
+                return;
+            }
+            // The diff only needs the CPU, so it doesn't wait behind the disk writes.
+            mAppExecutors.networkIO().execute(new Runnable() {
+                @Override
+                public void run() {
+                    final DiffUtil.DiffResult result =
+                            DiffUtil.calculateDiff(new TasksDiffCallback(oldTasks, newTasks));
+                    mAppExecutors.mainThread().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (generation != mListGeneration) {
+                                // A newer list was set, this diff is outdated.
+                                return;
+                            }
+                            setList(newTasks);
+                            result.dispatchUpdatesTo(TasksAdapter.this);
+                        }
+                    });
+                }
+            });
+        }
+
         private void setList(List<Task> tasks){
             mTasks = checkNotNull(tasks);
         }
 
         @Override
-        public int getCount() {
+        public int getItemCount() {
             return mTasks.size();
         }
 
-        @Override
         public Task getItem(int position) {
             return mTasks.get(position);
         }
 
         @Override
         public long getItemId(int position) {
-            return position;
+            return itemId(getItem(position).getId());
         }
 
-        @Override
-        public View getView(int position, View convertView, ViewGroup parent) {
-            View rowView = convertView;
-            if (rowView == null) {
-                LayoutInflater inflater = LayoutInflater.from(parent.getContext());
-                rowView = inflater.inflate(R.layout.item_task, parent, false);
+        /**
+         * Derives the stable id of a row from its task id, a 64-bit FNV-1a hash. Nothing is kept
+         * per task, and a collision between the ids shown at once is very unlikely.
+         * 用任务id的64位哈希作为行的稳定id
+         */
+        static long itemId(String taskId) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < taskId.length(); i++) {
+                hash ^= taskId.charAt(i);
+                hash *= 0x100000001b3L;
             }
+            // NO_ID would read as a row without an id.
+            return hash == RecyclerView.NO_ID ? 0 : hash;
+        }
 
-            final Task task = getItem(position);
+        @Override
+        public TaskViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            LayoutInflater inflater = LayoutInflater.from(parent.getContext());
+            TaskViewHolder holder =
+                    new TaskViewHolder(inflater.inflate(R.layout.item_task, parent, false));
+            // The listener is shared by all the rows, it finds the task from the tagged holder.
+            holder.itemView.setTag(holder);
+            holder.itemView.setOnClickListener(mClickListener);
+            holder.mCompleteCB.setTag(holder);
+            holder.mCompleteCB.setOnClickListener(mClickListener);
+            return holder;
+        }
 
-            TextView titleTv = (TextView) rowView.findViewById(R.id.title);
-            titleTv.setText(task.getTitle());
+        /**
+         * Binding doesn't allocate: the views, listeners and backgrounds are set up once per
+         * holder.
+         * 绑定时不分配对象
+         */
+        @Override
+        public void onBindViewHolder(TaskViewHolder holder, int position) {
+            Task task = getItem(position);
 
-            CheckBox completeCB = (CheckBox) rowView.findViewById(R.id.complete);
+            holder.mTitleTv.setText(task.getTitle());
 
             //Active/completed task UI
-            completeCB.setChecked(task.isCompleted());
-            if (task.isCompleted()){
-                rowView.setBackgroundDrawable(parent.getContext().getResources().getDrawable(R.drawable.list_completed_touch_feedback));
-            } else {
-                rowView.setBackgroundDrawable(parent.getContext().getResources().getDrawable(R.drawable.touch_feedback));
-            }
+            holder.mCompleteCB.setChecked(task.isCompleted());
+            holder.setCompletedBackground(task.isCompleted());
+        }
 
-            completeCB.setOnClickListener(new View.OnClickListener() {
-                @Override
-                public void onClick(View v) {
-                    if (!task.isCompleted()){
-                        mItemListener.onCompleteTask(task);
-                    } else {
-                        mItemListener.onActivateTaskClick(task);
-                    }
+        private final View.OnClickListener mClickListener = new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                TaskViewHolder holder = (TaskViewHolder) v.getTag();
+                int position = holder.getAdapterPosition();
+                if (position == RecyclerView.NO_POSITION) {
+                    // Removed, or the list is being updated.
+                    return;
                 }
-            });
-
-            rowView.setOnClickListener(new View.OnClickListener() {
-                @Override
-                public void onClick(View v) {
+                Task task = getItem(position);
+                if (v != holder.mCompleteCB) {
                     mItemListener.onTaskClick(task);
+                } else if (!task.isCompleted()){
+                    mItemListener.onCompleteTask(task);
+                } else {
+                    mItemListener.onActivateTaskClick(task);
                 }
-            });
-            return rowView;
+            }
+        };
+
+        static class TaskViewHolder extends RecyclerView.ViewHolder {
+
+            final TextView mTitleTv;
+
+            final CheckBox mCompleteCB;
+
+            /**
+             * Drawables can't be shared between views, each holder loads its own once.
+             */
+            private final Drawable mActiveBackground;
+
+            private final Drawable mCompletedBackground;
+
+            private Boolean mShowsCompleted;
+
+            TaskViewHolder(View itemView) {
+                super(itemView);
+                mTitleTv = (TextView) itemView.findViewById(R.id.title);
+                mCompleteCB = (CheckBox) itemView.findViewById(R.id.complete);
+                Context context = itemView.getContext();
+                mActiveBackground = ContextCompat.getDrawable(context, R.drawable.touch_feedback);
+                mCompletedBackground = ContextCompat.getDrawable(context,
+                        R.drawable.list_completed_touch_feedback);
+            }
+
+            void setCompletedBackground(boolean completed) {
+                if (mShowsCompleted != null && mShowsCompleted == completed) {
+                    return;
+                }
+                mShowsCompleted = completed;
+                ViewCompat.setBackground(itemView,
+                        completed ? mCompletedBackground : mActiveBackground);
+            }
         }
 
         public interface TaskItemListener {
@@ -0,0 +1,62 @@
+package com.example.mrtan.mvptest1.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Global executor pools for the whole application.
+ * <p>
+ * Grouping tasks like this avoids the effects of task starvation (e.g. disk reads don't wait behind
+ * webservice requests).
+ *
+ * 全局的线程池，磁盘读写、网络请求和主线程回调分开执行，避免互相阻塞
+ */
+public class AppExecutors {
+
+    private static final int THREAD_COUNT = 3;
+
+    private final Executor mDiskIO;
+
+    private final Executor mNetworkIO;
+
+    private final Executor mMainThread;
+
+    @VisibleForTesting
+    AppExecutors(Executor diskIO, Executor networkIO, Executor mainThread) {
+        mDiskIO = diskIO;
+        mNetworkIO = networkIO;
+        mMainThread = mainThread;
+    }
+
+    public AppExecutors() {
+        this(new DiskIOThreadExecutor(), Executors.newFixedThreadPool(THREAD_COUNT),
+                new MainThreadExecutor());
+    }
+
+    public Executor diskIO() {
+        return mDiskIO;
+    }
+
+    public Executor networkIO() {
+        return mNetworkIO;
+    }
+
+    public Executor mainThread() {
+        return mMainThread;
+    }
+
+    private static class MainThreadExecutor implements Executor {
+
+        private final Handler mMainThreadHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            mMainThreadHandler.post(command);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.mrtan.mvptest1.util;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executor that runs a task on a new background thread.
+ * <p>
+ * A single thread is used so database operations are executed in the order they were submitted,
+ * e.g. a {@code saveTask} always lands before a following {@code getTasks}.
+ *
+ * 单线程执行，保证数据库操作按提交顺序执行
+ */
+public class DiskIOThreadExecutor implements Executor {
+
+    private final ExecutorService mDiskIO;
+
+    public DiskIOThreadExecutor() {
+        mDiskIO = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        mDiskIO.execute(command);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.mrtan.mvptest1.util;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.view.Choreographer;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Runs commands on the main thread at the start of the next frame, before it is drawn. Before
+ * Jelly Bean, which has no {@link Choreographer}, commands are only posted to the main thread.
+ *
+ * 在主线程下一帧开始时执行
+ */
+public class FrameExecutor implements Executor {
+
+    private final Handler mMainThreadHandler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public void execute(@NonNull final Runnable command) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            mMainThreadHandler.post(command);
+        } else if (Looper.myLooper() == Looper.getMainLooper()) {
+            postFrameCallback(command);
+        } else {
+            // The Choreographer belongs to the thread it is obtained on.
+            mMainThreadHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    postFrameCallback(command);
+                }
+            });
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static void postFrameCallback(@NonNull final Runnable command) {
+        Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                command.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.mrtan.mvptest1.benchmark;
+
+import com.example.mrtan.mvptest1.data.source.metrics.LatencyHistogram;
+
+import org.junit.Assume;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small JMH-like harness for the JVM benchmarks: each operation is warmed up, then run
+ * repeatedly for a fixed time while its latencies and allocations are recorded, and a line with
+ * the throughput, the p50/p99 latencies and the bytes allocated per operation is printed.
+ * <p>
+ * The results of a run are also written to the tab separated file named by the
+ * {@code benchmark.results} system property, {@code build/benchmarks/<test task>.tsv} when run
+ * by Gradle. It has a header line, then one line per benchmark and dataset size sorted by both,
+ * and it is replaced by every run, so two runs can be compared with {@code diff}.
+ * <p>
+ * Benchmarks only run with {@code ./gradlew testProdDebugUnitTest -Pbenchmark}, they are skipped
+ * by the regular unit test runs.
+ */
+final class BenchmarkRunner {
+
+    /**
+     * Sizes of the datasets every benchmark runs with.
+     */
+    static final int[] DATASET_SIZES = {100, 1000, 10000, 100000};
+
+    private static final long WARMUP_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private static final long MEASURE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final int MIN_OPERATIONS = 5;
+
+    private static final String RESULTS_HEADER =
+            "benchmark\tsize\tops_per_s\tp50_ms\tp99_ms\tbytes_per_op";
+
+    interface Operation {
+
+        /**
+         * @return a result of the operation, consumed so it isn't optimized away
+         */
+        Object run() throws Exception;
+    }
+
+    /**
+     * Written so the results of the operations are used.
+     */
+    private static volatile int sSink;
+
+    /**
+     * Result lines of this run, by benchmark and zero padded size so they sort by both.
+     */
+    private static final Map<String, String> sResults = new TreeMap<>();
+
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * Skips the calling benchmark unless benchmarks are enabled.
+     */
+    static void assumeEnabled() {
+        Assume.assumeTrue("Run the benchmarks with -Pbenchmark", Boolean.getBoolean("benchmark"));
+    }
+
+    static void run(String name, int size, Operation operation) throws Exception {
+        int sink = 0;
+        long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+        for (int i = 0; i < MIN_OPERATIONS || System.nanoTime() < warmupEnd; i++) {
+            sink += System.identityHashCode(operation.run());
+        }
+
+        LatencyHistogram latencies = new LatencyHistogram();
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long end = start + MEASURE_NANOS;
+        long now = start;
+        int operations = 0;
+        while (operations < MIN_OPERATIONS || now < end) {
+            sink += System.identityHashCode(operation.run());
+            long finished = System.nanoTime();
+            latencies.record(finished - now, TimeUnit.NANOSECONDS);
+            now = finished;
+            operations++;
+        }
+        long allocated = allocatedBytes() - allocatedBefore;
+        sSink = sink;
+
+        double opsPerSecond = operations * 1e9 / (now - start);
+        double p50Millis = latencies.percentileMicros(50) / 1000.0;
+        double p99Millis = latencies.percentileMicros(99) / 1000.0;
+        String bytesPerOperation =
+                allocatedBefore < 0 ? "n/a" : String.valueOf(allocated / operations);
+        System.out.println(String.format(Locale.US,
+                "%-24s %7d tasks %12.1f ops/s  p50 %9.3f ms  p99 %9.3f ms  %12s B/op",
+                name, size, opsPerSecond, p50Millis, p99Millis, bytesPerOperation));
+        record(name, size, String.format(Locale.US, "%s\t%d\t%.1f\t%.3f\t%.3f\t%s",
+                name, size, opsPerSecond, p50Millis, p99Millis, bytesPerOperation));
+    }
+
+    /**
+     * Adds a result line and rewrites the results file with all the results of this run.
+     */
+    private static synchronized void record(String name, int size, String line)
+            throws IOException {
+        sResults.put(String.format(Locale.US, "%s\t%010d", name, size), line);
+        File file = new File(System.getProperty("benchmark.results",
+                "build/benchmarks/results.tsv"));
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write(RESULTS_HEADER);
+            writer.write('\n');
+            for (String result : sResults.values()) {
+                writer.write(result);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @return the bytes allocated by this thread so far, or -1 if the JVM can't tell
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
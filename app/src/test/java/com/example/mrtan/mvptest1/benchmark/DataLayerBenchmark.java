@@ -0,0 +1,194 @@
+package com.example.mrtan.mvptest1.benchmark;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.data.TaskCodec;
+import com.example.mrtan.mvptest1.data.source.TaskPaging;
+import com.example.mrtan.mvptest1.data.source.TaskSearch;
+import com.example.mrtan.mvptest1.data.source.TasksCache;
+import com.example.mrtan.mvptest1.tasks.TasksFilterType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Baseline of the hot paths of the data layer that run on the JVM: creating tasks, filling and
+ * reading the cache, filtering and paging, the binary codec and full-text search, each with
+ * every size of {@link BenchmarkRunner#DATASET_SIZES}.
+ * <p>
+ * Run with {@code ./gradlew testProdDebugUnitTest -Pbenchmark --tests '*Benchmark'}, results are
+ * printed to the standard output and written to {@code build/benchmarks/testProdDebugUnitTest.tsv},
+ * the file named by the {@code benchmark.results} property, see {@link BenchmarkRunner}. The
+ * database backed paths are benchmarked on a device, see {@code TaskLocalDataSourceBenchmark} in
+ * androidTest.
+ */
+public class DataLayerBenchmark {
+
+    private static final String[] TITLES =
+            {"Groceries", "Call back", "Pay bills", "Laundry", "Read"};
+
+    private static final int PAGE_SIZE = 50;
+
+    @Before
+    public void assumeEnabled() {
+        BenchmarkRunner.assumeEnabled();
+    }
+
+    @Test
+    public void createTasks() throws Exception {
+        for (final int size : BenchmarkRunner.DATASET_SIZES) {
+            BenchmarkRunner.run("createTasks", size, new BenchmarkRunner.Operation() {
+                @Override
+                public Object run() {
+                    return createTasks(size);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void cacheReplaceAll() throws Exception {
+        for (final int size : BenchmarkRunner.DATASET_SIZES) {
+            final List<Task> tasks = createTasks(size);
+            BenchmarkRunner.run("cacheReplaceAll", size, new BenchmarkRunner.Operation() {
+                @Override
+                public Object run() {
+                    TasksCache cache = new TasksCache(size, Long.MAX_VALUE);
+                    cache.replaceAll(tasks);
+                    return cache;
+                }
+            });
+        }
+    }
+
+    @Test
+    public void cacheGetEveryTask() throws Exception {
+        for (final int size : BenchmarkRunner.DATASET_SIZES) {
+            final List<Task> tasks = createTasks(size);
+            final TasksCache cache = new TasksCache(size, Long.MAX_VALUE);
+            cache.replaceAll(tasks);
+            BenchmarkRunner.run("cacheGetEveryTask", size, new BenchmarkRunner.Operation() {
+                @Override
+                public Object run() {
+                    Task last = null;
+                    for (Task task : tasks) {
+                        last = cache.get(task.getId());
+                    }
+                    return last;
+                }
+            });
+        }
+    }
+
+    @Test
+    public void cacheSnapshotAfterWrite() throws Exception {
+        for (final int size : BenchmarkRunner.DATASET_SIZES) {
+            final List<Task> tasks = createTasks(size);
+            final TasksCache cache = new TasksCache(size, Long.MAX_VALUE);
+            cache.replaceAll(tasks);
+            BenchmarkRunner.run("cacheSnapshotAfterWrite", size, new BenchmarkRunner.Operation() {
+                @Override
+                public Object run() {
+                    // The write invalidates the snapshot, so it is built again.
+                    cache.put(tasks.get(0));
+                    return cache.getSnapshot().getTasks();
+                }
+            });
+        }
+    }
+
+    @Test
+    public void filterActiveTasks() throws Exception {
+        for (final int size : BenchmarkRunner.DATASET_SIZES) {
+            final List<Task> tasks = createTasks(size);
+            BenchmarkRunner.run("filterActiveTasks", size, new BenchmarkRunner.Operation() {
+                @Override
+                public Object run() {
+                    return TaskPaging.filter(tasks, TasksFilterType.ACTIVE_TASKS);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void pageFromMiddle() throws Exception {
+        for (final int size : BenchmarkRunner.DATASET_SIZES) {
+            final List<Task> tasks = createTasks(size);
+            final String afterTaskId = tasks.get(size / 2).getId();
+            BenchmarkRunner.run("pageFromMiddle", size, new BenchmarkRunner.Operation() {
+                @Override
+                public Object run() {
+                    return TaskPaging.page(tasks, TasksFilterType.ACTIVE_TASKS, afterTaskId,
+                            PAGE_SIZE);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void codecEncode() throws Exception {
+        for (final int size : BenchmarkRunner.DATASET_SIZES) {
+            final List<Task> tasks = createTasks(size);
+            BenchmarkRunner.run("codecEncode", size, new BenchmarkRunner.Operation() {
+                @Override
+                public Object run() {
+                    return TaskCodec.encode(tasks);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void codecDecode() throws Exception {
+        for (final int size : BenchmarkRunner.DATASET_SIZES) {
+            final byte[] bytes = TaskCodec.encode(createTasks(size));
+            BenchmarkRunner.run("codecDecode", size, new BenchmarkRunner.Operation() {
+                @Override
+                public Object run() throws Exception {
+                    return TaskCodec.decode(bytes);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void searchIndex() throws Exception {
+        for (final int size : BenchmarkRunner.DATASET_SIZES) {
+            final List<Task> tasks = createTasks(size);
+            BenchmarkRunner.run("searchIndex", size, new BenchmarkRunner.Operation() {
+                @Override
+                public Object run() {
+                    return new TaskSearch(tasks);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void searchQuery() throws Exception {
+        for (final int size : BenchmarkRunner.DATASET_SIZES) {
+            final TaskSearch search = new TaskSearch(createTasks(size));
+            BenchmarkRunner.run("searchQuery", size, new BenchmarkRunner.Operation() {
+                @Override
+                public Object run() {
+                    return search.search("call desc");
+                }
+            });
+        }
+    }
+
+    /**
+     * A few distinct titles, like real lists, unique descriptions and a third of them completed.
+     */
+    private static List<Task> createTasks(int size) {
+        List<Task> tasks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tasks.add(new Task(TITLES[i % TITLES.length], "Description of task " + i,
+                    UUID.randomUUID().toString(), i % 3 == 0));
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.mrtan.mvptest1.data;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for the implementation of {@link TaskCodec}.
+ */
+public class TaskCodecTest {
+
+    @Test
+    public void roundTrip_keepsEveryField() throws IOException {
+        List<Task> tasks = Lists.newArrayList(
+                new Task("Title1", "Description1", UUID.randomUUID().toString(), true, 42),
+                new Task(null, null, "not-a-uuid", false, Long.MAX_VALUE),
+                new Task("", "", "ABCDEF01-2345-6789-ABCD-EF0123456789"),
+                new Task("Émoji 😀", Strings.repeat("long ", 5000), "id4", true, 0));
+
+        List<Task> decoded = TaskCodec.decode(TaskCodec.encode(tasks));
+
+        assertEquals(tasks, decoded);
+        for (int i = 0; i < tasks.size(); i++) {
+            // Task.equals ignores these.
+            assertEquals(tasks.get(i).isCompleted(), decoded.get(i).isCompleted());
+            assertEquals(tasks.get(i).getVersion(), decoded.get(i).getVersion());
+        }
+    }
+
+    @Test
+    public void roundTrip_emptyList() throws IOException {
+        assertTrue(TaskCodec.decode(TaskCodec.encode(Collections.<Task>emptyList())).isEmpty());
+    }
+
+    @Test
+    public void uuidIds_storedAsTwoLongs() {
+        Task uuidTask = new Task("T", null, UUID.randomUUID().toString());
+        Task stringTask = new Task("T", null, uuidTask.getId().toUpperCase());
+
+        int uuidSize = TaskCodec.encode(Collections.singletonList(uuidTask)).length;
+        int stringSize = TaskCodec.encode(Collections.singletonList(stringTask)).length;
+
+        assertEquals(36 + 1 - 16, stringSize - uuidSize);
+    }
+
+    @Test
+    public void repeatedStrings_interned() throws IOException {
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            tasks.add(new Task("Groceries", "Buy milk", "id" + i));
+        }
+
+        byte[] interned = TaskCodec.encode(tasks);
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        TaskCodec.Writer writer = new TaskCodec.Writer(plain, false);
+        for (Task task : tasks) {
+            writer.write(task);
+        }
+        writer.finish();
+
+        assertTrue(interned.length < plain.size() / 2);
+        assertEquals(tasks, TaskCodec.decode(interned));
+        assertEquals(tasks, TaskCodec.decode(plain.toByteArray()));
+    }
+
+    @Test
+    public void reader_streamsTasksOneByOne() throws IOException {
+        Task task1 = new Task("Title1", "Description1");
+        Task task2 = new Task("Title2", "Description2");
+        byte[] bytes = TaskCodec.encode(Arrays.asList(task1, task2));
+
+        TaskCodec.Reader reader = new TaskCodec.Reader(new ByteArrayInputStream(bytes));
+
+        assertEquals(task1, reader.read());
+        assertEquals(task2, reader.read());
+        assertNull(reader.read());
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void decode_fromBufferPosition() throws IOException {
+        Task task = new Task("Title1", "Description1");
+        byte[] encoded = TaskCodec.encode(Collections.singletonList(task));
+        ByteBuffer buffer = ByteBuffer.allocate(encoded.length + 3);
+        buffer.position(3);
+        buffer.put(encoded);
+        buffer.position(3);
+
+        assertEquals(Collections.singletonList(task), TaskCodec.decode(buffer));
+    }
+
+    @Test(expected = EOFException.class)
+    public void decode_truncatedStream_fails() throws IOException {
+        byte[] bytes = TaskCodec.encode(Collections.singletonList(new Task("Title1", null)));
+
+        TaskCodec.decode(Arrays.copyOf(bytes, bytes.length - 1));
+    }
+
+    @Test
+    public void decode_stringLongerThanTheBuffer_fails() {
+        try {
+            TaskCodec.decode(streamWithStringLength(Integer.MAX_VALUE));
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("length"));
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void reader_stringLongerThanTheStream_failsWithoutAllocatingIt() throws IOException {
+        byte[] bytes = streamWithStringLength(Integer.MAX_VALUE);
+
+        new TaskCodec.Reader(new ByteArrayInputStream(bytes)).read();
+    }
+
+    @Test
+    public void decode_unknownVersion_fails() {
+        byte[] bytes = TaskCodec.encode(Collections.<Task>emptyList());
+        bytes[2] = (byte) (TaskCodec.FORMAT_VERSION + 1);
+
+        try {
+            TaskCodec.decode(bytes);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("version"));
+        }
+    }
+
+    /**
+     * @return a stream whose first task has a string id of {@code length} bytes, followed by
+     * only a few of them
+     */
+    private static byte[] streamWithStringLength(int length) {
+        byte[] header = TaskCodec.encode(Collections.<Task>emptyList());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // The header without the end of the stream, then a task with only an id.
+        bytes.write(header, 0, header.length - 1);
+        bytes.write(1);
+        long value = (long) length << 1;
+        while ((value & ~0x7fL) != 0) {
+            bytes.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        bytes.write((int) value);
+        bytes.write(new byte[100], 0, 100);
+        return bytes.toByteArray();
+    }
+}
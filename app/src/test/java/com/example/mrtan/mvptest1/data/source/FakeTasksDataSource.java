@@ -0,0 +1,267 @@
+package com.example.mrtan.mvptest1.data.source;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.tasks.TasksFilterType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementation of a data source that keeps the tasks in memory and calls back synchronously,
+ * on the calling thread. It is safe to use from several threads.
+ */
+public class FakeTasksDataSource implements TasksDataSource {
+
+    private final Map<String, Task> mTasks = new LinkedHashMap<>();
+
+    private long mSyncToken = TaskChanges.NO_TOKEN;
+
+    @Override
+    public void getTasks(@NonNull LoadTasksCallback callback) {
+        getTasks(TasksFilterType.ALL_TASKS, callback);
+    }
+
+    @Override
+    public void getTasks(@NonNull TasksFilterType filter, @NonNull LoadTasksCallback callback) {
+        List<Task> tasks;
+        synchronized (mTasks) {
+            if (mTasks.isEmpty()) {
+                tasks = null;
+            } else {
+                tasks = TaskPaging.filter(mTasks.values(), filter);
+            }
+        }
+        if (tasks == null) {
+            callback.onDataNotAvailable();
+        } else {
+            callback.onTaskLoaded(tasks);
+        }
+    }
+
+    @Override
+    public void getTasks(@NonNull TasksFilterType filter, @Nullable String afterTaskId,
+                         int pageSize, @NonNull LoadTasksCallback callback) {
+        List<Task> tasks;
+        synchronized (mTasks) {
+            if (mTasks.isEmpty() && afterTaskId == null) {
+                tasks = null;
+            } else {
+                tasks = TaskPaging.page(mTasks.values(), filter, afterTaskId, pageSize);
+            }
+        }
+        if (tasks == null) {
+            callback.onDataNotAvailable();
+        } else {
+            callback.onTaskLoaded(tasks);
+        }
+    }
+
+    @Override
+    public void getTask(@NonNull String taskId, @NonNull GetTaskCallback callback) {
+        Task task;
+        synchronized (mTasks) {
+            task = mTasks.get(taskId);
+        }
+        if (task == null) {
+            callback.onDataNotAvailable();
+        } else {
+            callback.onTaskLoaded(task);
+        }
+    }
+
+    @Override
+    public void searchTasks(@NonNull String query, @Nullable String afterTaskId, int pageSize,
+                            @NonNull LoadTasksCallback callback) {
+        List<Task> results;
+        synchronized (mTasks) {
+            results = new TaskSearch(mTasks.values()).search(query);
+        }
+        List<Task> page = TaskPaging.page(results, afterTaskId, pageSize);
+        if (page == null) {
+            callback.onDataNotAvailable();
+        } else {
+            callback.onTaskLoaded(page);
+        }
+    }
+
+    @Override
+    public void saveTask(@NonNull Task task) {
+        synchronized (mTasks) {
+            mTasks.put(task.getId(), task);
+        }
+    }
+
+    @Override
+    public void saveTasks(@NonNull List<Task> tasks) {
+        synchronized (mTasks) {
+            for (Task task : tasks) {
+                mTasks.put(task.getId(), task);
+            }
+        }
+    }
+
+    @Override
+    public void completeTask(@NonNull Task task) {
+        saveTask(new Task(task.getTitle(), task.getDescription(), task.getId(), true));
+    }
+
+    @Override
+    public void completeTask(@NonNull String taskId) {
+        synchronized (mTasks) {
+            Task task = mTasks.get(taskId);
+            if (task != null) {
+                completeTask(task);
+            }
+        }
+    }
+
+    @Override
+    public void activateTask(@NonNull Task task) {
+        saveTask(new Task(task.getTitle(), task.getDescription(), task.getId()));
+    }
+
+    @Override
+    public void activateTask(@NonNull String taskId) {
+        synchronized (mTasks) {
+            Task task = mTasks.get(taskId);
+            if (task != null) {
+                activateTask(task);
+            }
+        }
+    }
+
+    @Override
+    public void completeTasks(@NonNull Collection<String> taskIds) {
+        synchronized (mTasks) {
+            for (String taskId : taskIds) {
+                completeTask(taskId);
+            }
+        }
+    }
+
+    @Override
+    public void activateTasks(@NonNull Collection<String> taskIds) {
+        synchronized (mTasks) {
+            for (String taskId : taskIds) {
+                activateTask(taskId);
+            }
+        }
+    }
+
+    @Override
+    public void clearCompletedTasks() {
+        synchronized (mTasks) {
+            Iterator<Task> it = mTasks.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().isCompleted()) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void refreshTasks() {
+        // Not required because the {@link TaskRepository} handles the logic of refreshing the
+        // tasks from all the available data sources.
+    }
+
+    @Override
+    public void deleteTask(@NonNull String taskId) {
+        synchronized (mTasks) {
+            mTasks.remove(taskId);
+        }
+    }
+
+    @Override
+    public void deleteTasks(@NonNull Collection<String> taskIds) {
+        synchronized (mTasks) {
+            for (String taskId : taskIds) {
+                mTasks.remove(taskId);
+            }
+        }
+    }
+
+    @Override
+    public void deleteAllTasks() {
+        synchronized (mTasks) {
+            mTasks.clear();
+        }
+    }
+
+    /**
+     * Changes aren't tracked, every sync is a full resync.
+     */
+    @Override
+    public void getChanges(long sinceToken, @NonNull LoadChangesCallback callback) {
+        TaskChanges changes;
+        synchronized (mTasks) {
+            changes = new TaskChanges(sinceToken + 1, true, new ArrayList<>(mTasks.values()),
+                    Collections.<String>emptyList());
+        }
+        callback.onChangesLoaded(changes);
+    }
+
+    @Override
+    public void applyChanges(@NonNull TaskChanges changes) {
+        synchronized (mTasks) {
+            if (changes.isFullSync()) {
+                mTasks.clear();
+            }
+            for (Task task : changes.getUpdatedTasks()) {
+                mTasks.put(task.getId(), task);
+            }
+            for (String taskId : changes.getDeletedTaskIds()) {
+                mTasks.remove(taskId);
+            }
+            mSyncToken = changes.getToken();
+        }
+    }
+
+    @Override
+    public void getSyncToken(@NonNull GetSyncTokenCallback callback) {
+        long token;
+        synchronized (mTasks) {
+            token = mSyncToken;
+        }
+        callback.onSyncTokenLoaded(token);
+    }
+
+    @Override
+    public void getStatistics(@NonNull GetStatisticsCallback callback) {
+        int total;
+        int completed = 0;
+        synchronized (mTasks) {
+            total = mTasks.size();
+            for (Task task : mTasks.values()) {
+                if (task.isCompleted()) {
+                    completed++;
+                }
+            }
+        }
+        callback.onStatisticsLoaded(new TaskStatistics(total, completed,
+                Collections.<Integer, Integer>emptyMap()));
+    }
+
+    @Override
+    public void getTasksSnapshot(@NonNull LoadTasksCallback callback) {
+        callback.onDataNotAvailable();
+    }
+
+    /**
+     * Returns a copy of the stored tasks, keyed by id.
+     */
+    public Map<String, Task> getTasksById() {
+        synchronized (mTasks) {
+            return new LinkedHashMap<>(mTasks);
+        }
+    }
+}
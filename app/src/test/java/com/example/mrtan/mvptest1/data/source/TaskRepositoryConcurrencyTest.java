@@ -0,0 +1,182 @@
+package com.example.mrtan.mvptest1.data.source;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.tasks.TasksFilterType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Hammers a {@link TaskRepository} from several threads at once and checks that the cache ends up
+ * consistent with the local data source.
+ */
+public class TaskRepositoryConcurrencyTest {
+
+    private static final int THREADS = 8;
+
+    private static final int OPERATIONS_PER_THREAD = 5000;
+
+    private static final int TASK_IDS = 200;
+
+    private FakeTasksDataSource mRemoteDataSource;
+
+    private FakeTasksDataSource mLocalDataSource;
+
+    private TaskRepository mTaskRepository;
+
+    @Before
+    public void setUp() {
+        mRemoteDataSource = new FakeTasksDataSource();
+        mLocalDataSource = new FakeTasksDataSource();
+        mTaskRepository = TaskRepository.getInstance(mRemoteDataSource, mLocalDataSource);
+
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < TASK_IDS / 2; i++) {
+            tasks.add(new Task("Title" + i, "Description" + i, "id" + i));
+        }
+        mTaskRepository.saveTasks(tasks);
+        // Loads the cache so that the concurrent readers start on the lock-free path.
+        mTaskRepository.getTasks(new RecordingLoadTasksCallback(new AtomicReference<Throwable>()));
+    }
+
+    @After
+    public void tearDown() {
+        TaskRepository.destroyInstance();
+    }
+
+    @Test
+    public void concurrentReadsAndWrites_leaveCacheConsistentWithLocalDataSource()
+            throws Exception {
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            final long seed = t;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        Random random = new Random(seed);
+                        for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                            runRandomOperation(random, failure);
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        assertNull(failure.get());
+
+        // At quiescence a full load must match the local data source, ids and completed flags.
+        RecordingLoadTasksCallback callback = new RecordingLoadTasksCallback(failure);
+        mTaskRepository.getTasks(callback);
+        assertNull(failure.get());
+        Map<String, Task> expected = mLocalDataSource.getTasksById();
+        List<Task> loaded = callback.mTasks != null ? callback.mTasks : new ArrayList<Task>();
+        assertEquals(expected.size(), loaded.size());
+        for (Task task : loaded) {
+            assertEquals(expected.get(task.getId()), task);
+            assertEquals(expected.get(task.getId()).isCompleted(), task.isCompleted());
+        }
+        for (Task task : mTaskRepository.mCachedTasks.getTasks()) {
+            assertEquals(expected.get(task.getId()), task);
+            assertEquals(expected.get(task.getId()).isCompleted(), task.isCompleted());
+        }
+    }
+
+    private void runRandomOperation(Random random, AtomicReference<Throwable> failure) {
+        String id = "id" + random.nextInt(TASK_IDS);
+        switch (random.nextInt(9)) {
+            case 0:
+                mTaskRepository.saveTask(new Task("Title", "Description", id));
+                break;
+            case 1:
+                mTaskRepository.completeTask(id);
+                break;
+            case 2:
+                mTaskRepository.activateTask(id);
+                break;
+            case 3:
+                mTaskRepository.deleteTask(id);
+                break;
+            case 4:
+                mTaskRepository.refreshTasks();
+                break;
+            case 5:
+                mTaskRepository.getTask(id, new TasksDataSource.GetTaskCallback() {
+                    @Override
+                    public void onTaskLoaded(Task task) {
+                    }
+
+                    @Override
+                    public void onDataNotAvailable() {
+                    }
+                });
+                break;
+            case 6:
+                mTaskRepository.getTasks(TasksFilterType.ACTIVE_TASKS,
+                        new RecordingLoadTasksCallback(failure));
+                break;
+            case 7:
+                mTaskRepository.getTasks(TasksFilterType.COMPLETED_TASKS, null, 20,
+                        new RecordingLoadTasksCallback(failure));
+                break;
+            default:
+                mTaskRepository.getTasks(new RecordingLoadTasksCallback(failure));
+                break;
+        }
+    }
+
+    /**
+     * Keeps the loaded tasks and records a failure if they contain the same id twice.
+     */
+    private static class RecordingLoadTasksCallback implements TasksDataSource.LoadTasksCallback {
+
+        private final AtomicReference<Throwable> mFailure;
+
+        List<Task> mTasks;
+
+        RecordingLoadTasksCallback(AtomicReference<Throwable> failure) {
+            mFailure = failure;
+        }
+
+        @Override
+        public void onTaskLoaded(List<Task> tasks) {
+            Set<String> ids = new HashSet<>();
+            for (Task task : tasks) {
+                if (!ids.add(task.getId())) {
+                    mFailure.compareAndSet(null,
+                            new AssertionError("Duplicate task id " + task.getId()));
+                }
+            }
+            mTasks = tasks;
+        }
+
+        @Override
+        public void onDataNotAvailable() {
+            mTasks = null;
+        }
+    }
+}
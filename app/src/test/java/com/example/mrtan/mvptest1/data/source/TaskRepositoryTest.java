@@ -0,0 +1,779 @@
+package com.example.mrtan.mvptest1.data.source;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.data.source.metrics.MetricsRegistry;
+import com.example.mrtan.mvptest1.tasks.TasksFilterType;
+import com.google.common.collect.Lists;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for the implementation of the in-memory repository with cache.
+ */
+public class TaskRepositoryTest {
+
+    private static final String TASK_ID = "id1";
+
+    private static final List<Task> TASKS = Lists.newArrayList(
+            new Task("Title1", "Description1", TASK_ID), new Task("Title2", "Description2"));
+
+    private TaskRepository mTaskRepository;
+
+    @Mock
+    private TasksDataSource mTasksRemoteDataSource;
+
+    @Mock
+    private TasksDataSource mTasksLocalDataSource;
+
+    @Mock
+    private TasksDataSource.LoadTasksCallback mLoadTasksCallback;
+
+    @Mock
+    private TasksDataSource.LoadTasksCallback mOtherLoadTasksCallback;
+
+    @Mock
+    private TasksDataSource.GetTaskCallback mGetTaskCallback;
+
+    @Mock
+    private TasksDataSource.GetTaskCallback mOtherGetTaskCallback;
+
+    @Captor
+    private ArgumentCaptor<TasksDataSource.LoadTasksCallback> mTasksCallbackCaptor;
+
+    @Captor
+    private ArgumentCaptor<TasksDataSource.GetTaskCallback> mTaskCallbackCaptor;
+
+    @Captor
+    private ArgumentCaptor<TasksDataSource.LoadChangesCallback> mChangesCallbackCaptor;
+
+    @Captor
+    private ArgumentCaptor<List<Task>> mTasksCaptor;
+
+    @Captor
+    private ArgumentCaptor<TasksDataSource.GetSyncTokenCallback> mSyncTokenCallbackCaptor;
+
+    @Mock
+    private TasksDataSource.GetStatisticsCallback mGetStatisticsCallback;
+
+    @Captor
+    private ArgumentCaptor<TasksDataSource.GetStatisticsCallback> mStatisticsCallbackCaptor;
+
+    @Captor
+    private ArgumentCaptor<TaskStatistics> mStatisticsCaptor;
+
+    @Mock
+    private TaskRepository.TasksObserver mTasksObserver;
+
+    @Mock
+    private TaskRepository.TaskObserver mTaskObserver;
+
+    /**
+     * Observer dispatches, run by {@link #runFrame()}.
+     */
+    private final List<Runnable> mFrames = new ArrayList<>();
+
+    @Before
+    public void setupTasksRepository() {
+        MockitoAnnotations.initMocks(this);
+
+        mTaskRepository = TaskRepository.getInstance(
+                mTasksRemoteDataSource, mTasksLocalDataSource);
+        mTaskRepository.setObserverExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mFrames.add(command);
+            }
+        });
+    }
+
+    @After
+    public void destroyRepositoryInstance() {
+        TaskRepository.destroyInstance();
+    }
+
+    @Test
+    public void getTasks_concurrentCallsShareOneLocalLoad() {
+        mTaskRepository.getTasks(mLoadTasksCallback);
+        mTaskRepository.getTasks(mOtherLoadTasksCallback);
+
+        verify(mTasksLocalDataSource).getTasks(mTasksCallbackCaptor.capture());
+        mTasksCallbackCaptor.getValue().onTaskLoaded(TASKS);
+
+        verify(mLoadTasksCallback).onTaskLoaded(TASKS);
+        verify(mOtherLoadTasksCallback).onTaskLoaded(TASKS);
+    }
+
+    @Test
+    public void getTasksWithDirtyCache_concurrentCallsShareOneRemoteLoad() {
+        mTaskRepository.refreshTasks();
+        mTaskRepository.getTasks(mLoadTasksCallback);
+        mTaskRepository.getTasks(mOtherLoadTasksCallback);
+        setLocalSyncToken(TaskChanges.NO_TOKEN);
+
+        TaskChanges changes = new TaskChanges(1, true, TASKS, Collections.<String>emptyList());
+        verify(mTasksRemoteDataSource).getChanges(eq(TaskChanges.NO_TOKEN),
+                mChangesCallbackCaptor.capture());
+        mChangesCallbackCaptor.getValue().onChangesLoaded(changes);
+
+        // The changes are applied once for both calls
+        verify(mTasksLocalDataSource).applyChanges(changes);
+        verify(mLoadTasksCallback).onTaskLoaded(TASKS);
+        verify(mOtherLoadTasksCallback).onTaskLoaded(TASKS);
+    }
+
+    @Test
+    public void getTasks_refreshDuringRemoteLoad_startsAnotherLoad() {
+        mTaskRepository.refreshTasks();
+        mTaskRepository.getTasks(mLoadTasksCallback);
+        setLocalSyncToken(TaskChanges.NO_TOKEN);
+
+        // The load in flight started before this refresh, so it can't answer the next call
+        mTaskRepository.refreshTasks();
+        mTaskRepository.getTasks(mOtherLoadTasksCallback);
+
+        verify(mTasksRemoteDataSource, times(2)).getChanges(eq(TaskChanges.NO_TOKEN),
+                any(TasksDataSource.LoadChangesCallback.class));
+    }
+
+    @Test
+    public void getTasksWithDirtyCache_appliesOnlyChangesSinceLastSync() {
+        mTaskRepository.refreshTasks();
+        mTaskRepository.getTasks(mLoadTasksCallback);
+        setLocalSyncToken(5);
+
+        Task updatedTask = new Task("Title1", "Updated", TASK_ID, true, 7);
+        TaskChanges changes = new TaskChanges(8, false, Lists.newArrayList(updatedTask),
+                Lists.newArrayList(TASKS.get(1).getId()));
+        verify(mTasksRemoteDataSource).getChanges(eq(5L), mChangesCallbackCaptor.capture());
+        mChangesCallbackCaptor.getValue().onChangesLoaded(changes);
+
+        // Only the changes are written, the local tasks aren't rewritten
+        verify(mTasksLocalDataSource).applyChanges(changes);
+        verify(mTasksLocalDataSource, never()).deleteAllTasks();
+        verify(mTasksLocalDataSource, never()).saveTasks(anyListOf(Task.class));
+
+        // The cache isn't complete, so the tasks are loaded from the local data source
+        verify(mTasksLocalDataSource).getTasks(mTasksCallbackCaptor.capture());
+        mTasksCallbackCaptor.getValue().onTaskLoaded(Lists.newArrayList(updatedTask));
+        verify(mLoadTasksCallback).onTaskLoaded(Lists.newArrayList(updatedTask));
+
+        // The next sync starts from the new token
+        mTaskRepository.refreshTasks();
+        mTaskRepository.getTasks(mOtherLoadTasksCallback);
+        verify(mTasksRemoteDataSource).getChanges(eq(8L),
+                any(TasksDataSource.LoadChangesCallback.class));
+    }
+
+    @Test
+    public void getTasksWithDirtyCache_completeCacheAnsweredAfterDelta() {
+        mTaskRepository.refreshTasks();
+        mTaskRepository.getTasks(mLoadTasksCallback);
+        setLocalSyncToken(TaskChanges.NO_TOKEN);
+        verify(mTasksRemoteDataSource).getChanges(eq(TaskChanges.NO_TOKEN),
+                mChangesCallbackCaptor.capture());
+        mChangesCallbackCaptor.getValue().onChangesLoaded(
+                new TaskChanges(2, true, TASKS, Collections.<String>emptyList()));
+
+        mTaskRepository.refreshTasks();
+        mTaskRepository.getTasks(mOtherLoadTasksCallback);
+        verify(mTasksRemoteDataSource).getChanges(eq(2L), mChangesCallbackCaptor.capture());
+        mChangesCallbackCaptor.getValue().onChangesLoaded(new TaskChanges(3, false,
+                Collections.<Task>emptyList(), Lists.newArrayList(TASKS.get(1).getId())));
+
+        verify(mOtherLoadTasksCallback).onTaskLoaded(Lists.newArrayList(TASKS.get(0)));
+        verify(mTasksLocalDataSource, never())
+                .getTasks(any(TasksDataSource.LoadTasksCallback.class));
+    }
+
+    @Test
+    public void getTask_concurrentCallsForSameIdShareOneLoad() {
+        mTaskRepository.getTask(TASK_ID, mGetTaskCallback);
+        mTaskRepository.getTask(TASK_ID, mOtherGetTaskCallback);
+
+        verify(mTasksLocalDataSource).getTask(eq(TASK_ID), mTaskCallbackCaptor.capture());
+        mTaskCallbackCaptor.getValue().onDataNotAvailable();
+
+        verify(mTasksRemoteDataSource).getTask(eq(TASK_ID), mTaskCallbackCaptor.capture());
+        mTaskCallbackCaptor.getValue().onTaskLoaded(TASKS.get(0));
+
+        verify(mGetTaskCallback).onTaskLoaded(TASKS.get(0));
+        verify(mOtherGetTaskCallback).onTaskLoaded(TASKS.get(0));
+    }
+
+    @Test
+    public void getTask_loadCompleted_nextMissStartsNewLoad() {
+        mTaskRepository.getTask(TASK_ID, mGetTaskCallback);
+        verify(mTasksLocalDataSource).getTask(eq(TASK_ID), mTaskCallbackCaptor.capture());
+        mTaskCallbackCaptor.getValue().onDataNotAvailable();
+        verify(mTasksRemoteDataSource).getTask(eq(TASK_ID), mTaskCallbackCaptor.capture());
+        mTaskCallbackCaptor.getValue().onDataNotAvailable();
+
+        mTaskRepository.getTask(TASK_ID, mOtherGetTaskCallback);
+
+        verify(mGetTaskCallback).onDataNotAvailable();
+        verify(mTasksLocalDataSource, times(2))
+                .getTask(eq(TASK_ID), any(TasksDataSource.GetTaskCallback.class));
+    }
+
+    @Test
+    public void staleWhileRevalidate_deliversLocalTasksThenChangedTasks() {
+        mTaskRepository.setStaleWhileRevalidate(true);
+        mTaskRepository.getTasks(mLoadTasksCallback);
+
+        // Local tasks are delivered without waiting for the remote data source
+        verify(mTasksLocalDataSource).getTasks(mTasksCallbackCaptor.capture());
+        mTasksCallbackCaptor.getValue().onTaskLoaded(TASKS);
+        verify(mLoadTasksCallback).onTaskLoaded(TASKS);
+
+        // Never synced, so they are revalidated
+        setLocalSyncToken(3);
+        Task completedTask = new Task("Title1", "Description1", TASK_ID, true, 4);
+        verify(mTasksRemoteDataSource).getChanges(eq(3L), mChangesCallbackCaptor.capture());
+        mChangesCallbackCaptor.getValue().onChangesLoaded(new TaskChanges(4, false,
+                Lists.newArrayList(completedTask), Collections.<String>emptyList()));
+
+        verify(mLoadTasksCallback, times(2)).onTaskLoaded(mTasksCaptor.capture());
+        List<Task> revalidatedTasks = mTasksCaptor.getAllValues().get(1);
+        assertEquals(Lists.newArrayList(completedTask, TASKS.get(1)), revalidatedTasks);
+        assertTrue(revalidatedTasks.get(0).isCompleted());
+    }
+
+    @Test
+    public void staleWhileRevalidate_unchangedTasks_deliveredOnce() {
+        mTaskRepository.setStaleWhileRevalidate(true);
+        mTaskRepository.getTasks(mLoadTasksCallback);
+        verify(mTasksLocalDataSource).getTasks(mTasksCallbackCaptor.capture());
+        mTasksCallbackCaptor.getValue().onTaskLoaded(TASKS);
+
+        setLocalSyncToken(3);
+        verify(mTasksRemoteDataSource).getChanges(eq(3L), mChangesCallbackCaptor.capture());
+        mChangesCallbackCaptor.getValue().onChangesLoaded(new TaskChanges(3, false,
+                Collections.<Task>emptyList(), Collections.<String>emptyList()));
+
+        verify(mLoadTasksCallback, times(1)).onTaskLoaded(anyListOf(Task.class));
+    }
+
+    @Test
+    public void staleWhileRevalidate_freshCache_notRevalidated() {
+        mTaskRepository.setStaleWhileRevalidate(true);
+        mTaskRepository.getTasks(mLoadTasksCallback);
+        verify(mTasksLocalDataSource).getTasks(mTasksCallbackCaptor.capture());
+        mTasksCallbackCaptor.getValue().onTaskLoaded(TASKS);
+        setLocalSyncToken(3);
+        verify(mTasksRemoteDataSource).getChanges(eq(3L), mChangesCallbackCaptor.capture());
+        mChangesCallbackCaptor.getValue().onChangesLoaded(new TaskChanges(3, false,
+                Collections.<Task>emptyList(), Collections.<String>emptyList()));
+
+        mTaskRepository.getTasks(mOtherLoadTasksCallback);
+
+        // Answered from the cache, within the TTL of the sync
+        verify(mOtherLoadTasksCallback).onTaskLoaded(TASKS);
+        verify(mTasksRemoteDataSource, times(1)).getChanges(anyLong(),
+                any(TasksDataSource.LoadChangesCallback.class));
+    }
+
+    @Test
+    public void staleWhileRevalidate_filteredCachedTasks_revalidated() {
+        loadTasksIntoCache();
+        mTaskRepository.setStaleWhileRevalidate(true);
+
+        mTaskRepository.getTasks(TasksFilterType.ACTIVE_TASKS, mOtherLoadTasksCallback);
+
+        verify(mOtherLoadTasksCallback).onTaskLoaded(TASKS);
+        setLocalSyncToken(3);
+        verify(mTasksRemoteDataSource).getChanges(eq(3L), mChangesCallbackCaptor.capture());
+        mChangesCallbackCaptor.getValue().onChangesLoaded(new TaskChanges(4, false,
+                Lists.newArrayList(new Task("Title1", "Description1", TASK_ID, true, 4)),
+                Collections.<String>emptyList()));
+        verify(mOtherLoadTasksCallback).onTaskLoaded(Lists.newArrayList(TASKS.get(1)));
+    }
+
+    @Test
+    public void staleWhileRevalidate_cachedPage_revalidatedAsTheSamePage() {
+        loadTasksIntoCache();
+        mTaskRepository.setStaleWhileRevalidate(true);
+
+        mTaskRepository.getTasks(TasksFilterType.ALL_TASKS, null, 1, mOtherLoadTasksCallback);
+
+        verify(mOtherLoadTasksCallback).onTaskLoaded(Lists.newArrayList(TASKS.get(0)));
+        setLocalSyncToken(3);
+        Task editedTask = new Task("Edited", "Description1", TASK_ID, false, 4);
+        verify(mTasksRemoteDataSource).getChanges(eq(3L), mChangesCallbackCaptor.capture());
+        mChangesCallbackCaptor.getValue().onChangesLoaded(new TaskChanges(4, false,
+                Lists.newArrayList(editedTask), Collections.<String>emptyList()));
+        verify(mOtherLoadTasksCallback).onTaskLoaded(Lists.newArrayList(editedTask));
+        verify(mOtherLoadTasksCallback, times(2)).onTaskLoaded(anyListOf(Task.class));
+    }
+
+    @Test
+    public void staleWhileRevalidate_filteredReadAfterRefresh_answeredFromCacheFirst() {
+        loadTasksIntoCache();
+        mTaskRepository.setStaleWhileRevalidate(true);
+        mTaskRepository.refreshTasks();
+
+        mTaskRepository.getTasks(TasksFilterType.ACTIVE_TASKS, mOtherLoadTasksCallback);
+
+        // Answered before the remote data source, then revalidated
+        verify(mOtherLoadTasksCallback).onTaskLoaded(TASKS);
+        setLocalSyncToken(3);
+        verify(mTasksRemoteDataSource).getChanges(eq(3L), mChangesCallbackCaptor.capture());
+        mChangesCallbackCaptor.getValue().onChangesLoaded(new TaskChanges(4, false,
+                Collections.<Task>emptyList(), Lists.newArrayList(TASK_ID)));
+        verify(mOtherLoadTasksCallback).onTaskLoaded(Lists.newArrayList(TASKS.get(1)));
+    }
+
+    @Test
+    public void staleWhileRevalidate_pagedReadAfterRefresh_answeredFromCacheFirst() {
+        loadTasksIntoCache();
+        mTaskRepository.setStaleWhileRevalidate(true);
+        mTaskRepository.refreshTasks();
+
+        mTaskRepository.getTasks(TasksFilterType.ALL_TASKS, TASK_ID, 1, mOtherLoadTasksCallback);
+
+        verify(mOtherLoadTasksCallback).onTaskLoaded(Lists.newArrayList(TASKS.get(1)));
+        setLocalSyncToken(3);
+        Task editedTask = new Task("Edited", "Description2", TASKS.get(1).getId(), false, 4);
+        verify(mTasksRemoteDataSource).getChanges(eq(3L), mChangesCallbackCaptor.capture());
+        mChangesCallbackCaptor.getValue().onChangesLoaded(new TaskChanges(4, false,
+                Lists.newArrayList(editedTask), Collections.<String>emptyList()));
+        verify(mOtherLoadTasksCallback).onTaskLoaded(Lists.newArrayList(editedTask));
+    }
+
+    @Test
+    public void filteredReadAfterRefresh_waitsForRemoteByDefault() {
+        loadTasksIntoCache();
+        mTaskRepository.refreshTasks();
+
+        mTaskRepository.getTasks(TasksFilterType.ACTIVE_TASKS, mOtherLoadTasksCallback);
+
+        verify(mOtherLoadTasksCallback, never()).onTaskLoaded(anyListOf(Task.class));
+    }
+
+    @Test
+    public void filteredCachedTasks_notRevalidatedByDefault() {
+        loadTasksIntoCache();
+
+        mTaskRepository.getTasks(TasksFilterType.ACTIVE_TASKS, mOtherLoadTasksCallback);
+
+        verify(mOtherLoadTasksCallback).onTaskLoaded(TASKS);
+        verify(mTasksRemoteDataSource, never()).getChanges(anyLong(),
+                any(TasksDataSource.LoadChangesCallback.class));
+    }
+
+    @Test
+    public void observeTasks_burstOfChanges_deliveredOncePerFrame() {
+        loadTasksIntoCache();
+        mTaskRepository.observeTasks(TasksFilterType.ALL_TASKS, mTasksObserver);
+        verify(mTasksObserver).onTasksChanged(TASKS);
+
+        Task newTask = new Task("Title3", "Description3");
+        mTaskRepository.completeTask(TASKS.get(0));
+        mTaskRepository.completeTask(TASKS.get(1));
+        mTaskRepository.saveTask(newTask);
+
+        // One dispatch for the three changes, with the tasks at the end of the frame
+        assertEquals(1, mFrames.size());
+        runFrame();
+        verify(mTasksObserver, times(2)).onTasksChanged(mTasksCaptor.capture());
+        List<Task> tasks = mTasksCaptor.getAllValues().get(1);
+        assertEquals(Lists.newArrayList(TASKS.get(0), TASKS.get(1), newTask), tasks);
+        assertTrue(tasks.get(0).isCompleted());
+        assertTrue(tasks.get(1).isCompleted());
+    }
+
+    @Test
+    public void observeTasks_filteredTasksUnchanged_notDeliveredAgain() {
+        loadTasksIntoCache();
+        mTaskRepository.observeTasks(TasksFilterType.COMPLETED_TASKS, mTasksObserver);
+
+        mTaskRepository.saveTask(new Task("Title3", "Description3"));
+        runFrame();
+
+        verify(mTasksObserver, times(1)).onTasksChanged(anyListOf(Task.class));
+    }
+
+    @Test
+    public void observeTasks_unsubscribed_notDelivered() {
+        loadTasksIntoCache();
+        TaskRepository.Subscription subscription =
+                mTaskRepository.observeTasks(TasksFilterType.ALL_TASKS, mTasksObserver);
+
+        subscription.unsubscribe();
+        mTaskRepository.completeTask(TASKS.get(0));
+
+        assertTrue(mFrames.isEmpty());
+        verify(mTasksObserver, times(1)).onTasksChanged(anyListOf(Task.class));
+    }
+
+    @Test
+    public void observeTask_completedThenCleared() {
+        loadTasksIntoCache();
+        mTaskRepository.observeTask(TASK_ID, mTaskObserver);
+        reset(mTaskObserver);
+
+        mTaskRepository.completeTask(TASKS.get(0));
+        runFrame();
+        ArgumentCaptor<Task> taskCaptor = ArgumentCaptor.forClass(Task.class);
+        verify(mTaskObserver).onTaskChanged(taskCaptor.capture());
+        assertTrue(taskCaptor.getValue().isCompleted());
+
+        mTaskRepository.clearCompletedTasks();
+        runFrame();
+        verify(mTaskObserver).onDataNotAvailable();
+    }
+
+    @Test
+    public void observeTasks_incompleteCache_loadsThroughRepository() {
+        mTaskRepository.observeTasks(TasksFilterType.ACTIVE_TASKS, mTasksObserver);
+
+        verify(mTasksLocalDataSource).getTasks(eq(TasksFilterType.ACTIVE_TASKS),
+                mTasksCallbackCaptor.capture());
+        mTasksCallbackCaptor.getValue().onTaskLoaded(TASKS);
+
+        verify(mTasksObserver).onTasksChanged(TASKS);
+        assertFalse(mTaskRepository.mCachedTasks.isComplete());
+    }
+
+    @Test
+    public void searchTasks_completeCache_searchedInMemory() {
+        loadTasksIntoCache();
+
+        mTaskRepository.searchTasks("title2", null, 10, mOtherLoadTasksCallback);
+
+        verify(mOtherLoadTasksCallback).onTaskLoaded(Lists.newArrayList(TASKS.get(1)));
+        verify(mTasksLocalDataSource, never()).searchTasks(any(String.class), any(String.class),
+                any(Integer.class), any(TasksDataSource.LoadTasksCallback.class));
+    }
+
+    @Test
+    public void searchTasks_completeCache_anchorNoLongerMatches_dataNotAvailable() {
+        loadTasksIntoCache();
+
+        mTaskRepository.searchTasks("title2", TASK_ID, 10, mOtherLoadTasksCallback);
+
+        verify(mOtherLoadTasksCallback).onDataNotAvailable();
+        verify(mOtherLoadTasksCallback, never()).onTaskLoaded(anyListOf(Task.class));
+    }
+
+    @Test
+    public void pagedRead_anchorNotAcceptedByFilter_pagedByLocalDataSource() {
+        loadTasksIntoCache();
+
+        mTaskRepository.getTasks(TasksFilterType.COMPLETED_TASKS, TASK_ID, 10,
+                mOtherLoadTasksCallback);
+
+        verify(mTasksLocalDataSource).getTasks(eq(TasksFilterType.COMPLETED_TASKS), eq(TASK_ID),
+                eq(10), any(TasksDataSource.LoadTasksCallback.class));
+    }
+
+    @Test
+    public void pagedRead_deletedAnchor_dataNotAvailableWithoutRemoteLoad() {
+        loadTasksIntoCache();
+
+        mTaskRepository.getTasks(TasksFilterType.ALL_TASKS, "deleted", 10,
+                mOtherLoadTasksCallback);
+        verify(mTasksLocalDataSource).getTasks(eq(TasksFilterType.ALL_TASKS), eq("deleted"),
+                eq(10), mTasksCallbackCaptor.capture());
+        mTasksCallbackCaptor.getValue().onDataNotAvailable();
+
+        verify(mOtherLoadTasksCallback).onDataNotAvailable();
+        verify(mTasksRemoteDataSource, never()).getChanges(anyLong(),
+                any(TasksDataSource.LoadChangesCallback.class));
+        verify(mTasksRemoteDataSource, never()).getTasks(
+                any(TasksDataSource.LoadTasksCallback.class));
+    }
+
+    @Test
+    public void searchTasks_incompleteCache_searchedByLocalDataSource() {
+        mTaskRepository.searchTasks("title", TASK_ID, 10, mLoadTasksCallback);
+
+        verify(mTasksLocalDataSource).searchTasks("title", TASK_ID, 10, mLoadTasksCallback);
+    }
+
+    @Test
+    public void getTasksSnapshot_coldStart_readFromLocalSnapshotWithoutCaching() {
+        mTaskRepository.getTasksSnapshot(mLoadTasksCallback);
+
+        verify(mTasksLocalDataSource).getTasksSnapshot(mLoadTasksCallback);
+        assertFalse(mTaskRepository.mCachedTasks.isComplete());
+    }
+
+    @Test
+    public void getTasksSnapshot_completeCache_answeredFromCache() {
+        loadTasksIntoCache();
+
+        mTaskRepository.getTasksSnapshot(mOtherLoadTasksCallback);
+
+        verify(mOtherLoadTasksCallback).onTaskLoaded(TASKS);
+        verify(mTasksLocalDataSource, never()).getTasksSnapshot(any(
+                TasksDataSource.LoadTasksCallback.class));
+    }
+
+    @Test
+    public void getStatistics_loadedOnce_thenCountedIncrementally() {
+        loadTasksIntoCache();
+        mTaskRepository.getStatistics(mGetStatisticsCallback);
+        verify(mTasksLocalDataSource).getStatistics(mStatisticsCallbackCaptor.capture());
+        mStatisticsCallbackCaptor.getValue().onStatisticsLoaded(
+                new TaskStatistics(2, 0, Collections.<Integer, Integer>emptyMap()));
+
+        mTaskRepository.completeTask(TASKS.get(0));
+        mTaskRepository.saveTask(new Task("Title3", "Description3"));
+        mTaskRepository.getStatistics(mGetStatisticsCallback);
+
+        verify(mGetStatisticsCallback, times(2)).onStatisticsLoaded(mStatisticsCaptor.capture());
+        TaskStatistics statistics = mStatisticsCaptor.getValue();
+        assertEquals(3, statistics.getTotalCount());
+        assertEquals(2, statistics.getActiveCount());
+        assertEquals(1, statistics.getCompletionsOn(
+                TaskStatistics.epochDay(System.currentTimeMillis())));
+        // Answered from the counters
+        verify(mTasksLocalDataSource, times(1))
+                .getStatistics(any(TasksDataSource.GetStatisticsCallback.class));
+    }
+
+    @Test
+    public void getStatistics_sameTaskTwiceInBatch_countedOnce() {
+        loadTasksIntoCache();
+        mTaskRepository.getStatistics(mGetStatisticsCallback);
+        verify(mTasksLocalDataSource).getStatistics(mStatisticsCallbackCaptor.capture());
+        mStatisticsCallbackCaptor.getValue().onStatisticsLoaded(
+                new TaskStatistics(2, 0, Collections.<Integer, Integer>emptyMap()));
+
+        mTaskRepository.saveTasks(Lists.newArrayList(
+                new Task("Title3", "Description3", "id3"),
+                new Task("Title3", "Description3", "id3", true)));
+        mTaskRepository.getStatistics(mGetStatisticsCallback);
+        mTaskRepository.deleteTasks(Lists.newArrayList(TASK_ID, TASK_ID));
+        mTaskRepository.getStatistics(mGetStatisticsCallback);
+
+        verify(mGetStatisticsCallback, times(3)).onStatisticsLoaded(mStatisticsCaptor.capture());
+        TaskStatistics saved = mStatisticsCaptor.getAllValues().get(1);
+        assertEquals(3, saved.getTotalCount());
+        assertEquals(2, saved.getActiveCount());
+        TaskStatistics deleted = mStatisticsCaptor.getAllValues().get(2);
+        assertEquals(2, deleted.getTotalCount());
+        assertEquals(1, deleted.getActiveCount());
+    }
+
+    @Test
+    public void getStatistics_writeOfUncachedTask_loadsAgain() {
+        mTaskRepository.getStatistics(mGetStatisticsCallback);
+        verify(mTasksLocalDataSource).getStatistics(mStatisticsCallbackCaptor.capture());
+        mStatisticsCallbackCaptor.getValue().onStatisticsLoaded(
+                new TaskStatistics(2, 0, Collections.<Integer, Integer>emptyMap()));
+
+        // Not in the cache, it may or may not exist
+        mTaskRepository.deleteTask(TASK_ID);
+        mTaskRepository.getStatistics(mGetStatisticsCallback);
+
+        verify(mTasksLocalDataSource, times(2))
+                .getStatistics(any(TasksDataSource.GetStatisticsCallback.class));
+    }
+
+    @Test
+    public void deleteTask_keepsRestOfCache_noReload() {
+        loadTasksIntoCache();
+
+        mTaskRepository.deleteTask(TASK_ID);
+        mTaskRepository.getTasks(mOtherLoadTasksCallback);
+
+        verify(mTasksRemoteDataSource).deleteTask(TASK_ID);
+        verify(mTasksLocalDataSource).deleteTask(TASK_ID);
+        verify(mOtherLoadTasksCallback).onTaskLoaded(Lists.newArrayList(TASKS.get(1)));
+        // Only the initial load
+        verify(mTasksLocalDataSource, times(1))
+                .getTasks(any(TasksDataSource.LoadTasksCallback.class));
+        assertTrue(mTaskRepository.mCachedTasks.isComplete());
+    }
+
+    @Test
+    public void registerMetrics_countsCacheHitsMissesAndRefreshes() {
+        MetricsRegistry registry = new MetricsRegistry();
+        mTaskRepository.registerMetrics(registry);
+
+        loadTasksIntoCache();
+        mTaskRepository.getTasks(mOtherLoadTasksCallback);
+        mTaskRepository.refreshTasks();
+        mTaskRepository.getTasks(mOtherLoadTasksCallback);
+
+        assertEquals(1, registry.getValue("repository.cacheMisses"));
+        assertEquals(1, registry.getValue("repository.cacheHits"));
+        assertEquals(1, registry.getValue("repository.cacheRefreshes"));
+        assertEquals(TASKS.size(), registry.getValue("cache.tasks"));
+    }
+
+    @Test
+    public void completeTasks_oneWriteToEachDataSource_oneCacheChange() {
+        loadTasksIntoCache();
+        List<String> taskIds = Lists.newArrayList(TASK_ID, TASKS.get(1).getId());
+        int generation = mTaskRepository.mCachedTasks.getGeneration();
+
+        mTaskRepository.completeTasks(taskIds);
+        mTaskRepository.getTasks(mOtherLoadTasksCallback);
+
+        verify(mTasksRemoteDataSource).completeTasks(taskIds);
+        verify(mTasksLocalDataSource).completeTasks(taskIds);
+        assertEquals(generation + 1, mTaskRepository.mCachedTasks.getGeneration());
+        assertTrue(mTaskRepository.mCachedTasks.peek(TASK_ID).isCompleted());
+        assertTrue(mTaskRepository.mCachedTasks.peek(TASKS.get(1).getId()).isCompleted());
+        assertTrue(mTaskRepository.mCachedTasks.isComplete());
+        verify(mTasksLocalDataSource, times(1))
+                .getTasks(any(TasksDataSource.LoadTasksCallback.class));
+    }
+
+    @Test
+    public void deleteTasks_oneWriteToEachDataSource_keepsRestOfCache() {
+        loadTasksIntoCache();
+        List<String> taskIds = Lists.newArrayList(TASK_ID, "unknown");
+        int generation = mTaskRepository.mCachedTasks.getGeneration();
+
+        mTaskRepository.deleteTasks(taskIds);
+        mTaskRepository.getTasks(mOtherLoadTasksCallback);
+
+        verify(mTasksRemoteDataSource).deleteTasks(taskIds);
+        verify(mTasksLocalDataSource).deleteTasks(taskIds);
+        assertEquals(generation + 1, mTaskRepository.mCachedTasks.getGeneration());
+        verify(mOtherLoadTasksCallback).onTaskLoaded(Lists.newArrayList(TASKS.get(1)));
+        assertTrue(mTaskRepository.mCachedTasks.isComplete());
+    }
+
+    @Test
+    public void deleteAllTasks_deletesFromBothDataSources() {
+        loadTasksIntoCache();
+
+        mTaskRepository.deleteAllTasks();
+        mTaskRepository.getTasks(mOtherLoadTasksCallback);
+
+        verify(mTasksRemoteDataSource).deleteAllTasks();
+        verify(mTasksLocalDataSource).deleteAllTasks();
+        verify(mTasksRemoteDataSource, never()).clearCompletedTasks();
+        verify(mTasksLocalDataSource, never()).clearCompletedTasks();
+        verify(mOtherLoadTasksCallback).onTaskLoaded(Collections.<Task>emptyList());
+        verify(mTasksLocalDataSource, times(1))
+                .getTasks(any(TasksDataSource.LoadTasksCallback.class));
+    }
+
+    @Test
+    public void getTask_remoteAnswersNull_dataNotAvailable() {
+        mTaskRepository.getTask(TASK_ID, mGetTaskCallback);
+        verify(mTasksLocalDataSource).getTask(eq(TASK_ID), mTaskCallbackCaptor.capture());
+        mTaskCallbackCaptor.getValue().onDataNotAvailable();
+        verify(mTasksRemoteDataSource).getTask(eq(TASK_ID), mTaskCallbackCaptor.capture());
+
+        mTaskCallbackCaptor.getValue().onTaskLoaded(null);
+
+        verify(mGetTaskCallback).onDataNotAvailable();
+        verify(mGetTaskCallback, never()).onTaskLoaded(any(Task.class));
+    }
+
+    @Test
+    public void completeTaskById_unknownTask_nothingWritten() {
+        mTaskRepository.completeTask(TASK_ID);
+        verify(mTasksLocalDataSource).getTask(eq(TASK_ID), mTaskCallbackCaptor.capture());
+        mTaskCallbackCaptor.getValue().onDataNotAvailable();
+        verify(mTasksRemoteDataSource).getTask(eq(TASK_ID), mTaskCallbackCaptor.capture());
+
+        mTaskCallbackCaptor.getValue().onTaskLoaded(null);
+
+        verify(mTasksRemoteDataSource, never()).completeTask(any(Task.class));
+        verify(mTasksLocalDataSource, never()).completeTask(any(Task.class));
+    }
+
+    @Test
+    public void completeAndActivateTask_keepVersionInCache() {
+        Task versioned = new Task("Title", "Description", TASK_ID, false, 7);
+
+        mTaskRepository.completeTask(versioned);
+        Task completed = mTaskRepository.mCachedTasks.peek(TASK_ID);
+        mTaskRepository.activateTask(completed);
+        Task active = mTaskRepository.mCachedTasks.peek(TASK_ID);
+
+        assertTrue(completed.isCompleted());
+        assertEquals(7, completed.getVersion());
+        assertFalse(active.isCompleted());
+        assertEquals(7, active.getVersion());
+    }
+
+    @Test
+    public void completeTasks_keepVersionInCache() {
+        mTaskRepository.saveTask(new Task("Title", "Description", TASK_ID, false, 7));
+
+        mTaskRepository.completeTasks(Lists.newArrayList(TASK_ID));
+
+        assertTrue(mTaskRepository.mCachedTasks.peek(TASK_ID).isCompleted());
+        assertEquals(7, mTaskRepository.mCachedTasks.peek(TASK_ID).getVersion());
+    }
+
+    @Test
+    public void getTask_otherTaskWrittenWhileLoading_cached() {
+        Task task = new Task("Title3", "Description3", "id3");
+        mTaskRepository.getTask("id3", mGetTaskCallback);
+        verify(mTasksLocalDataSource).getTask(eq("id3"), mTaskCallbackCaptor.capture());
+
+        mTaskRepository.deleteTask(TASK_ID);
+        mTaskCallbackCaptor.getValue().onTaskLoaded(task);
+        mTaskRepository.getTask("id3", mOtherGetTaskCallback);
+
+        verify(mOtherGetTaskCallback).onTaskLoaded(task);
+        verify(mTasksLocalDataSource, times(1)).getTask(eq("id3"),
+                any(TasksDataSource.GetTaskCallback.class));
+    }
+
+    @Test
+    public void getTask_sameTaskDeletedWhileLoading_notCached() {
+        mTaskRepository.getTask(TASK_ID, mGetTaskCallback);
+        verify(mTasksLocalDataSource).getTask(eq(TASK_ID), mTaskCallbackCaptor.capture());
+
+        mTaskRepository.deleteTask(TASK_ID);
+        mTaskCallbackCaptor.getValue().onTaskLoaded(TASKS.get(0));
+
+        assertFalse(mTaskRepository.mCachedTasks.contains(TASK_ID));
+    }
+
+    /**
+     * Fills the cache with {@link #TASKS} from the local data source.
+     */
+    private void loadTasksIntoCache() {
+        mTaskRepository.getTasks(mLoadTasksCallback);
+        verify(mTasksLocalDataSource).getTasks(mTasksCallbackCaptor.capture());
+        mTasksCallbackCaptor.getValue().onTaskLoaded(TASKS);
+        mFrames.clear();
+    }
+
+    private void runFrame() {
+        List<Runnable> frames = new ArrayList<>(mFrames);
+        mFrames.clear();
+        for (Runnable frame : frames) {
+            frame.run();
+        }
+    }
+
+    private void setLocalSyncToken(long token) {
+        verify(mTasksLocalDataSource).getSyncToken(mSyncTokenCallbackCaptor.capture());
+        mSyncTokenCallbackCaptor.getValue().onSyncTokenLoaded(token);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.mrtan.mvptest1.data.source;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the implementation of {@link TaskSearch}.
+ */
+public class TaskSearchTest {
+
+    private static final Task GROCERIES = new Task("Buy milk", "Groceries for the week", "id1");
+
+    private static final Task BRIDGE = new Task("Finish bridge", "Buy girders first", "id2");
+
+    private static final Task TOWER = new Task("Build tower", "No foundation required", "id3");
+
+    private final TaskSearch mSearch =
+            new TaskSearch(Lists.newArrayList(GROCERIES, BRIDGE, TOWER));
+
+    @Test
+    public void wordsMatchAsPrefixes_ignoringCase() {
+        assertEquals(Lists.newArrayList(TOWER), mSearch.search("TOW"));
+        assertEquals(Lists.newArrayList(GROCERIES, TOWER), mSearch.search("fo"));
+    }
+
+    @Test
+    public void allWordsMustMatch() {
+        assertEquals(Lists.newArrayList(BRIDGE), mSearch.search("buy gird"));
+        assertTrue(mSearch.search("buy tower").isEmpty());
+    }
+
+    @Test
+    public void titleHitsRankFirst() {
+        // "buy" is in the title of GROCERIES but only in the description of BRIDGE
+        List<Task> results = mSearch.search("bu");
+
+        assertEquals(Lists.newArrayList(GROCERIES, TOWER, BRIDGE), results);
+    }
+
+    @Test
+    public void tokenize_followsTheSimpleFtsTokenizer() {
+        // Non ASCII characters, punctuation included, are part of words and keep their case.
+        assertEquals(Lists.newArrayList("買菜，call", "Über", "x2", "café"),
+                TaskSearch.tokenize("買菜，CALL Über_x2 (Café)"));
+    }
+
+    @Test
+    public void mixedScripts_matchLikeTheLocalSearch() {
+        Task chinese = new Task("買菜，Call mom", "牛奶", "id4");
+        Task german = new Task("Überweisung", "über the bank", "id5");
+        TaskSearch search = new TaskSearch(Lists.newArrayList(chinese, german));
+
+        assertEquals(Lists.newArrayList(chinese), search.search("買菜"));
+        assertTrue(search.search("call").isEmpty());
+        assertEquals(Lists.newArrayList(german), search.search("Über"));
+        assertEquals(Lists.newArrayList(german), search.search("über"));
+    }
+
+    @Test
+    public void hitsAreDividedByTheTasksHitInTheirColumn() {
+        Task title = new Task("call", "", "id4");
+        Task description = new Task("", "call call call call call", "id5");
+        Task other = new Task("", "call", "id6");
+        TaskSearch search = new TaskSearch(Lists.newArrayList(description, other, title));
+
+        // title: 4 * 1 / 1, description: 1 * 5 / 2, other: 1 * 1 / 2
+        assertEquals(Lists.newArrayList(title, description, other), search.search("call"));
+    }
+
+    @Test
+    public void queryWithoutWords_matchesNothing() {
+        assertTrue(mSearch.search("  ,. ").isEmpty());
+    }
+
+    @Test
+    public void rankKey_ordersByScoreThenPosition() {
+        assertTrue(TaskSearch.rankKey(2f, 5) < TaskSearch.rankKey(1f, 0));
+        assertTrue(TaskSearch.rankKey(1f, 0) < TaskSearch.rankKey(1f, 1));
+        assertEquals(7, (int) TaskSearch.rankKey(0.5f, 7));
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.mrtan.mvptest1.data.source;
+
+import com.example.mrtan.mvptest1.data.Task;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the implementation of {@link TasksCache}.
+ */
+public class TasksCacheTest {
+
+    private TasksCache mCache;
+
+    @Before
+    public void setUp() {
+        mCache = new TasksCache(10, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void replaceAll_makesCacheComplete() {
+        mCache.replaceAll(createTasks(5));
+
+        assertTrue(mCache.isComplete());
+        assertEquals(5, mCache.size());
+    }
+
+    @Test
+    public void put_overEntryLimit_evictsLeastRecentlyUsedDownToNinetyPercent() {
+        List<Task> tasks = createTasks(10);
+        mCache.replaceAll(tasks);
+        // Touch the first task so it becomes the most recently used.
+        mCache.get(tasks.get(0).getId());
+
+        mCache.put(new Task("Title", "Description", "new"));
+
+        assertEquals(9, mCache.size());
+        assertEquals(2, mCache.evictionCount());
+        assertFalse(mCache.isComplete());
+        assertNotNull(mCache.get(tasks.get(0).getId()));
+        assertNull(mCache.get(tasks.get(1).getId()));
+        assertNull(mCache.get(tasks.get(2).getId()));
+        assertNotNull(mCache.get("new"));
+    }
+
+    @Test
+    public void put_overByteLimit_evicts() {
+        Task task = new Task("Title", "Description", "id");
+        int taskBytes = TasksCache.estimateSizeBytes(task);
+        mCache.setLimits(100, taskBytes * 3);
+
+        mCache.putAll(createTasks(4));
+
+        assertTrue(mCache.sizeBytes() <= taskBytes * 3);
+        assertTrue(mCache.evictionCount() > 0);
+    }
+
+    @Test
+    public void put_existingTask_keepsPositionAndUpdatesSize() {
+        mCache.replaceAll(createTasks(3));
+        long sizeBefore = mCache.sizeBytes();
+
+        mCache.put(new Task("A much longer title than before", "Description", "0"));
+
+        assertEquals("0", mCache.getTasks().get(0).getId());
+        assertTrue(mCache.sizeBytes() > sizeBefore);
+        assertEquals(3, mCache.size());
+    }
+
+    @Test
+    public void get_countsHitsAndMisses() {
+        mCache.replaceAll(createTasks(1));
+
+        mCache.get("0");
+        mCache.get("unknown");
+
+        assertEquals(1, mCache.hitCount());
+        assertEquals(1, mCache.missCount());
+    }
+
+    @Test
+    public void removeCompleted_removesOnlyCompletedTasks() {
+        mCache.put(new Task("Title1", "Description1", "1", true));
+        mCache.put(new Task("Title2", "Description2", "2"));
+
+        mCache.removeCompleted();
+
+        assertEquals(1, mCache.size());
+        assertNotNull(mCache.get("2"));
+    }
+
+    @Test
+    public void remove_keepsCacheComplete() {
+        List<Task> tasks = createTasks(5);
+        mCache.replaceAll(tasks);
+
+        mCache.remove(tasks.get(0).getId());
+
+        assertTrue(mCache.isComplete());
+        assertEquals(tasks.subList(1, 5), mCache.getTasks());
+    }
+
+    @Test
+    public void putIfUnchanged_otherTaskWritten_puts() {
+        long version = mCache.getVersion();
+        mCache.put(new Task("Title1", "Description1", "1"));
+
+        assertTrue(mCache.putIfUnchanged(new Task("Title2", "Description2", "2"), version));
+        assertNotNull(mCache.get("2"));
+    }
+
+    @Test
+    public void putIfUnchanged_sameTaskWrittenOrRemoved_skips() {
+        mCache.put(new Task("Title1", "Description1", "1"));
+        mCache.put(new Task("Title2", "Description2", "2"));
+        long version = mCache.getVersion();
+
+        mCache.put(new Task("Title1", "Updated", "1"));
+        mCache.remove("2");
+
+        assertFalse(mCache.putIfUnchanged(new Task("Title1", "Description1", "1"), version));
+        assertFalse(mCache.putIfUnchanged(new Task("Title2", "Description2", "2"), version));
+        assertEquals("Updated", mCache.get("1").getDescription());
+        assertNull(mCache.get("2"));
+    }
+
+    @Test
+    public void putIfUnchanged_afterEviction_keepsVersionOfEvictedTask() {
+        List<Task> tasks = createTasks(10);
+        mCache.replaceAll(tasks);
+        long version = mCache.getVersion();
+
+        // Evicts the two least recently used tasks, which didn't change
+        mCache.put(new Task("Title", "Description", "new"));
+
+        assertTrue(mCache.putIfUnchanged(tasks.get(0), version));
+    }
+
+    @Test
+    public void putIfUnchanged_afterClear_skips() {
+        long version = mCache.getVersion();
+
+        mCache.clear();
+
+        assertFalse(mCache.putIfUnchanged(new Task("Title1", "Description1", "1"), version));
+    }
+
+    private static List<Task> createTasks(int count) {
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add(new Task("Title" + i, "Description" + i, String.valueOf(i)));
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.mrtan.mvptest1.data.source.diagnostics;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.data.source.FakeTasksDataSource;
+import com.example.mrtan.mvptest1.data.source.TasksDataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for the implementation of {@link SlowCallTasksDataSource}.
+ */
+public class SlowCallTasksDataSourceTest {
+
+    private static final Task TASK = new Task("Title1", "Description1", "id1");
+
+    private static final long BLOCKING_MILLIS = 30;
+
+    @Mock
+    private SlowCallTasksDataSource.Listener mListener;
+
+    @Mock
+    private TasksDataSource.LoadTasksCallback mLoadTasksCallback;
+
+    private SlowCallTasksDataSource mSlowCallDataSource;
+
+    @Before
+    public void setupSlowCallDataSource() {
+        MockitoAnnotations.initMocks(this);
+        // Writes block, loads call back right away.
+        FakeTasksDataSource blockingWrites = new FakeTasksDataSource() {
+            @Override
+            public void saveTask(Task task) {
+                sleep(BLOCKING_MILLIS);
+                super.saveTask(task);
+            }
+        };
+        blockingWrites.saveTask(TASK);
+        mSlowCallDataSource = new SlowCallTasksDataSource(blockingWrites, "local",
+                BLOCKING_MILLIS / 2, 1000, mListener);
+    }
+
+    @Test
+    public void blockingCall_reportedWithCaller() {
+        mSlowCallDataSource.saveTask(TASK);
+
+        verify(mListener).onSlowCall(eq("local.saveTask"), anyLong(), eq(Thread.currentThread()),
+                any(Throwable.class));
+    }
+
+    @Test
+    public void fastLoad_notReported_andForwarded() {
+        mSlowCallDataSource.getTasks(mLoadTasksCallback);
+
+        verify(mLoadTasksCallback).onTaskLoaded(anyListOf(Task.class));
+        verify(mListener, never()).onSlowCall(any(String.class), anyLong(), any(Thread.class),
+                any(Throwable.class));
+        verify(mListener, never()).onSlowLoad(any(String.class), anyLong());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.mrtan.mvptest1.data.source.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the implementation of {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void noRecords_zero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentileMicros(99));
+        assertEquals(0, histogram.meanMicros());
+    }
+
+    @Test
+    public void smallLatencies_exact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 10; micros++) {
+            histogram.record(micros, TimeUnit.MICROSECONDS);
+        }
+
+        assertEquals(10, histogram.count());
+        assertEquals(5, histogram.percentileMicros(50));
+        assertEquals(10, histogram.percentileMicros(95));
+        assertEquals(10, histogram.maxMicros());
+    }
+
+    @Test
+    public void largeLatencies_withinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 1000; millis++) {
+            histogram.record(millis, TimeUnit.MILLISECONDS);
+        }
+
+        assertWithinError(500000, histogram.percentileMicros(50));
+        assertWithinError(950000, histogram.percentileMicros(95));
+        assertWithinError(990000, histogram.percentileMicros(99));
+        assertEquals(1000000, histogram.percentileMicros(100));
+    }
+
+    @Test
+    public void buckets_coverEveryValueInOrder() {
+        int previous = -1;
+        for (long micros = 0; micros < 1 << 20; micros++) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            assertTrue(bucket == previous || bucket == previous + 1);
+            assertTrue(micros <= LatencyHistogram.upperBoundOf(bucket));
+            previous = bucket;
+        }
+        LatencyHistogram.bucketOf(Long.MAX_VALUE);
+    }
+
+    private static void assertWithinError(long expected, long actual) {
+        assertTrue(actual + " not within 12.5% above " + expected,
+                actual >= expected && actual <= expected + expected / 8);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.mrtan.mvptest1.data.source.metrics;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.data.source.FakeTasksDataSource;
+import com.example.mrtan.mvptest1.data.source.TasksCache;
+import com.example.mrtan.mvptest1.data.source.TasksDataSource;
+import com.google.common.collect.Lists;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for the implementation of {@link MeteredTasksDataSource}.
+ */
+public class MeteredTasksDataSourceTest {
+
+    private static final List<Task> TASKS = Lists.newArrayList(
+            new Task("Title1", "Description1", "id1"), new Task("Title2", "Description2", "id2"));
+
+    private MetricsRegistry mRegistry;
+
+    private FakeTasksDataSource mFakeDataSource;
+
+    private MeteredTasksDataSource mMeteredDataSource;
+
+    @Mock
+    private TasksDataSource.LoadTasksCallback mLoadTasksCallback;
+
+    @Before
+    public void setupMeteredDataSource() {
+        MockitoAnnotations.initMocks(this);
+        mRegistry = new MetricsRegistry();
+        mFakeDataSource = new FakeTasksDataSource();
+        mMeteredDataSource = new MeteredTasksDataSource(mFakeDataSource, "local", mRegistry);
+    }
+
+    @Test
+    public void getTasks_recordsLatencyRowsAndBytes_andForwardsResult() {
+        mFakeDataSource.saveTasks(TASKS);
+
+        mMeteredDataSource.getTasks(mLoadTasksCallback);
+
+        verify(mLoadTasksCallback).onTaskLoaded(TASKS);
+        assertEquals(1, mRegistry.getHistogram("local.getTasks").count());
+        assertEquals(2, mRegistry.getValue("local.getTasks.rows"));
+        assertEquals(TasksCache.estimateSizeBytes(TASKS.get(0))
+                        + TasksCache.estimateSizeBytes(TASKS.get(1)),
+                mRegistry.getValue("local.getTasks.bytes"));
+    }
+
+    @Test
+    public void getTasks_noData_countedAsNotAvailable() {
+        mMeteredDataSource.getTasks(mLoadTasksCallback);
+
+        verify(mLoadTasksCallback).onDataNotAvailable();
+        assertEquals(1, mRegistry.getValue("local.getTasks.notAvailable"));
+        assertEquals(0, mRegistry.getValue("local.getTasks.rows"));
+    }
+
+    @Test
+    public void writes_recordedByMethod_andForwarded() {
+        mMeteredDataSource.saveTask(TASKS.get(0));
+        mMeteredDataSource.completeTasks(Lists.newArrayList("id1"));
+
+        assertEquals(1, mRegistry.getHistogram("local.saveTask").count());
+        assertEquals(1, mRegistry.getHistogram("local.completeTasks").count());
+        assertNull(mRegistry.getHistogram("local.deleteTask"));
+        List<String> report = mRegistry.report();
+        assertTrue(report.get(0).startsWith("local.completeTasks count=1"));
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.mrtan.mvptest1.data.source.outbox;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the implementation of {@link OutboxCoalescer}.
+ */
+public class OutboxCoalescerTest {
+
+    private static final Task TASK1 = new Task("Title1", "Description1", "id1");
+
+    private static final Task TASK2 = new Task("Title2", "Description2", "id2");
+
+    @Test
+    public void saveCompleteDeleteOfSameTask_collapseToDelete() {
+        OutboxOperation delete = OutboxOperation.delete(TASK1.getId());
+
+        List<OutboxOperation> coalesced = OutboxCoalescer.coalesce(Lists.newArrayList(
+                OutboxOperation.save(TASK1),
+                OutboxOperation.save(new Task("Title1", "Description1", "id1", true)),
+                delete));
+
+        assertEquals(1, coalesced.size());
+        assertSame(delete, coalesced.get(0));
+    }
+
+    @Test
+    public void lastSaveWins_andSavesComeBeforeDeletes() {
+        OutboxOperation completed =
+                OutboxOperation.save(new Task("Title1", "Description1", "id1", true));
+        OutboxOperation delete = OutboxOperation.delete(TASK2.getId());
+
+        List<OutboxOperation> coalesced = OutboxCoalescer.coalesce(Lists.newArrayList(
+                OutboxOperation.save(TASK1),
+                delete,
+                completed));
+
+        assertEquals(Lists.newArrayList(completed, delete), coalesced);
+    }
+
+    @Test
+    public void writesAreNotMovedAcrossClearCompleted() {
+        OutboxOperation completed =
+                OutboxOperation.save(new Task("Title1", "Description1", "id1", true));
+        OutboxOperation clearCompleted = OutboxOperation.clearCompleted();
+        OutboxOperation saved = OutboxOperation.save(TASK1);
+
+        List<OutboxOperation> coalesced = OutboxCoalescer.coalesce(Lists.newArrayList(
+                completed, clearCompleted, saved));
+
+        assertEquals(Lists.newArrayList(completed, clearCompleted, saved), coalesced);
+    }
+
+    @Test
+    public void writesBeforeDeleteAll_areDropped() {
+        OutboxOperation deleteAll = OutboxOperation.deleteAll();
+        OutboxOperation saved = OutboxOperation.save(TASK2);
+
+        List<OutboxOperation> coalesced = OutboxCoalescer.coalesce(Lists.newArrayList(
+                OutboxOperation.save(TASK1),
+                OutboxOperation.clearCompleted(),
+                OutboxOperation.deleteAll(),
+                OutboxOperation.delete(TASK2.getId()),
+                deleteAll,
+                saved));
+
+        assertEquals(Lists.newArrayList(deleteAll, saved), coalesced);
+    }
+
+    @Test
+    public void completeById_amendsEarlierSave() {
+        List<OutboxOperation> coalesced = OutboxCoalescer.coalesce(Lists.newArrayList(
+                OutboxOperation.save(TASK1),
+                OutboxOperation.complete(TASK1.getId())));
+
+        assertEquals(1, coalesced.size());
+        assertEquals(OutboxOperation.TYPE_SAVE, coalesced.get(0).getType());
+        assertEquals(TASK1.getTitle(), coalesced.get(0).getTask().getTitle());
+        assertTrue(coalesced.get(0).getTask().isCompleted());
+    }
+
+    @Test
+    public void activateById_afterDelete_staysDelete() {
+        OutboxOperation delete = OutboxOperation.delete(TASK1.getId());
+
+        List<OutboxOperation> coalesced = OutboxCoalescer.coalesce(Lists.newArrayList(
+                delete, OutboxOperation.activate(TASK1.getId())));
+
+        assertEquals(1, coalesced.size());
+        assertSame(delete, coalesced.get(0));
+    }
+
+    @Test
+    public void stateChanges_comeBetweenSavesAndDeletes() {
+        OutboxOperation delete = OutboxOperation.delete("id3");
+        OutboxOperation complete = OutboxOperation.complete(TASK2.getId());
+        OutboxOperation saved = OutboxOperation.save(TASK1);
+
+        List<OutboxOperation> coalesced = OutboxCoalescer.coalesce(Lists.newArrayList(
+                delete, OutboxOperation.activate(TASK2.getId()), complete, saved));
+
+        assertEquals(Lists.newArrayList(saved, complete, delete), coalesced);
+    }
+
+    @Test
+    public void noOperations_nothingToSend() {
+        assertTrue(OutboxCoalescer.coalesce(Lists.<OutboxOperation>newArrayList()).isEmpty());
+    }
+}
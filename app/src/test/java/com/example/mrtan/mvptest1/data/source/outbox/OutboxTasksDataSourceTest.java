@@ -0,0 +1,141 @@
+package com.example.mrtan.mvptest1.data.source.outbox;
+
+import android.support.annotation.NonNull;
+
+import com.example.mrtan.mvptest1.data.Task;
+import com.example.mrtan.mvptest1.data.source.TasksDataSource;
+import com.example.mrtan.mvptest1.util.AppExecutors;
+import com.google.common.collect.Lists;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for the implementation of {@link OutboxTasksDataSource}.
+ */
+public class OutboxTasksDataSourceTest {
+
+    private static final Task TASK1 = new Task("Title1", "Description1", "id1");
+
+    private static final Task TASK2 = new Task("Title2", "Description2", "id2");
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    @Mock
+    private TasksDataSource mTasksRemoteDataSource;
+
+    @Mock
+    private AppExecutors mAppExecutors;
+
+    private FakeOutboxStore mOutboxStore;
+
+    /**
+     * The runnable of the pending flush, run by {@link #runScheduledFlush()}.
+     */
+    private Runnable mScheduledFlush;
+
+    private final OutboxTasksDataSource.FlushScheduler mFlushScheduler =
+            new OutboxTasksDataSource.FlushScheduler() {
+                @Override
+                public void schedule(@NonNull Runnable runnable, long delayMillis) {
+                    mScheduledFlush = runnable;
+                }
+            };
+
+    @Before
+    public void setupOutbox() {
+        MockitoAnnotations.initMocks(this);
+        when(mAppExecutors.networkIO()).thenReturn(DIRECT_EXECUTOR);
+        when(mAppExecutors.mainThread()).thenReturn(DIRECT_EXECUTOR);
+        mOutboxStore = new FakeOutboxStore();
+    }
+
+    @Test
+    public void startupWithPendingOperations_sendsThem() {
+        // Given operations left in the outbox by an earlier process
+        mOutboxStore.appendAll(Lists.newArrayList(
+                OutboxOperation.save(TASK1), OutboxOperation.save(TASK2)));
+
+        // When the data source is created, and the flush it scheduled runs
+        new OutboxTasksDataSource(mTasksRemoteDataSource, mOutboxStore, mAppExecutors,
+                mFlushScheduler);
+        runScheduledFlush();
+
+        // Then the operations are sent without any new write, and removed from the outbox
+        verify(mTasksRemoteDataSource).saveTasks(Lists.newArrayList(TASK1, TASK2));
+        assertTrue(mOutboxStore.mOperations.isEmpty());
+    }
+
+    @Test
+    public void startupWithEmptyOutbox_sendsNothing() {
+        new OutboxTasksDataSource(mTasksRemoteDataSource, mOutboxStore, mAppExecutors,
+                mFlushScheduler);
+        runScheduledFlush();
+
+        verify(mTasksRemoteDataSource, never()).saveTasks(anyListOf(Task.class));
+    }
+
+    private void runScheduledFlush() {
+        assertTrue("No flush scheduled", mScheduledFlush != null);
+        Runnable flush = mScheduledFlush;
+        mScheduledFlush = null;
+        flush.run();
+    }
+
+    /**
+     * In-memory outbox calling back synchronously.
+     */
+    private static final class FakeOutboxStore implements OutboxStore {
+
+        final List<OutboxOperation> mOperations = new ArrayList<>();
+
+        private long mNextSequence = 1;
+
+        @Override
+        public void append(@NonNull OutboxOperation operation) {
+            mOperations.add(new OutboxOperation(mNextSequence++, operation.getType(),
+                    operation.getTaskId(), operation.getTask()));
+        }
+
+        @Override
+        public void appendAll(@NonNull List<OutboxOperation> operations) {
+            for (OutboxOperation operation : operations) {
+                append(operation);
+            }
+        }
+
+        @Override
+        public void load(int limit, @NonNull LoadOperationsCallback callback) {
+            callback.onOperationsLoaded(new ArrayList<>(
+                    mOperations.subList(0, Math.min(limit, mOperations.size()))));
+        }
+
+        @Override
+        public void remove(long sequence) {
+            Iterator<OutboxOperation> iterator = mOperations.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getSequence() <= sequence) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+}